@@ -0,0 +1,42 @@
+package com.ipter.actuator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.ipter.service.GeminiCircuitBreaker;
+import com.ipter.service.GeminiRateLimiter;
+
+/**
+ * Actuator endpoint (/actuator/gemini) showing the Gemini circuit breaker and rate limiter state.
+ * Read-only: the breaker recovers on its own through its half-open trial calls.
+ * Administrators only, like every actuator endpoint except health and info (see SecurityConfig).
+ */
+@Component
+@Endpoint(id = "gemini")
+public class GeminiEndpoint {
+
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiRateLimiter rateLimiter;
+
+    public GeminiEndpoint(GeminiCircuitBreaker circuitBreaker, GeminiRateLimiter rateLimiter) {
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> gemini() {
+        Map<String, Object> limiter = new LinkedHashMap<>();
+        limiter.put("concurrencyLimit", rateLimiter.getLimit());
+        limiter.put("inFlight", rateLimiter.getInFlight());
+        limiter.put("queueDepth", rateLimiter.getQueueDepth());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("circuitBreaker", circuitBreaker.snapshot());
+        result.put("rateLimiter", limiter);
+        return result;
+    }
+}
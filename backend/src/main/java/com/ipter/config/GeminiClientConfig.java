@@ -0,0 +1,106 @@
+package com.ipter.config;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Configuration for the Google Gemini HTTP client.
+ * One long-lived WebClient backed by a pooled Reactor Netty connection provider, so
+ * extraction calls reuse warm TLS connections instead of handshaking on every request.
+ */
+@Configuration
+public class GeminiClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiClientConfig.class);
+
+    @Value("${gemini.api.url:https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent}")
+    private String apiUrl;
+
+    @Value("${gemini.api.timeout:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${gemini.http.connect-timeout-ms:10000}")
+    private int connectTimeoutMs;
+
+    @Value("${gemini.http.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${gemini.http.pending-acquire-max-count:500}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${gemini.http.pending-acquire-timeout-ms:45000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${gemini.http.max-idle-time-ms:60000}")
+    private long maxIdleTimeMs;
+
+    @Value("${gemini.http.max-life-time-ms:600000}")
+    private long maxLifeTimeMs;
+
+    @Value("${gemini.http.evict-interval-ms:30000}")
+    private long evictIntervalMs;
+
+    @Value("${gemini.http.http2-enabled:true}")
+    private boolean http2Enabled;
+
+    @Value("${gemini.http.max-response-size-bytes:16777216}")
+    private int maxResponseSizeBytes;
+
+    /**
+     * Connection pool shared by every Gemini call. Pool metrics are published to Micrometer
+     * under reactor.netty.connection.provider.* with name=gemini.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider() {
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                .evictInBackground(Duration.ofMillis(evictIntervalMs))
+                .lifo()
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * WebClient used by GeminiService for all generateContent calls
+     */
+    @Bean("geminiWebClient")
+    public WebClient geminiWebClient(WebClient.Builder builder,
+                                     @Qualifier("geminiConnectionProvider") ConnectionProvider connectionProvider) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .compress(true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+
+        // HTTP/2 is only negotiated over TLS (ALPN); plain-http endpoints such as local stubs stay on HTTP/1.1
+        if (http2Enabled && apiUrl.startsWith("https://")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+
+        logger.info("Gemini HTTP client: maxConnections={}, http2={}, responseTimeout={}ms",
+                maxConnections, http2Enabled && apiUrl.startsWith("https://"), responseTimeoutMs);
+
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(maxResponseSizeBytes))
+                .build();
+    }
+}
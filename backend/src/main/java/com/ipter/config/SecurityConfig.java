@@ -22,6 +22,7 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import jakarta.servlet.DispatcherType;
 import java.util.Arrays;
 import java.util.List;
 
@@ -96,15 +97,20 @@ public class SecurityConfig {
             .exceptionHandling(exception -> exception.authenticationEntryPoint(jwtAuthenticationEntryPoint))
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(authz -> authz
+                // Streaming responses (e.g. batch extraction) finish on an async dispatch of an already authorized request
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // Public endpoints
                 .requestMatchers("/auth/**").permitAll()
                 .requestMatchers("/h2-console/**").permitAll()
-                .requestMatchers("/actuator/**").permitAll()
+                .requestMatchers("/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
                 .requestMatchers("/swagger-ui/**").permitAll()
                 .requestMatchers("/v3/api-docs/**").permitAll()
 
                 // Admin only endpoints
                 .requestMatchers("/admin/**").hasRole("ADMINISTRATOR")
+                // Metrics and the other actuator endpoints expose internals (pools, limits, request sizes)
+                .requestMatchers("/actuator/**").hasRole("ADMINISTRATOR")
                 .requestMatchers("/users/**").hasRole("ADMINISTRATOR")
                 .requestMatchers("/sessions/**").hasRole("ADMINISTRATOR")
                 // Note: /audit/** and /projects/** now use method-level @PreAuthorize for fine-grained control
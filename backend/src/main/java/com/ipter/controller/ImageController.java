@@ -1,15 +1,21 @@
 package com.ipter.controller;
 
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -19,22 +25,28 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import com.ipter.dto.ImageListFilter;
+import com.ipter.dto.ImagePageResponse;
 import com.ipter.dto.ImageProcessingResponse;
 import com.ipter.dto.ImageUploadRequest;
 import com.ipter.dto.ImageUploadResponse;
 import com.ipter.dto.OCRResultDTO;
-import com.ipter.dto.ProjectResponse;
 import com.ipter.dto.SerialNumberUpdateRequest;
 import com.ipter.dto.SerialNumberUpdateResponse;
 import com.ipter.dto.UploadAndExtractResponse;
+import com.ipter.model.ProcessingStatus;
+import com.ipter.service.BatchExtractionService;
 import com.ipter.service.GeminiService;
 import com.ipter.service.ImageService;
-import com.ipter.service.ProjectService;
+import com.ipter.service.ProjectStatsService;
+import com.ipter.service.ThumbnailService;
 
 import jakarta.validation.Valid;
 
@@ -55,7 +67,13 @@ public class ImageController {
     private GeminiService geminiService;
 
     @Autowired
-    private ProjectService projectService;
+    private BatchExtractionService batchExtractionService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ProjectStatsService projectStatsService;
 
     /**
      * Upload an image for processing
@@ -165,20 +183,25 @@ public class ImageController {
     }
     
     /**
-     * Get all images for a project
+     * Get a project's images, newest first, one keyset page at a time.
+     * Pass the returned nextCursor as cursor to get the following page.
      */
     @GetMapping("/project/{projectId}")
     @PreAuthorize("hasRole('USER') or hasRole('SUPER_USER') or hasRole('ADMINISTRATOR')")
-    public ResponseEntity<?> getProjectImages(@PathVariable UUID projectId) {
+    public ResponseEntity<?> getProjectImages(
+            @PathVariable UUID projectId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "verified", required = false) Boolean verified,
+            @RequestParam(value = "minConfidence", required = false) Double minConfidence,
+            @RequestParam(value = "maxConfidence", required = false) Double maxConfidence,
+            @RequestParam(value = "includeTotal", defaultValue = "true") boolean includeTotal) {
         try {
-            List<ImageProcessingResponse> images = imageService.getProjectImages(projectId);
+            ImageListFilter filter = new ImageListFilter(parseStatus(status), verified, minConfidence, maxConfidence);
+            ImagePageResponse page = imageService.getProjectImagesPage(projectId, filter, cursor, limit, includeTotal, false);
             
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", true);
-            result.put("data", images);
-            result.put("count", images.size());
-            
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(pageResult(page));
             
         } catch (Exception e) {
             logger.error("Error getting project images {}: {}", projectId, e.getMessage());
@@ -200,7 +223,7 @@ public class ImageController {
         try {
             logger.info("Reprocessing image: {}", imageId);
             
-            ImageProcessingResponse response = imageService.processImage(imageId);
+            ImageProcessingResponse response = imageService.reprocessImage(imageId);
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -227,33 +250,8 @@ public class ImageController {
     @PreAuthorize("hasRole('USER') or hasRole('SUPER_USER') or hasRole('ADMINISTRATOR')")
     public ResponseEntity<?> getProjectImageStats(@PathVariable UUID projectId) {
         try {
-            List<ImageProcessingResponse> images = imageService.getProjectImages(projectId);
-            
-            // Calculate statistics
-            long totalImages = images.size();
-            long completedImages = images.stream()
-                .filter(img -> img.getProcessingStatus().name().equals("COMPLETED"))
-                .count();
-            long failedImages = images.stream()
-                .filter(img -> img.getProcessingStatus().name().equals("FAILED"))
-                .count();
-            long pendingImages = images.stream()
-                .filter(img -> img.getProcessingStatus().name().equals("PENDING") || 
-                              img.getProcessingStatus().name().equals("PROCESSING"))
-                .count();
-            
-            int totalContainerNumbers = images.stream()
-                .filter(img -> img.getContainerNumbersFound() != null)
-                .mapToInt(ImageProcessingResponse::getContainerNumbersFound)
-                .sum();
-            
-            Map<String, Object> stats = new HashMap<>();
-            stats.put("totalImages", totalImages);
-            stats.put("completedImages", completedImages);
-            stats.put("failedImages", failedImages);
-            stats.put("pendingImages", pendingImages);
-            stats.put("totalContainerNumbers", totalContainerNumbers);
-            stats.put("successRate", totalImages > 0 ? (double) completedImages / totalImages * 100 : 0);
+            // Aggregated and briefly cached; the dashboard polls this endpoint
+            Map<String, Object> stats = projectStatsService.getProjectStats(projectId);
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -275,7 +273,7 @@ public class ImageController {
     /**
      * Single production endpoint: Upload image and extract container IDs via Gemini
      * - Saves image metadata
-     * - Runs Gemini extraction immediately
+     * - Runs Gemini extraction immediately (or queues it when async=true)
      * - Saves extracted data
      * - Returns unified response
      */
@@ -284,38 +282,48 @@ public class ImageController {
     public ResponseEntity<?> uploadAndExtract(
             @RequestParam("file") MultipartFile file,
             @RequestParam("projectId") UUID projectId,
-            @RequestParam(value = "description", required = false) String description) {
+            @RequestParam(value = "description", required = false) String description,
+            @RequestParam(value = "exampleNumber", required = false) String exampleNumber,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         try {
-            logger.info("Upload-and-extract for: {} (Project: {})", file.getOriginalFilename(), projectId);
+            logger.info("Upload-and-extract for: {} (Project: {}, async: {})", file.getOriginalFilename(), projectId, async);
+
+            if (async) {
+                // Hand the image to the processing queue and return at once; clients poll /status
+                ImageUploadResponse uploadResp = imageService.uploadImage(
+                    file, new ImageUploadRequest(projectId, description, true));
+
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", true);
+                result.put("message", "Image uploaded and queued for extraction");
+                result.put("data", uploadResp);
+                result.put("statusUrl", "/images/" + uploadResp.getImageId() + "/status");
+
+                return ResponseEntity.accepted().body(result);
+            }
 
             // Reuse upload image logic but force immediate processing disabled (we'll do inline)
             ImageUploadRequest uploadRequest = new ImageUploadRequest(projectId, description, false);
             ImageUploadResponse uploadResp = imageService.uploadImage(file, uploadRequest);
 
-            // Determine the example number to use - from project or from master data
-            String effectiveExampleNumber = null;
-            try {
-                ProjectResponse project = projectService.getProjectById(projectId);
-                effectiveExampleNumber = project.getExampleContainerNumber();
-
-                // If no example number in project, get 3 random examples from master data
-                if (effectiveExampleNumber == null || effectiveExampleNumber.trim().isEmpty()) {
-                    List<String> masterDataExamples = imageService.getRandomMasterDataExamples(projectId, 3);
-                    if (!masterDataExamples.isEmpty()) {
-                        effectiveExampleNumber = String.join(", ", masterDataExamples);
-                        logger.info("Using master data examples for project {}: {}", projectId, effectiveExampleNumber);
-                    }
+            // Determine the example number to use - explicit parameter, then project, then master data
+            String effectiveExampleNumber = exampleNumber != null && !exampleNumber.trim().isEmpty()
+                ? exampleNumber.trim()
+                : null;
+            if (effectiveExampleNumber == null) {
+                try {
+                    effectiveExampleNumber = imageService.resolveExampleNumber(projectId);
+                } catch (Exception e) {
+                    logger.warn("Could not retrieve project example number or master data: {}", e.getMessage());
                 }
-            } catch (Exception e) {
-                logger.warn("Could not retrieve project example number or master data: {}", e.getMessage());
             }
 
-            // Load image entity and process inline with example number
-            byte[] imageBytes = file.getBytes();
-            OCRResultDTO ocr = geminiService.extractContainerNumbers(imageBytes, file.getOriginalFilename(), file.getContentType(), effectiveExampleNumber);
+            // Process inline with example number; the part is streamed into the request, hash comes from the upload
+            OCRResultDTO ocr = geminiService.extractContainerNumbers(file.getResource(), uploadResp.getContentSha256(),
+                file.getOriginalFilename(), file.getContentType(), effectiveExampleNumber);
 
-            // Save extracted data and update image metadata
-            if (ocr.getSuccess()) {
+            // Save extracted data and update image metadata; a deferred result (Gemini unavailable) queues the image
+            if (ocr.getSuccess() || ocr.isDeferred()) {
                 imageService.saveExtractedDataInline(uploadResp.getImageId(), ocr);
             }
 
@@ -325,7 +333,9 @@ public class ImageController {
             response.setImageName(uploadResp.getOriginalFilename());
             response.setUploadedAt(uploadResp.getUploadedAt());
             response.setSuccess(ocr.getSuccess());
-            response.setMessage(ocr.getSuccess() ? "Extraction successful" : ("Extraction failed: " + ocr.getErrorMessage()));
+            response.setMessage(ocr.getSuccess() ? "Extraction successful"
+                : ocr.isDeferred() ? "Gemini is temporarily unavailable; image queued for background processing"
+                : ("Extraction failed: " + ocr.getErrorMessage()));
             response.setExtractedText(ocr.getExtractedText());
             response.setContainerNumbers(ocr.getContainerNumbers());
             response.setConfidence(ocr.getConfidence());
@@ -345,6 +355,45 @@ public class ImageController {
         }
     }
 
+    /**
+     * Bulk upload-and-extract: many images for one project in a single request.
+     * Images are stored in one transaction and extracted in parallel; results are streamed back
+     * as NDJSON (one line per image as it finishes, then a summary line).
+     */
+    @PostMapping("/upload-and-extract/batch")
+    @PreAuthorize("hasRole('USER') or hasRole('REVIEWER') or hasRole('ADMINISTRATOR')")
+    public ResponseEntity<ResponseBodyEmitter> uploadAndExtractBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam("projectId") UUID projectId,
+            @RequestParam(value = "exampleNumber", required = false) String exampleNumber) {
+        try {
+            logger.info("Batch upload-and-extract: {} files (Project: {})", files.size(), projectId);
+
+            ResponseBodyEmitter emitter = batchExtractionService.uploadAndExtract(files, projectId, exampleNumber);
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(emitter);
+
+        } catch (Exception e) {
+            logger.error("Error in batch upload-and-extract: {}", e.getMessage());
+
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("error", e.getMessage());
+
+            ResponseBodyEmitter errorEmitter = new ResponseBodyEmitter();
+            try {
+                errorEmitter.send(error, MediaType.APPLICATION_JSON);
+                errorEmitter.complete();
+            } catch (Exception sendError) {
+                errorEmitter.completeWithError(sendError);
+            }
+            return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorEmitter);
+        }
+    }
+
     /**
      * Update serial numbers after user verification
      */
@@ -404,6 +453,46 @@ public class ImageController {
         }
     }
 
+    /**
+     * Serve a thumbnail (small, medium or large) of an uploaded image. Thumbnails never change for an
+     * image, so they carry an ETag and may be cached by the browser for a year.
+     */
+    @GetMapping("/{imageId}/thumbnail")
+    @PreAuthorize("hasRole('USER') or hasRole('REVIEWER') or hasRole('ADMINISTRATOR')")
+    public ResponseEntity<Resource> getThumbnail(
+            @PathVariable UUID imageId,
+            @RequestParam(value = "size", defaultValue = "medium") String size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ThumbnailService.Size thumbnailSize;
+        try {
+            thumbnailSize = ThumbnailService.Size.parse(size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            String etag = thumbnailService.getETag(imageId, thumbnailSize);
+            CacheControl cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+            if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+            }
+
+            Path thumbnail = thumbnailService.getThumbnail(imageId, thumbnailSize);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .contentType(MediaType.IMAGE_JPEG)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline")
+                    .body(new FileSystemResource(thumbnail));
+
+        } catch (ThumbnailService.ImageNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            logger.error("Error serving thumbnail for image {}: {}", imageId, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Update image verification status
      */
@@ -437,20 +526,23 @@ public class ImageController {
     }
 
     /**
-     * Get verified images for a project
+     * Get verified images for a project with their container numbers, one keyset page at a time
      */
     @GetMapping("/project/{projectId}/verified")
     @PreAuthorize("hasRole('USER') or hasRole('REVIEWER') or hasRole('ADMINISTRATOR')")
-    public ResponseEntity<?> getVerifiedProjectImages(@PathVariable UUID projectId) {
+    public ResponseEntity<?> getVerifiedProjectImages(
+            @PathVariable UUID projectId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "minConfidence", required = false) Double minConfidence,
+            @RequestParam(value = "maxConfidence", required = false) Double maxConfidence,
+            @RequestParam(value = "includeTotal", defaultValue = "true") boolean includeTotal) {
         try {
-            List<ImageProcessingResponse> images = imageService.getVerifiedProjectImages(projectId);
+            ImageListFilter filter = new ImageListFilter(parseStatus(status), true, minConfidence, maxConfidence);
+            ImagePageResponse page = imageService.getProjectImagesPage(projectId, filter, cursor, limit, includeTotal, true);
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", true);
-            result.put("data", images);
-            result.put("count", images.size());
-
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(pageResult(page));
 
         } catch (Exception e) {
             logger.error("Error getting verified project images {}: {}", projectId, e.getMessage());
@@ -463,4 +555,28 @@ public class ImageController {
         }
     }
 
+    private Map<String, Object> pageResult(ImagePageResponse page) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", page.getImages());
+        result.put("count", page.getImages().size());
+        result.put("nextCursor", page.getNextCursor());
+        result.put("hasMore", page.isHasMore());
+        if (page.getTotalCount() != null) {
+            result.put("totalCount", page.getTotalCount());
+        }
+        return result;
+    }
+
+    private ProcessingStatus parseStatus(String status) {
+        if (status == null || status.isBlank()) {
+            return null;
+        }
+        try {
+            return ProcessingStatus.valueOf(status.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown processing status: " + status);
+        }
+    }
+
 }
@@ -12,6 +12,7 @@ public class ContainerExtractionResultDTO {
 
     private Map<String, RowData> rows;
     private Map<String, Object> gridStructure;
+    private boolean partial;
 
     // Constructors
     public ContainerExtractionResultDTO() {}
@@ -36,6 +37,17 @@ public class ContainerExtractionResultDTO {
     public void setGridStructure(Map<String, Object> gridStructure) {
         this.gridStructure = gridStructure;
     }
+
+    /**
+     * True when the response was cut off and only the rows read before the cut are present
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
     
     // Helper methods to access specific rows
     @JsonProperty("row1")
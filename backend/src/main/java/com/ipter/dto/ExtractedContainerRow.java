@@ -0,0 +1,26 @@
+package com.ipter.dto;
+
+import java.util.UUID;
+
+/**
+ * Projection of one extracted container number: just what the data views need, without
+ * loading the ExtractedData entity or its image
+ */
+public class ExtractedContainerRow {
+
+    private final UUID imageId;
+    private final String containerNumber;
+    private final Double confidence;
+
+    public ExtractedContainerRow(UUID imageId, String containerNumber, Double confidence) {
+        this.imageId = imageId;
+        this.containerNumber = containerNumber;
+        this.confidence = confidence;
+    }
+
+    public UUID getImageId() { return imageId; }
+
+    public String getContainerNumber() { return containerNumber; }
+
+    public Double getConfidence() { return confidence; }
+}
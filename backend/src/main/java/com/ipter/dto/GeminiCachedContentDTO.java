@@ -0,0 +1,87 @@
+package com.ipter.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * DTO for the Gemini cachedContents API.
+ * Sent with model, contents and ttl to create a cached prompt prefix (or with only ttl to extend
+ * one); returned with the server-assigned name and expireTime.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GeminiCachedContentDTO {
+
+    private String name;
+
+    private String model;
+
+    @JsonProperty("displayName")
+    private String displayName;
+
+    private List<GeminiRequestDTO.ContentPart> contents;
+
+    /**
+     * Time to live as a duration string such as "3600s"
+     */
+    private String ttl;
+
+    /**
+     * RFC 3339 timestamp after which Gemini deletes the cached content
+     */
+    @JsonProperty("expireTime")
+    private String expireTime;
+
+    public GeminiCachedContentDTO() {}
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public List<GeminiRequestDTO.ContentPart> getContents() {
+        return contents;
+    }
+
+    public void setContents(List<GeminiRequestDTO.ContentPart> contents) {
+        this.contents = contents;
+    }
+
+    public String getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(String ttl) {
+        this.ttl = ttl;
+    }
+
+    public String getExpireTime() {
+        return expireTime;
+    }
+
+    public void setExpireTime(String expireTime) {
+        this.expireTime = expireTime;
+    }
+}
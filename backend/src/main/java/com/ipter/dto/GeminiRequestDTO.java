@@ -1,8 +1,23 @@
 package com.ipter.dto;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.core.io.InputStreamSource;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
 /**
  * DTO for Google Gemini API request
@@ -18,6 +33,13 @@ public class GeminiRequestDTO {
     @JsonProperty("safetySettings")
     private List<SafetySetting> safetySettings;
     
+    /**
+     * Name of a cached prompt prefix (cachedContents/...) that Gemini prepends to the contents
+     */
+    @JsonProperty("cachedContent")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cachedContent;
+    
     // Constructors
     public GeminiRequestDTO() {}
     
@@ -50,10 +72,21 @@ public class GeminiRequestDTO {
         this.safetySettings = safetySettings;
     }
     
+    public String getCachedContent() {
+        return cachedContent;
+    }
+    
+    public void setCachedContent(String cachedContent) {
+        this.cachedContent = cachedContent;
+    }
+    
     /**
      * Content part for Gemini request
      */
     public static class ContentPart {
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private String role;
+        
         private List<Part> parts;
         
         public ContentPart() {}
@@ -62,6 +95,19 @@ public class GeminiRequestDTO {
             this.parts = parts;
         }
         
+        public ContentPart(String role, List<Part> parts) {
+            this.role = role;
+            this.parts = parts;
+        }
+        
+        public String getRole() {
+            return role;
+        }
+        
+        public void setRole(String role) {
+            this.role = role;
+        }
+        
         public List<Part> getParts() {
             return parts;
         }
@@ -123,14 +169,20 @@ public class GeminiRequestDTO {
     }
 
     /**
-     * Inline data for images
+     * Inline data for images.
+     * Either holds pre-encoded Base64 {@code data}, or a {@code source} whose raw bytes are
+     * Base64-encoded straight into the JSON output during serialization (no intermediate String).
      */
+    @JsonSerialize(using = InlineDataSerializer.class)
     public static class InlineData {
         @JsonProperty("mimeType")
         private String mimeType;
 
         private String data;
 
+        @JsonIgnore
+        private InputStreamSource source;
+
         public InlineData() {}
 
         public InlineData(String mimeType, String data) {
@@ -138,6 +190,11 @@ public class GeminiRequestDTO {
             this.data = data;
         }
 
+        public InlineData(String mimeType, InputStreamSource source) {
+            this.mimeType = mimeType;
+            this.source = source;
+        }
+
         public String getMimeType() {
             return mimeType;
         }
@@ -153,6 +210,41 @@ public class GeminiRequestDTO {
         public void setData(String data) {
             this.data = data;
         }
+
+        public InputStreamSource getSource() {
+            return source;
+        }
+
+        public void setSource(InputStreamSource source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * Writes InlineData, streaming the source content through the generator's Base64 encoder
+     */
+    public static class InlineDataSerializer extends StdSerializer<InlineData> {
+
+        public InlineDataSerializer() {
+            super(InlineData.class);
+        }
+
+        @Override
+        public void serialize(InlineData value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            if (value.getMimeType() != null) {
+                gen.writeStringField("mimeType", value.getMimeType());
+            }
+            if (value.getSource() != null) {
+                gen.writeFieldName("data");
+                try (InputStream in = value.getSource().getInputStream()) {
+                    gen.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, in, -1);
+                }
+            } else if (value.getData() != null) {
+                gen.writeStringField("data", value.getData());
+            }
+            gen.writeEndObject();
+        }
     }
 
     /**
@@ -207,6 +299,10 @@ public class GeminiRequestDTO {
         @JsonProperty("responseMimeType")
         private String responseMimeType;
         
+        @JsonProperty("responseSchema")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private Schema responseSchema;
+        
         public GenerationConfig() {}
         
         public Double getTemperature() {
@@ -248,6 +344,81 @@ public class GeminiRequestDTO {
         public void setResponseMimeType(String responseMimeType) {
             this.responseMimeType = responseMimeType;
         }
+        
+        public Schema getResponseSchema() {
+            return responseSchema;
+        }
+        
+        public void setResponseSchema(Schema responseSchema) {
+            this.responseSchema = responseSchema;
+        }
+    }
+    
+    /**
+     * Structured-output schema (OpenAPI subset) that constrains a JSON response
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Schema {
+        private String type;
+        private Map<String, Schema> properties;
+        private Schema items;
+        private List<String> required;
+        
+        @JsonProperty("propertyOrdering")
+        private List<String> propertyOrdering;
+        
+        public Schema() {}
+        
+        public static Schema string() {
+            Schema schema = new Schema();
+            schema.type = "STRING";
+            return schema;
+        }
+        
+        public static Schema integer() {
+            Schema schema = new Schema();
+            schema.type = "INTEGER";
+            return schema;
+        }
+        
+        public static Schema array(Schema items) {
+            Schema schema = new Schema();
+            schema.type = "ARRAY";
+            schema.items = items;
+            return schema;
+        }
+        
+        /**
+         * Object whose properties are generated in the given (insertion) order
+         */
+        public static Schema object(LinkedHashMap<String, Schema> properties, String... required) {
+            Schema schema = new Schema();
+            schema.type = "OBJECT";
+            schema.properties = properties;
+            schema.propertyOrdering = new ArrayList<>(properties.keySet());
+            schema.required = required.length > 0 ? Arrays.asList(required) : null;
+            return schema;
+        }
+        
+        public String getType() {
+            return type;
+        }
+        
+        public Map<String, Schema> getProperties() {
+            return properties;
+        }
+        
+        public Schema getItems() {
+            return items;
+        }
+        
+        public List<String> getRequired() {
+            return required;
+        }
+        
+        public List<String> getPropertyOrdering() {
+            return propertyOrdering;
+        }
     }
     
     /**
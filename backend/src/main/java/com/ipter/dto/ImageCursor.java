@@ -0,0 +1,44 @@
+package com.ipter.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position in an image listing ordered by (uploadedAt DESC, id DESC): the last image of
+ * the previous page. Sent to clients as an opaque URL-safe token.
+ */
+public class ImageCursor {
+
+    private final LocalDateTime uploadedAt;
+    private final UUID imageId;
+
+    public ImageCursor(LocalDateTime uploadedAt, UUID imageId) {
+        this.uploadedAt = uploadedAt;
+        this.imageId = imageId;
+    }
+
+    public LocalDateTime getUploadedAt() { return uploadedAt; }
+
+    public UUID getImageId() { return imageId; }
+
+    public String encode() {
+        String raw = uploadedAt + "|" + imageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a token produced by encode(); IllegalArgumentException if it is not one
+     */
+    public static ImageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new ImageCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                                   UUID.fromString(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+}
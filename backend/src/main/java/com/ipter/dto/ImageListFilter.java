@@ -0,0 +1,35 @@
+package com.ipter.dto;
+
+import com.ipter.model.ProcessingStatus;
+
+/**
+ * Optional server-side filters for image listings; null fields do not filter
+ */
+public class ImageListFilter {
+
+    private ProcessingStatus status;
+    private Boolean verified;
+    private Double minConfidence;
+    private Double maxConfidence;
+
+    public ImageListFilter() {}
+
+    public ImageListFilter(ProcessingStatus status, Boolean verified, Double minConfidence, Double maxConfidence) {
+        this.status = status;
+        this.verified = verified;
+        this.minConfidence = minConfidence;
+        this.maxConfidence = maxConfidence;
+    }
+
+    public ProcessingStatus getStatus() { return status; }
+    public void setStatus(ProcessingStatus status) { this.status = status; }
+
+    public Boolean getVerified() { return verified; }
+    public void setVerified(Boolean verified) { this.verified = verified; }
+
+    public Double getMinConfidence() { return minConfidence; }
+    public void setMinConfidence(Double minConfidence) { this.minConfidence = minConfidence; }
+
+    public Double getMaxConfidence() { return maxConfidence; }
+    public void setMaxConfidence(Double maxConfidence) { this.maxConfidence = maxConfidence; }
+}
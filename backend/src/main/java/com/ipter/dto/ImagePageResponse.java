@@ -0,0 +1,36 @@
+package com.ipter.dto;
+
+import java.util.List;
+
+/**
+ * One page of an image listing. nextCursor is null on the last page; totalCount is null
+ * when the caller did not ask for it.
+ */
+public class ImagePageResponse {
+
+    private List<ImageProcessingResponse> images;
+    private String nextCursor;
+    private boolean hasMore;
+    private Long totalCount;
+
+    public ImagePageResponse() {}
+
+    public ImagePageResponse(List<ImageProcessingResponse> images, String nextCursor, boolean hasMore, Long totalCount) {
+        this.images = images;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+        this.totalCount = totalCount;
+    }
+
+    public List<ImageProcessingResponse> getImages() { return images; }
+    public void setImages(List<ImageProcessingResponse> images) { this.images = images; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+
+    public Long getTotalCount() { return totalCount; }
+    public void setTotalCount(Long totalCount) { this.totalCount = totalCount; }
+}
@@ -0,0 +1,30 @@
+package com.ipter.dto;
+
+import com.ipter.model.ProcessingStatus;
+
+/**
+ * One group of a project's images by processing status and verification, with the number of
+ * images and the container numbers they found
+ */
+public class ImageStatusCountRow {
+
+    private final ProcessingStatus processingStatus;
+    private final boolean verified;
+    private final long imageCount;
+    private final long containerNumbersFound;
+
+    public ImageStatusCountRow(ProcessingStatus processingStatus, Boolean verified, Long imageCount, Long containerNumbersFound) {
+        this.processingStatus = processingStatus;
+        this.verified = Boolean.TRUE.equals(verified);
+        this.imageCount = imageCount != null ? imageCount : 0;
+        this.containerNumbersFound = containerNumbersFound != null ? containerNumbersFound : 0;
+    }
+
+    public ProcessingStatus getProcessingStatus() { return processingStatus; }
+
+    public boolean isVerified() { return verified; }
+
+    public long getImageCount() { return imageCount; }
+
+    public long getContainerNumbersFound() { return containerNumbersFound; }
+}
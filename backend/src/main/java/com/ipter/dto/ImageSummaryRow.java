@@ -0,0 +1,26 @@
+package com.ipter.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Projection of the image columns shown in the project data view
+ */
+public class ImageSummaryRow {
+
+    private final UUID imageId;
+    private final String originalFilename;
+    private final LocalDateTime uploadedAt;
+
+    public ImageSummaryRow(UUID imageId, String originalFilename, LocalDateTime uploadedAt) {
+        this.imageId = imageId;
+        this.originalFilename = originalFilename;
+        this.uploadedAt = uploadedAt;
+    }
+
+    public UUID getImageId() { return imageId; }
+
+    public String getOriginalFilename() { return originalFilename; }
+
+    public LocalDateTime getUploadedAt() { return uploadedAt; }
+}
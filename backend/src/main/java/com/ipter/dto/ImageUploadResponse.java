@@ -14,6 +14,7 @@ public class ImageUploadResponse {
     private String originalFilename;
     private String contentType;
     private Long fileSize;
+    private String contentSha256;
     private ProcessingStatus processingStatus;
     private UUID projectId;
     private LocalDateTime uploadedAt;
@@ -69,6 +70,14 @@ public class ImageUploadResponse {
         this.fileSize = fileSize;
     }
     
+    public String getContentSha256() {
+        return contentSha256;
+    }
+    
+    public void setContentSha256(String contentSha256) {
+        this.contentSha256 = contentSha256;
+    }
+    
     public ProcessingStatus getProcessingStatus() {
         return processingStatus;
     }
@@ -1,5 +1,6 @@
 package com.ipter.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.time.LocalDateTime;
@@ -37,6 +38,12 @@ public class OCRResultDTO {
 
     @JsonProperty("error_message")
     private String errorMessage;
+
+    /**
+     * Extraction was not attempted because Gemini is unavailable (circuit open); retry later
+     */
+    @JsonIgnore
+    private boolean deferred;
     
     // Constructors
     public OCRResultDTO() {}
@@ -121,6 +128,14 @@ public class OCRResultDTO {
     public void setErrorMessage(String errorMessage) {
         this.errorMessage = errorMessage;
     }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
     
     /**
      * Container Number DTO
@@ -0,0 +1,65 @@
+package com.ipter.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DTO for the PDF extraction response: a flat list of numbers with their confidence
+ */
+public class PdfExtractionResultDTO {
+
+    private List<Item> items = new ArrayList<>();
+    private boolean partial;
+
+    public PdfExtractionResultDTO() {}
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+
+    /**
+     * True when the response was cut off and only the items read before the cut are present
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * One extracted number; confidence is a percentage string such as "87%"
+     */
+    public static class Item {
+        private String number;
+        private String confidence;
+
+        public Item() {}
+
+        public Item(String number, String confidence) {
+            this.number = number;
+            this.confidence = confidence;
+        }
+
+        public String getNumber() {
+            return number;
+        }
+
+        public void setNumber(String number) {
+            this.number = number;
+        }
+
+        public String getConfidence() {
+            return confidence;
+        }
+
+        public void setConfidence(String confidence) {
+            this.confidence = confidence;
+        }
+    }
+}
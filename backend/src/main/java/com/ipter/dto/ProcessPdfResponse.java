@@ -14,6 +14,9 @@ public class ProcessPdfResponse {
     private String message;
     private int extractedCount;
     private List<String> extractedContainerNumbers;
+    private int addedCount;
+    private int removedCount;
+    private int unchangedCount;
     private List<String> errors;
     private long processingTimeMs;
     
@@ -48,6 +51,15 @@ public class ProcessPdfResponse {
         this.extractedContainerNumbers = extractedContainerNumbers; 
     }
     
+    public int getAddedCount() { return addedCount; }
+    public void setAddedCount(int addedCount) { this.addedCount = addedCount; }
+    
+    public int getRemovedCount() { return removedCount; }
+    public void setRemovedCount(int removedCount) { this.removedCount = removedCount; }
+    
+    public int getUnchangedCount() { return unchangedCount; }
+    public void setUnchangedCount(int unchangedCount) { this.unchangedCount = unchangedCount; }
+    
     public List<String> getErrors() { return errors; }
     public void setErrors(List<String> errors) { this.errors = errors; }
     
@@ -0,0 +1,20 @@
+package com.ipter.event;
+
+import java.util.UUID;
+
+/**
+ * Published when an image has been put on the processing queue (status PENDING).
+ * Listeners run after the enqueuing transaction commits, so the row is visible to workers.
+ */
+public class ImageProcessingRequestedEvent {
+
+    private final UUID imageId;
+
+    public ImageProcessingRequestedEvent(UUID imageId) {
+        this.imageId = imageId;
+    }
+
+    public UUID getImageId() {
+        return imageId;
+    }
+}
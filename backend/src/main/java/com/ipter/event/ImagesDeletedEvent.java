@@ -0,0 +1,21 @@
+package com.ipter.event;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Published when images were removed, or their project was deleted. Listeners run after the
+ * transaction commits (used to delete the images' thumbnails from disk).
+ */
+public class ImagesDeletedEvent {
+
+    private final List<UUID> imageIds;
+
+    public ImagesDeletedEvent(List<UUID> imageIds) {
+        this.imageIds = List.copyOf(imageIds);
+    }
+
+    public List<UUID> getImageIds() {
+        return imageIds;
+    }
+}
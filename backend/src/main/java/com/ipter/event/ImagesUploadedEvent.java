@@ -0,0 +1,21 @@
+package com.ipter.event;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Published when image files have been stored. Listeners run after the upload transaction
+ * commits, so the rows and files are in place (used to generate thumbnails in the background).
+ */
+public class ImagesUploadedEvent {
+
+    private final List<UUID> imageIds;
+
+    public ImagesUploadedEvent(List<UUID> imageIds) {
+        this.imageIds = List.copyOf(imageIds);
+    }
+
+    public List<UUID> getImageIds() {
+        return imageIds;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ipter.event;
+
+import java.util.UUID;
+
+/**
+ * Published when a project's master data rows were replaced. Listeners run after the
+ * transaction commits (used to drop the cached master-data index of the project).
+ */
+public class MasterDataChangedEvent {
+
+    private final UUID projectId;
+
+    public MasterDataChangedEvent(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public UUID getProjectId() {
+        return projectId;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ipter.event;
+
+import java.util.UUID;
+
+/**
+ * Published when a project's details were edited. Listeners run after the transaction
+ * commits (used to drop the project's cached extraction-prompt examples).
+ */
+public class ProjectUpdatedEvent {
+
+    private final UUID projectId;
+
+    public ProjectUpdatedEvent(UUID projectId) {
+        this.projectId = projectId;
+    }
+
+    public UUID getProjectId() {
+        return projectId;
+    }
+}
@@ -13,6 +13,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -24,7 +25,10 @@ import jakarta.validation.constraints.Size;
  * Supports persistent review states and reviewer tracking
  */
 @Entity
-@Table(name = "audit_logs")
+@Table(name = "audit_logs", indexes = {
+    @Index(name = "idx_audit_logs_timestamp", columnList = "timestamp"),
+    @Index(name = "idx_audit_logs_review_status", columnList = "review_status, timestamp")
+})
 public class AuditLog {
     
     @Id
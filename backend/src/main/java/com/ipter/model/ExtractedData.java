@@ -10,11 +10,14 @@ import java.util.UUID;
  * ExtractedData entity representing OCR results from image processing
  */
 @Entity
-@Table(name = "extracted_data")
+@Table(name = "extracted_data", indexes = {
+    @Index(name = "idx_extracted_data_image", columnList = "image_id"),
+    @Index(name = "idx_extracted_data_container", columnList = "container_number")
+})
 public class ExtractedData {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.UUID) // assigned in memory, so inserts can be batched
     private UUID id;
     
     @ManyToOne(fetch = FetchType.LAZY)
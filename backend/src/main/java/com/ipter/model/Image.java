@@ -9,11 +9,18 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import com.ipter.service.ImageRemovalListener;
+
 /**
  * Image entity representing uploaded images for processing
  */
 @Entity
-@Table(name = "images")
+@EntityListeners(ImageRemovalListener.class)
+@Table(name = "images", indexes = {
+    @Index(name = "idx_images_project_uploaded", columnList = "project_id, uploaded_at"),
+    @Index(name = "idx_images_project_verified", columnList = "project_id, is_verified"),
+    @Index(name = "idx_images_status_queued", columnList = "processing_status, queued_at")
+})
 public class Image {
     
     @Id
@@ -38,6 +45,9 @@ public class Image {
     @NotNull(message = "File size is required")
     @Column(nullable = false)
     private Long fileSize;
+
+    @Column(length = 64)
+    private String contentSha256;
     
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -59,6 +69,16 @@ public class Image {
     
     private LocalDateTime processedAt;
     
+    // Set when the image is put on the processing queue; PENDING images without it are not picked up
+    private LocalDateTime queuedAt;
+    
+    // Set when a worker claims the image; used to detect jobs orphaned by a crash or restart
+    private LocalDateTime processingStartedAt;
+    
+    // DB default so ddl-auto can add the NOT NULL column to a table that already has rows
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    private int processingAttempts = 0;
+    
     @Column(length = 1000)
     private String errorMessage;
     
@@ -108,6 +128,9 @@ public class Image {
     public Long getFileSize() { return fileSize; }
     public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
     
+    public String getContentSha256() { return contentSha256; }
+    public void setContentSha256(String contentSha256) { this.contentSha256 = contentSha256; }
+    
     public ProcessingStatus getProcessingStatus() { return processingStatus; }
     public void setProcessingStatus(ProcessingStatus processingStatus) { this.processingStatus = processingStatus; }
     
@@ -126,6 +149,15 @@ public class Image {
     public LocalDateTime getProcessedAt() { return processedAt; }
     public void setProcessedAt(LocalDateTime processedAt) { this.processedAt = processedAt; }
     
+    public LocalDateTime getQueuedAt() { return queuedAt; }
+    public void setQueuedAt(LocalDateTime queuedAt) { this.queuedAt = queuedAt; }
+    
+    public LocalDateTime getProcessingStartedAt() { return processingStartedAt; }
+    public void setProcessingStartedAt(LocalDateTime processingStartedAt) { this.processingStartedAt = processingStartedAt; }
+    
+    public int getProcessingAttempts() { return processingAttempts; }
+    public void setProcessingAttempts(int processingAttempts) { this.processingAttempts = processingAttempts; }
+    
     public String getErrorMessage() { return errorMessage; }
     public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
     
@@ -9,6 +9,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PreUpdate;
@@ -20,11 +21,13 @@ import jakarta.validation.constraints.Size;
  * MasterData entity representing container numbers extracted from PDF files
  */
 @Entity
-@Table(name = "master_data")
+@Table(name = "master_data", indexes = {
+    @Index(name = "idx_master_data_project_container", columnList = "project_id, container_number")
+})
 public class MasterData {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.UUID) // assigned in memory, so inserts can be batched
     private UUID id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -1,6 +1,7 @@
 package com.ipter.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -9,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.ipter.dto.ExtractedContainerRow;
 import com.ipter.model.ExtractedData;
 import com.ipter.model.ExtractionType;
 import com.ipter.model.Image;
@@ -106,4 +108,25 @@ public interface ExtractedDataRepository extends JpaRepository<ExtractedData, UU
      */
     @Query("SELECT ed FROM ExtractedData ed JOIN ed.image i WHERE i.project.id = :projectId")
     List<ExtractedData> findByProjectId(@Param("projectId") UUID projectId);
+
+    /**
+     * (imageId, containerNumber, confidence) of every extracted container number in a project
+     */
+    @Query("SELECT new com.ipter.dto.ExtractedContainerRow(i.id, ed.containerNumber, ed.confidence) "
+         + "FROM ExtractedData ed JOIN ed.image i WHERE i.project.id = :projectId AND ed.containerNumber IS NOT NULL")
+    List<ExtractedContainerRow> findContainerRowsByProjectId(@Param("projectId") UUID projectId);
+
+    /**
+     * Distinct container numbers extracted anywhere in a project
+     */
+    @Query("SELECT DISTINCT ed.containerNumber FROM ExtractedData ed JOIN ed.image i "
+         + "WHERE i.project.id = :projectId AND ed.containerNumber IS NOT NULL AND ed.containerNumber != ''")
+    List<String> findDistinctContainerNumbersByProjectId(@Param("projectId") UUID projectId);
+
+    /**
+     * (imageId, containerNumber, confidence) of the extracted container numbers of several images at once
+     */
+    @Query("SELECT new com.ipter.dto.ExtractedContainerRow(ed.image.id, ed.containerNumber, ed.confidence) "
+         + "FROM ExtractedData ed WHERE ed.image.id IN :imageIds AND ed.containerNumber IS NOT NULL")
+    List<ExtractedContainerRow> findContainerRowsByImageIds(@Param("imageIds") Collection<UUID> imageIds);
 }
@@ -1,5 +1,7 @@
 package com.ipter.repository;
 
+import com.ipter.dto.ImageStatusCountRow;
+import com.ipter.dto.ImageSummaryRow;
 import com.ipter.model.Image;
 import com.ipter.model.ProcessingStatus;
 import com.ipter.model.Project;
@@ -7,9 +9,11 @@ import com.ipter.model.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -124,6 +128,14 @@ public interface ImageRepository extends JpaRepository<Image, UUID> {
      */
     List<Image> findByProjectAndIsVerified(Project project, boolean isVerified);
 
+    /**
+     * Id, name and upload time of a project's images (optionally verified only), oldest first
+     */
+    @Query("SELECT new com.ipter.dto.ImageSummaryRow(i.id, i.originalFilename, i.uploadedAt) FROM Image i "
+         + "WHERE i.project.id = :projectId AND (:verifiedOnly = false OR i.isVerified = true) ORDER BY i.uploadedAt")
+    List<ImageSummaryRow> findSummaryRowsByProjectId(@Param("projectId") UUID projectId,
+                                                     @Param("verifiedOnly") boolean verifiedOnly);
+
     /**
      * Find verified images by project ID
      */
@@ -135,6 +147,13 @@ public interface ImageRepository extends JpaRepository<Image, UUID> {
     @Query("SELECT COUNT(i) FROM Image i WHERE i.project.id = :projectId AND i.isVerified = :isVerified")
     long countByProjectIdAndIsVerified(@Param("projectId") UUID projectId, @Param("isVerified") boolean isVerified);
 
+    /**
+     * Image counts and found container numbers of a project, grouped by processing status and verification
+     */
+    @Query("SELECT new com.ipter.dto.ImageStatusCountRow(i.processingStatus, i.isVerified, COUNT(i), SUM(i.containerNumbersFound)) "
+         + "FROM Image i WHERE i.project.id = :projectId GROUP BY i.processingStatus, i.isVerified")
+    List<ImageStatusCountRow> countByProjectIdGroupByStatus(@Param("projectId") UUID projectId);
+
     /**
      * Find verified images with pagination
      */
@@ -144,4 +163,108 @@ public interface ImageRepository extends JpaRepository<Image, UUID> {
      * Find verified images by project with pagination
      */
     Page<Image> findByProjectAndIsVerified(Project project, boolean isVerified, Pageable pageable);
+
+    /**
+     * One keyset page of a project's images, newest first. Filters and the cursor are optional (null = off);
+     * the cursor is the (uploadedAt, id) of the last image of the previous page.
+     */
+    @Query("SELECT i FROM Image i WHERE i.project.id = :projectId " +
+           "AND (:status IS NULL OR i.processingStatus = :status) " +
+           "AND (:verified IS NULL OR i.isVerified = :verified) " +
+           "AND (:minConfidence IS NULL OR i.confidence >= :minConfidence) " +
+           "AND (:maxConfidence IS NULL OR i.confidence <= :maxConfidence) " +
+           "AND (:cursorUploadedAt IS NULL OR i.uploadedAt < :cursorUploadedAt " +
+           "     OR (i.uploadedAt = :cursorUploadedAt AND i.id < :cursorId)) " +
+           "ORDER BY i.uploadedAt DESC, i.id DESC")
+    List<Image> findPageByProjectId(@Param("projectId") UUID projectId,
+                                    @Param("status") ProcessingStatus status,
+                                    @Param("verified") Boolean verified,
+                                    @Param("minConfidence") Double minConfidence,
+                                    @Param("maxConfidence") Double maxConfidence,
+                                    @Param("cursorUploadedAt") LocalDateTime cursorUploadedAt,
+                                    @Param("cursorId") UUID cursorId,
+                                    Pageable pageable);
+
+    /**
+     * Number of a project's images matching the same optional filters as findPageByProjectId
+     */
+    @Query("SELECT COUNT(i) FROM Image i WHERE i.project.id = :projectId " +
+           "AND (:status IS NULL OR i.processingStatus = :status) " +
+           "AND (:verified IS NULL OR i.isVerified = :verified) " +
+           "AND (:minConfidence IS NULL OR i.confidence >= :minConfidence) " +
+           "AND (:maxConfidence IS NULL OR i.confidence <= :maxConfidence)")
+    long countFilteredByProjectId(@Param("projectId") UUID projectId,
+                                  @Param("status") ProcessingStatus status,
+                                  @Param("verified") Boolean verified,
+                                  @Param("minConfidence") Double minConfidence,
+                                  @Param("maxConfidence") Double maxConfidence);
+
+    /**
+     * Find IDs of all images of a project
+     */
+    @Query("SELECT i.id FROM Image i WHERE i.project.id = :projectId")
+    List<UUID> findIdsByProjectId(@Param("projectId") UUID projectId);
+
+    /**
+     * Find IDs of images waiting on the processing queue, oldest first
+     */
+    @Query("SELECT i.id FROM Image i WHERE i.processingStatus = 'PENDING' AND i.queuedAt IS NOT NULL " +
+           "ORDER BY i.queuedAt ASC")
+    List<UUID> findQueuedImageIds(Pageable pageable);
+
+    /**
+     * Find IDs of images that have been in PROCESSING since before the cutoff
+     */
+    @Query("SELECT i.id FROM Image i WHERE i.processingStatus = 'PROCESSING' " +
+           "AND (i.processingStartedAt IS NULL OR i.processingStartedAt < :cutoff)")
+    List<UUID> findStaleProcessingImageIds(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Atomically claim a queued PENDING image for processing. Returns 1 if this caller won the claim.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Image i SET i.processingStatus = 'PROCESSING', i.processingStartedAt = :now, " +
+           "i.processingAttempts = i.processingAttempts + 1 " +
+           "WHERE i.id = :id AND i.processingStatus = 'PENDING' AND i.queuedAt IS NOT NULL")
+    int claimForProcessing(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    /**
+     * Put a claimed image back on the queue (e.g. worker pool rejected it)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Image i SET i.processingStatus = 'PENDING', i.processingStartedAt = NULL, " +
+           "i.processingAttempts = i.processingAttempts - 1 WHERE i.id = :id AND i.processingStatus = 'PROCESSING'")
+    int releaseClaim(@Param("id") UUID id);
+
+    /**
+     * Return an orphaned PROCESSING image to the queue while it still has attempts left
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Image i SET i.processingStatus = 'PENDING', i.processingStartedAt = NULL, " +
+           "i.queuedAt = COALESCE(i.queuedAt, :now) " +
+           "WHERE i.id = :id AND i.processingStatus = 'PROCESSING' AND i.processingAttempts < :maxAttempts")
+    int requeueIfAttemptsRemain(@Param("id") UUID id, @Param("maxAttempts") int maxAttempts,
+                                @Param("now") LocalDateTime now);
+
+    /**
+     * Mark an orphaned PROCESSING image as failed once it has used up its attempts
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Image i SET i.processingStatus = 'FAILED', i.processingStartedAt = NULL, i.queuedAt = NULL, " +
+           "i.errorMessage = :message " +
+           "WHERE i.id = :id AND i.processingStatus = 'PROCESSING' AND i.processingAttempts >= :maxAttempts")
+    int failIfAttemptsExhausted(@Param("id") UUID id, @Param("maxAttempts") int maxAttempts,
+                                @Param("message") String message);
+
+    /**
+     * Record where an image's thumbnails were written, without touching the rest of the row
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Image i SET i.thumbnailPath = :path WHERE i.id = :id")
+    int updateThumbnailPath(@Param("id") UUID id, @Param("path") String path);
 }
@@ -5,10 +5,12 @@ import com.ipter.model.Project;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -24,6 +26,12 @@ public interface MasterDataRepository extends JpaRepository<MasterData, UUID> {
      */
     List<MasterData> findByProject(Project project);
     
+    /**
+     * Container numbers of a project in document order, without loading the entities (rawText is large)
+     */
+    @Query("SELECT md.containerNumber FROM MasterData md WHERE md.project.id = :projectId ORDER BY md.lineNumber")
+    List<String> findContainerNumbersByProjectId(@Param("projectId") UUID projectId);
+    
     /**
      * Find master data by project with pagination
      */
@@ -89,6 +97,14 @@ public interface MasterDataRepository extends JpaRepository<MasterData, UUID> {
      */
     void deleteByProject(Project project);
     
+    /**
+     * Delete the given container numbers of a project in one statement, without loading the entities
+     */
+    @Modifying
+    @Query("DELETE FROM MasterData md WHERE md.project.id = :projectId AND md.containerNumber IN :containerNumbers")
+    int deleteByProjectIdAndContainerNumberIn(@Param("projectId") UUID projectId,
+                                              @Param("containerNumbers") Collection<String> containerNumbers);
+    
     /**
      * Check if container number exists in project
      */
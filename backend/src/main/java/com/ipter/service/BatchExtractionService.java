@@ -0,0 +1,301 @@
+package com.ipter.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ipter.dto.OCRResultDTO;
+import com.ipter.dto.UploadAndExtractResponse;
+import com.ipter.model.Image;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bulk upload-and-extract for many images of one project.
+ *
+ * Files are persisted in one transaction, then extracted on a dedicated bounded pool and each
+ * result is written to the response as one NDJSON line as soon as it is ready. Lines are:
+ * an "accepted" line listing the stored images, one "result" line per image (in completion
+ * order, tagged with the upload index), and a final "summary" line.
+ */
+@Service
+public class BatchExtractionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchExtractionService.class);
+
+    private final ImageService imageService;
+    private final GeminiService geminiService;
+    private final ObjectMapper objectMapper;
+
+    private final int maxFiles;
+    private final long timeoutMs;
+    private final ThreadPoolExecutor executor;
+
+    public BatchExtractionService(ImageService imageService,
+                                  GeminiService geminiService,
+                                  ObjectMapper objectMapper,
+                                  @Value("${image.batch.concurrency:8}") int concurrency,
+                                  @Value("${image.batch.queue-capacity:1000}") int queueCapacity,
+                                  @Value("${image.batch.max-files:200}") int maxFiles,
+                                  @Value("${image.batch.timeout-ms:1800000}") long timeoutMs) {
+        this.imageService = imageService;
+        this.geminiService = geminiService;
+        this.objectMapper = objectMapper;
+        this.maxFiles = maxFiles;
+        this.timeoutMs = timeoutMs;
+
+        int workers = Math.max(1, concurrency);
+        this.executor = new ThreadPoolExecutor(
+            workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+            new CustomizableThreadFactory("batch-extract-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Store the files, start their extractions and return the stream the results are written to
+     */
+    public ResponseBodyEmitter uploadAndExtract(List<MultipartFile> files, UUID projectId, String exampleNumber)
+            throws Exception {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("No files provided");
+        }
+        if (files.size() > maxFiles) {
+            throw new IllegalArgumentException("Too many files: " + files.size() + " (maximum " + maxFiles + " per batch)");
+        }
+
+        List<Image> images = imageService.uploadImages(files, projectId);
+
+        // One example number for the whole batch keeps prompts (and extraction cache keys) consistent
+        String effectiveExampleNumber = exampleNumber != null && !exampleNumber.trim().isEmpty()
+            ? exampleNumber.trim()
+            : null;
+        if (effectiveExampleNumber == null) {
+            try {
+                effectiveExampleNumber = imageService.resolveExampleNumber(projectId);
+            } catch (Exception e) {
+                logger.warn("Could not resolve example number for project {}: {}", projectId, e.getMessage());
+            }
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        BatchRun run = new BatchRun(emitter, projectId, images.size());
+        run.emit(acceptedLine(projectId, images));
+
+        logger.info("Batch extraction started: {} images for project {} (example: {})",
+                    images.size(), projectId, effectiveExampleNumber);
+
+        // In multi-image mode consecutive uploads (often crops of the same stack) share one Gemini request
+        int groupSize = Math.max(1, geminiService.getMultiImageBatchSize());
+        for (int from = 0; from < images.size(); from += groupSize) {
+            int first = from;
+            List<Image> group = images.subList(from, Math.min(from + groupSize, images.size()));
+            String example = effectiveExampleNumber;
+            try {
+                executor.execute(() -> {
+                    if (group.size() == 1) {
+                        extractOne(run, first, group.get(0), example);
+                    } else {
+                        extractGroup(run, first, group, example);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Pool is saturated; hand the images to the persistent queue instead of dropping them
+                for (int i = 0; i < group.size(); i++) {
+                    imageService.processImageAsync(group.get(i).getId());
+                    run.finish(first + i, group.get(i), null, "Extraction pool busy; image queued for background processing");
+                }
+            }
+        }
+
+        return emitter;
+    }
+
+    private void extractOne(BatchRun run, int index, Image image, String exampleNumber) {
+        try {
+            OCRResultDTO ocr = geminiService.extractContainerNumbers(
+                new FileSystemResource(image.getFilePath()), image.getContentSha256(),
+                image.getOriginalFilename(), image.getContentType(), exampleNumber);
+            imageService.saveExtractedDataInline(image.getId(), ocr);
+            run.finish(index, image, ocr, null);
+        } catch (Exception e) {
+            logger.error("Batch extraction failed for image {}: {}", image.getId(), e.getMessage());
+            run.finish(index, image, null, requeue(image, e));
+        }
+    }
+
+    private void extractGroup(BatchRun run, int firstIndex, List<Image> group, String exampleNumber) {
+        List<GeminiService.BatchImage> batch = new ArrayList<>(group.size());
+        for (Image image : group) {
+            batch.add(new GeminiService.BatchImage(new FileSystemResource(image.getFilePath()), image.getContentSha256(),
+                image.getOriginalFilename(), image.getContentType()));
+        }
+
+        List<OCRResultDTO> results;
+        try {
+            results = geminiService.extractContainerNumbers(batch, exampleNumber);
+        } catch (Exception e) {
+            logger.error("Batch extraction failed for {} images: {}", group.size(), e.getMessage());
+            for (int i = 0; i < group.size(); i++) {
+                run.finish(firstIndex + i, group.get(i), null, requeue(group.get(i), e));
+            }
+            return;
+        }
+
+        // Each result goes back to its own Image row
+        for (int i = 0; i < group.size(); i++) {
+            Image image = group.get(i);
+            try {
+                imageService.saveExtractedDataInline(image.getId(), results.get(i));
+                run.finish(firstIndex + i, image, results.get(i), null);
+            } catch (Exception e) {
+                logger.error("Batch extraction failed for image {}: {}", image.getId(), e.getMessage());
+                run.finish(firstIndex + i, image, null, requeue(image, e));
+            }
+        }
+    }
+
+    /**
+     * Hand an image whose inline extraction failed to the persistent queue, so it does not stay
+     * PENDING without ever being picked up; returns the message for its result line
+     */
+    private String requeue(Image image, Exception cause) {
+        try {
+            imageService.processImageAsync(image.getId());
+            return "Extraction failed: " + cause.getMessage() + "; image queued for background processing";
+        } catch (Exception e) {
+            logger.error("Could not queue image {} after failed extraction: {}", image.getId(), e.getMessage());
+            return "Extraction failed: " + cause.getMessage();
+        }
+    }
+
+    private Map<String, Object> acceptedLine(UUID projectId, List<Image> images) {
+        List<Map<String, Object>> accepted = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("index", i);
+            entry.put("imageId", images.get(i).getId());
+            entry.put("imageName", images.get(i).getOriginalFilename());
+            accepted.add(entry);
+        }
+        Map<String, Object> line = new HashMap<>();
+        line.put("type", "accepted");
+        line.put("projectId", projectId);
+        line.put("total", images.size());
+        line.put("images", accepted);
+        return line;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Per-request state: writes NDJSON lines and completes the stream after the last image
+     */
+    private class BatchRun {
+        private final ResponseBodyEmitter emitter;
+        private final UUID projectId;
+        private final int total;
+        private final AtomicInteger remaining;
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private volatile boolean clientGone = false;
+
+        BatchRun(ResponseBodyEmitter emitter, UUID projectId, int total) {
+            this.emitter = emitter;
+            this.projectId = projectId;
+            this.total = total;
+            this.remaining = new AtomicInteger(total);
+            emitter.onTimeout(() -> clientGone = true);
+            emitter.onError(e -> clientGone = true);
+        }
+
+        void finish(int index, Image image, OCRResultDTO ocr, String errorMessage) {
+            boolean success = ocr != null && Boolean.TRUE.equals(ocr.getSuccess());
+            if (success) {
+                succeeded.incrementAndGet();
+            }
+
+            UploadAndExtractResponse response = new UploadAndExtractResponse();
+            response.setImageId(image.getId());
+            response.setProjectId(projectId);
+            response.setImageName(image.getOriginalFilename());
+            response.setUploadedAt(image.getUploadedAt());
+            response.setSuccess(success);
+            if (ocr != null) {
+                response.setMessage(success ? "Extraction successful"
+                    : ocr.isDeferred() ? "Gemini is temporarily unavailable; image queued for background processing"
+                    : ("Extraction failed: " + ocr.getErrorMessage()));
+                response.setExtractedText(ocr.getExtractedText());
+                response.setContainerNumbers(ocr.getContainerNumbers());
+                response.setConfidence(ocr.getConfidence());
+            } else {
+                response.setMessage(errorMessage);
+            }
+
+            Map<String, Object> line = new HashMap<>();
+            line.put("type", "result");
+            line.put("index", index);
+            line.put("data", response);
+            emit(line);
+
+            if (remaining.decrementAndGet() == 0) {
+                Map<String, Object> summary = new HashMap<>();
+                summary.put("type", "summary");
+                summary.put("success", succeeded.get() == total);
+                summary.put("projectId", projectId);
+                summary.put("total", total);
+                summary.put("succeeded", succeeded.get());
+                summary.put("failed", total - succeeded.get());
+                emit(summary);
+                complete();
+            }
+        }
+
+        synchronized void emit(Map<String, Object> line) {
+            if (clientGone) {
+                return; // results are already persisted; the client can read them via /images/{id}/status
+            }
+            try {
+                emitter.send(objectMapper.writeValueAsString(line) + "\n", MediaType.APPLICATION_NDJSON);
+            } catch (IOException | IllegalStateException e) {
+                clientGone = true;
+                logger.info("Batch client for project {} disconnected; continuing without streaming", projectId);
+            }
+        }
+
+        synchronized void complete() {
+            if (!clientGone) {
+                emitter.complete();
+            }
+        }
+    }
+}
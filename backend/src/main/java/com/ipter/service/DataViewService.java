@@ -1,6 +1,7 @@
 package com.ipter.service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,15 +15,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.ipter.dto.ExtractedContainerRow;
 import com.ipter.dto.ImageDataViewDTO;
+import com.ipter.dto.ImageSummaryRow;
 import com.ipter.dto.ProjectDataViewDTO;
 import com.ipter.model.ExtractedData;
 import com.ipter.model.Image;
-import com.ipter.model.MasterData;
 import com.ipter.model.Project;
 import com.ipter.repository.ExtractedDataRepository;
 import com.ipter.repository.ImageRepository;
-import com.ipter.repository.MasterDataRepository;
 import com.ipter.repository.ProjectRepository;
 
 /**
@@ -43,7 +44,7 @@ public class DataViewService {
     private ExtractedDataRepository extractedDataRepository;
     
     @Autowired
-    private MasterDataRepository masterDataRepository;
+    private MasterDataIndexService masterDataIndexService;
     
     /**
      * Get image data view - compare single image extracted data with master data
@@ -57,13 +58,9 @@ public class DataViewService {
         }
         
         Image image = imageOpt.get();
-        Project project = image.getProject();
         
-        // Get master data for the project
-        List<MasterData> masterDataList = masterDataRepository.findByProject(project);
-        List<String> masterContainers = masterDataList.stream()
-            .map(MasterData::getContainerNumber)
-            .collect(Collectors.toList());
+        // Master data for the project from the cached index (only the numbers, never the entities)
+        MasterDataIndex masterIndex = masterDataIndexService.getIndex(image.getProject().getId());
         
         // Get extracted data for the image
         List<ExtractedData> extractedDataList = extractedDataRepository.findByImageId(imageId);
@@ -71,7 +68,7 @@ public class DataViewService {
             .filter(ed -> ed.getContainerNumber() != null && !ed.getContainerNumber().trim().isEmpty())
             .map(ed -> {
                 String containerNumber = ed.getContainerNumber().trim();
-                boolean isMatched = masterContainers.contains(containerNumber);
+                boolean isMatched = masterIndex.contains(containerNumber);
                 return new ImageDataViewDTO.ExtractedContainerDTO(
                     containerNumber, ed.getConfidence(), isMatched);
             })
@@ -81,7 +78,7 @@ public class DataViewService {
             image.getId(),
             image.getOriginalFilename(),
             image.getUploadedAt(),
-            masterContainers,
+            masterIndex.getContainerNumbers(),
             extractedContainers
         );
     }
@@ -106,100 +103,81 @@ public class DataViewService {
         
         Project project = projectOpt.get();
         
-        // Get master data for the project
-        List<MasterData> masterDataList = masterDataRepository.findByProject(project);
-        List<String> masterContainers = masterDataList.stream()
-            .map(MasterData::getContainerNumber)
-            .collect(Collectors.toList());
-        
-        // Get images in the project based on verification filter
-        List<Image> images = verifiedOnly ?
-            imageRepository.findByProjectAndIsVerified(project, true) :
-            imageRepository.findByProject(project);
-        
-        // Get extracted data for all images in the project
-        List<ExtractedData> allExtractedData = extractedDataRepository.findByProjectId(projectId);
-        Map<UUID, List<ExtractedData>> extractedDataByImage = allExtractedData.stream()
-            .collect(Collectors.groupingBy(ed -> ed.getImage().getId()));
+        // Master data comes from the cached per-project index
+        MasterDataIndex masterIndex = masterDataIndexService.getIndex(projectId);
+        
+        // Images and extracted numbers as flat projections: no entities, no lazy loads
+        List<ImageSummaryRow> images = imageRepository.findSummaryRowsByProjectId(projectId, verifiedOnly);
+        List<ExtractedContainerRow> extractedRows = extractedDataRepository.findContainerRowsByProjectId(projectId);
+        
+        // Group trimmed container numbers by image, keeping the highest confidence per number
+        Map<UUID, List<String>> containersByImage = new HashMap<>();
+        Map<UUID, Map<String, Double>> confidencesByImage = new HashMap<>();
+        List<String> allExtracted = new ArrayList<>(extractedRows.size());
+        for (ExtractedContainerRow row : extractedRows) {
+            String containerNumber = row.getContainerNumber().trim();
+            if (containerNumber.isEmpty()) {
+                continue;
+            }
+            allExtracted.add(containerNumber);
+            containersByImage.computeIfAbsent(row.getImageId(), id -> new ArrayList<>()).add(containerNumber);
+            Map<String, Double> confidences = confidencesByImage.computeIfAbsent(row.getImageId(), id -> new HashMap<>());
+            if (row.getConfidence() == null) {
+                confidences.putIfAbsent(containerNumber, null);
+            } else {
+                confidences.merge(containerNumber, row.getConfidence(), Math::max); // Keep highest confidence
+            }
+        }
         
         // Build image summaries
-        List<ProjectDataViewDTO.ImageDataSummaryDTO> imageSummaries = images.stream()
-            .map(image -> {
-                List<ExtractedData> imageExtractedData = extractedDataByImage.getOrDefault(image.getId(), new ArrayList<>());
-                
-                List<String> extractedContainers = imageExtractedData.stream()
-                    .filter(ed -> ed.getContainerNumber() != null && !ed.getContainerNumber().trim().isEmpty())
-                    .map(ed -> ed.getContainerNumber().trim())
-                    .collect(Collectors.toList());
-                
-                Map<String, Double> containerConfidences = imageExtractedData.stream()
-                    .filter(ed -> ed.getContainerNumber() != null && !ed.getContainerNumber().trim().isEmpty())
-                    .collect(Collectors.toMap(
-                        ed -> ed.getContainerNumber().trim(),
-                        ExtractedData::getConfidence,
-                        (existing, replacement) -> Math.max(existing, replacement) // Keep highest confidence
-                    ));
-                
-                // Generate image URL (assuming images are served from /api/images/{imageId})
-                String imageUrl = "/api/images/" + image.getId() + "/view";
-
-                return new ProjectDataViewDTO.ImageDataSummaryDTO(
-                    image.getId(),
-                    image.getOriginalFilename(),
-                    imageUrl,
-                    image.getUploadedAt(),
-                    extractedContainers,
-                    containerConfidences
-                );
-            })
-            .collect(Collectors.toList());
+        List<ProjectDataViewDTO.ImageDataSummaryDTO> imageSummaries = new ArrayList<>(images.size());
+        for (ImageSummaryRow image : images) {
+            // Generate image URL (assuming images are served from /api/images/{imageId})
+            String imageUrl = "/api/images/" + image.getImageId() + "/view";
+            
+            imageSummaries.add(new ProjectDataViewDTO.ImageDataSummaryDTO(
+                image.getImageId(),
+                image.getOriginalFilename(),
+                imageUrl,
+                image.getUploadedAt(),
+                containersByImage.getOrDefault(image.getImageId(), new ArrayList<>()),
+                confidencesByImage.getOrDefault(image.getImageId(), new HashMap<>())
+            ));
+        }
         
         // Calculate project summary statistics
-        ProjectDataViewDTO.ProjectSummaryDTO summary = calculateProjectSummary(masterContainers, allExtractedData);
+        ProjectDataViewDTO.ProjectSummaryDTO summary = calculateProjectSummary(masterIndex, allExtracted);
         
         return new ProjectDataViewDTO(
             project.getId(),
             project.getName(),
             project.getCreatedAt(),
-            masterContainers,
+            masterIndex.getContainerNumbers(),
             imageSummaries,
             summary
         );
     }
     
     /**
-     * Calculate project summary statistics
+     * Calculate project summary statistics in one pass over the extracted numbers
      */
-    private ProjectDataViewDTO.ProjectSummaryDTO calculateProjectSummary(List<String> masterContainers, List<ExtractedData> allExtractedData) {
-        Set<String> masterSet = new HashSet<>(masterContainers);
-        
-        List<String> extractedContainers = allExtractedData.stream()
-            .filter(ed -> ed.getContainerNumber() != null && !ed.getContainerNumber().trim().isEmpty())
-            .map(ed -> ed.getContainerNumber().trim())
-            .collect(Collectors.toList());
-        
-        Set<String> extractedSet = new HashSet<>(extractedContainers);
-        
-        // Calculate matches
-        Set<String> matched = new HashSet<>(extractedSet);
-        matched.retainAll(masterSet);
-        
-        // Calculate unmatched (extracted but not in master)
-        Set<String> unmatched = new HashSet<>(extractedSet);
-        unmatched.removeAll(masterSet);
+    private ProjectDataViewDTO.ProjectSummaryDTO calculateProjectSummary(MasterDataIndex masterIndex, List<String> extractedContainers) {
+        Set<String> extractedSet = new HashSet<>(extractedContainers.size() * 2);
+        int matched = 0;
+        for (String containerNumber : extractedContainers) {
+            if (extractedSet.add(containerNumber) && masterIndex.contains(containerNumber)) {
+                matched++;
+            }
+        }
         
-        // Calculate duplicates (extracted multiple times)
-        Map<String, Long> containerCounts = extractedContainers.stream()
-            .collect(Collectors.groupingBy(c -> c, Collectors.counting()));
-        int duplicates = (int) containerCounts.values().stream()
-            .mapToLong(count -> Math.max(0, count - 1))
-            .sum();
+        // Every repeat of an already-seen number counts as one duplicate
+        int duplicates = extractedContainers.size() - extractedSet.size();
         
         return new ProjectDataViewDTO.ProjectSummaryDTO(
-            masterContainers.size(),
+            masterIndex.size(),
             extractedContainers.size(),
-            matched.size(),
-            unmatched.size(),
+            matched,
+            extractedSet.size() - matched,
             duplicates
         );
     }
@@ -0,0 +1,37 @@
+package com.ipter.service;
+
+import java.time.Duration;
+
+/**
+ * Non-2xx response from the Gemini API, keeping the status code so callers can tell
+ * overload (429/503) and other transient errors apart from permanent ones
+ */
+public class GeminiApiException extends RuntimeException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public GeminiApiException(int statusCode, String message, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Server-suggested wait from the Retry-After header, or null if none was sent
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * 429 Too Many Requests or 503 Service Unavailable: the server is asking us to slow down
+     */
+    public boolean isOverload() {
+        return statusCode == 429 || statusCode == 503;
+    }
+}
@@ -0,0 +1,245 @@
+package com.ipter.service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Circuit breaker around Gemini HTTP exchanges.
+ *
+ * Outcomes of the last window-size exchanges are kept in a ring. Once at least min-calls are
+ * recorded and either the failure rate (timeouts, connection errors, 408/429/5xx) or the slow-call
+ * rate crosses its threshold, the breaker opens: calls are refused immediately so callers can fall
+ * back (legacy AI service or the processing queue) instead of each waiting out the HTTP timeout.
+ * After open-duration-ms it lets half-open-calls trial calls through; if they all succeed it
+ * closes, otherwise it opens again.
+ */
+@Service
+public class GeminiCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * What extraction callers do while the breaker refuses calls
+     */
+    public enum Fallback { QUEUE, LEGACY }
+
+    private final boolean enabled;
+    private final Fallback fallback;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallThresholdMs;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    // Guarded by this
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private Instant openedAt;
+    private int halfOpenPermitted;
+    private int halfOpenSucceeded;
+
+    private final Counter rejections;
+    private final MeterRegistry meterRegistry;
+
+    public GeminiCircuitBreaker(@Value("${gemini.circuit-breaker.enabled:true}") boolean enabled,
+                                @Value("${gemini.circuit-breaker.fallback:queue}") String fallback,
+                                @Value("${gemini.circuit-breaker.window-size:20}") int windowSize,
+                                @Value("${gemini.circuit-breaker.min-calls:10}") int minCalls,
+                                @Value("${gemini.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+                                @Value("${gemini.circuit-breaker.slow-call-threshold-ms:30000}") long slowCallThresholdMs,
+                                @Value("${gemini.circuit-breaker.slow-call-rate-threshold:80}") double slowCallRateThreshold,
+                                @Value("${gemini.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+                                @Value("${gemini.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.fallback = Fallback.valueOf(fallback.trim().toUpperCase(Locale.ROOT));
+        int size = Math.max(1, windowSize);
+        this.failed = new boolean[size];
+        this.slow = new boolean[size];
+        this.minCalls = Math.min(size, Math.max(1, minCalls));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThresholdMs = slowCallThresholdMs;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("gemini.circuit.state", this, b -> b.state.ordinal())
+            .description("Gemini circuit breaker state (0=closed, 1=open, 2=half-open)").register(meterRegistry);
+        this.rejections = Counter.builder("gemini.circuit.rejections")
+            .description("Gemini calls refused because the circuit was open").register(meterRegistry);
+    }
+
+    /**
+     * Whether a call may be sent now. In HALF_OPEN only a limited number of trial calls are allowed;
+     * a caller that is granted one must report its outcome (or release it if it never sent).
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (!enabled) {
+            return true;
+        }
+        State current = currentState();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.HALF_OPEN && halfOpenPermitted < halfOpenCalls) {
+            halfOpenPermitted++;
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * Give back a half-open trial slot for a call that was never sent
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > halfOpenSucceeded) {
+            halfOpenPermitted--;
+        }
+    }
+
+    public synchronized void onSuccess(long durationMs) {
+        record(false, durationMs >= slowCallThresholdMs);
+    }
+
+    public synchronized void onFailure(long durationMs) {
+        record(true, durationMs >= slowCallThresholdMs);
+    }
+
+    public synchronized State getState() {
+        return enabled ? currentState() : State.CLOSED;
+    }
+
+    public Fallback getFallback() {
+        return fallback;
+    }
+
+    /**
+     * True while queued work should wait: the breaker is open and the fallback is to keep images queued
+     */
+    public boolean isQueuePaused() {
+        return fallback == Fallback.QUEUE && getState() == State.OPEN;
+    }
+
+    /**
+     * Point-in-time view for the actuator endpoint
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("state", getState());
+        snapshot.put("fallback", fallback);
+        snapshot.put("bufferedCalls", recorded);
+        snapshot.put("failureRate", rate(failures));
+        snapshot.put("slowCallRate", rate(slowCalls));
+        snapshot.put("failureRateThreshold", failureRateThreshold);
+        snapshot.put("slowCallRateThreshold", slowCallRateThreshold);
+        snapshot.put("slowCallThresholdMs", slowCallThresholdMs);
+        snapshot.put("openedAt", openedAt);
+        snapshot.put("rejectedCalls", (long) rejections.count());
+        return snapshot;
+    }
+
+    private State currentState() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (!enabled) {
+            return;
+        }
+        State current = currentState();
+        if (current == State.HALF_OPEN) {
+            if (failure || slowCall) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (current == State.OPEN) {
+            return; // a call that started before the breaker opened
+        }
+
+        if (recorded == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        if (recorded >= minCalls
+                && (rate(failures) >= failureRateThreshold || rate(slowCalls) >= slowCallRateThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private double rate(int count) {
+        return recorded == 0 ? 0 : 100.0 * count / recorded;
+    }
+
+    private void transitionTo(State target) {
+        State previous = state;
+        if (target == State.OPEN) {
+            logger.warn("Gemini circuit {} -> OPEN (failure rate {}%, slow-call rate {}% over {} calls); fallback: {}",
+                        previous, Math.round(rate(failures)), Math.round(rate(slowCalls)), recorded, fallback);
+            openedAtNanos = System.nanoTime();
+            openedAt = Instant.now();
+        } else {
+            logger.info("Gemini circuit {} -> {}", previous, target);
+        }
+        if (target != State.HALF_OPEN) {
+            // Both CLOSED and a fresh OPEN start from an empty window
+            next = 0;
+            recorded = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+        if (target == State.CLOSED) {
+            openedAt = null;
+        }
+        halfOpenPermitted = 0;
+        halfOpenSucceeded = 0;
+        state = target;
+        meterRegistry.counter("gemini.circuit.transitions", "to", target.name().toLowerCase(Locale.ROOT)).increment();
+    }
+
+    /**
+     * Thrown instead of sending a call while the breaker is open
+     */
+    public static class CallNotPermittedException extends RuntimeException {
+        public CallNotPermittedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.ipter.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.ipter.dto.GeminiCachedContentDTO;
+import com.ipter.dto.GeminiRequestDTO;
+import com.ipter.util.ContentHashUtil;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gemini context caches for the static extraction instructions.
+ *
+ * The extraction prompt is several thousand tokens and identical for every image of a project, so
+ * it is uploaded once per prompt text (variant + example block) to the cachedContents API and
+ * generateContent requests only reference it by name. A cache is extended (ttl PATCH) in the
+ * background once it is used within refresh-margin of its expiry, and recreated if the extension fails.
+ *
+ * cachedContents calls go through the circuit breaker and only take rate-limit capacity that is free
+ * right now, and nothing is called while an entry is locked. A caller waits at most create-wait for a
+ * new cache; past that, or if anything goes wrong, the prompt is simply sent inline. A failed creation
+ * (for example a prompt below the model's minimum cacheable size) is not retried for failure-backoff,
+ * and a name Gemini no longer accepts is dropped via invalidate().
+ */
+@Service
+public class GeminiContextCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiContextCache.class);
+
+    private final WebClient webClient;
+    private final String apiBaseUrl;
+    private final String model;
+    private final String apiKey;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Duration refreshMargin;
+    private final Duration failureBackoff;
+    private final Duration createWait;
+    private final Duration callTimeout;
+    private final int maxEntries;
+    private final GeminiRateLimiter rateLimiter;
+    private final GeminiCircuitBreaker circuitBreaker;
+
+    // Guarded by itself; each Entry is guarded by its own monitor
+    private final Map<String, Entry> entries;
+
+    private final Counter created;
+    private final Counter refreshed;
+    private final Counter failures;
+
+    @Autowired
+    public GeminiContextCache(@Qualifier("geminiWebClient") WebClient webClient,
+                              @Value("${gemini.api.url:https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent}") String apiUrl,
+                              @Value("${gemini.api.key}") String apiKey,
+                              @Value("${gemini.context-cache.enabled:false}") boolean enabled,
+                              @Value("${gemini.context-cache.ttl-seconds:3600}") long ttlSeconds,
+                              @Value("${gemini.context-cache.refresh-margin-seconds:300}") long refreshMarginSeconds,
+                              @Value("${gemini.context-cache.failure-backoff-seconds:600}") long failureBackoffSeconds,
+                              @Value("${gemini.context-cache.max-entries:100}") int maxEntries,
+                              @Value("${gemini.context-cache.create-wait-ms:2000}") long createWaitMs,
+                              @Value("${gemini.context-cache.call-timeout-ms:10000}") long callTimeoutMs,
+                              GeminiRateLimiter rateLimiter,
+                              GeminiCircuitBreaker circuitBreaker,
+                              MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        // .../v1beta/models/gemini-2.0-flash:generateContent -> base .../v1beta, model models/gemini-2.0-flash
+        int modelsIndex = apiUrl.indexOf("/models/");
+        int methodIndex = apiUrl.lastIndexOf(':');
+        this.apiBaseUrl = modelsIndex > 0 ? apiUrl.substring(0, modelsIndex) : apiUrl;
+        this.model = modelsIndex > 0 && methodIndex > modelsIndex ? apiUrl.substring(modelsIndex + 1, methodIndex) : null;
+        this.apiKey = apiKey;
+        this.enabled = enabled && model != null;
+        this.ttl = Duration.ofSeconds(Math.max(60, ttlSeconds));
+        this.refreshMargin = Duration.ofSeconds(Math.max(0, Math.min(refreshMarginSeconds, this.ttl.getSeconds() / 2)));
+        this.failureBackoff = Duration.ofSeconds(Math.max(0, failureBackoffSeconds));
+        this.createWait = Duration.ofMillis(Math.max(0, createWaitMs));
+        this.callTimeout = Duration.ofMillis(Math.max(100, callTimeoutMs));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > GeminiContextCache.this.maxEntries;
+            }
+        };
+
+        this.created = Counter.builder("gemini.context.cache.created")
+                .description("Prompt prefixes uploaded to the Gemini cachedContents API").register(meterRegistry);
+        this.refreshed = Counter.builder("gemini.context.cache.refreshed")
+                .description("Cached prompt prefixes extended before their TTL ran out").register(meterRegistry);
+        this.failures = Counter.builder("gemini.context.cache.failures")
+                .description("Failed cachedContents calls (the prompt is sent inline instead)").register(meterRegistry);
+
+        if (enabled && model == null) {
+            logger.warn("Gemini context caching disabled: cannot derive the model from {}", apiUrl);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Name of a live cached content holding the prompt text, or null to send the prompt inline
+     */
+    public String getCachedContentName(String promptVariant, String promptText) {
+        if (!enabled) {
+            return null;
+        }
+        String key = promptVariant + ":" + ContentHashUtil.sha256Hex(promptText.getBytes(StandardCharsets.UTF_8));
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+        }
+
+        CompletableFuture<String> pending;
+        boolean startCreate = false;
+        boolean startExtend = false;
+        String name;
+        synchronized (entry) {
+            Instant now = Instant.now();
+            name = entry.name;
+            if (name != null && now.isBefore(entry.expireAt)) {
+                if (entry.pending == null && !now.isBefore(entry.expireAt.minus(refreshMargin))) {
+                    entry.pending = new CompletableFuture<>();
+                    startExtend = true;
+                }
+                pending = entry.pending;
+            } else {
+                name = null;
+                if (entry.failedUntil != null && now.isBefore(entry.failedUntil)) {
+                    return null;
+                }
+                if (entry.pending == null) {
+                    entry.pending = new CompletableFuture<>();
+                    startCreate = true;
+                }
+                pending = entry.pending;
+            }
+        }
+
+        if (startExtend) {
+            extend(entry, name, promptVariant, promptText, pending);
+        } else if (startCreate) {
+            create(entry, promptVariant, promptText, pending);
+        }
+        if (name != null) {
+            return name; // still live; any extension runs in the background
+        }
+
+        try {
+            return pending.get(createWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("Gemini context cache for {} not ready within {} ms; sending the prompt inline",
+                         promptVariant, createWait.toMillis());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forget a cached content that Gemini rejected (expired or deleted), so the next call recreates it
+     */
+    public void invalidate(String cachedContentName) {
+        if (cachedContentName == null) {
+            return;
+        }
+        List<Entry> snapshot;
+        synchronized (entries) {
+            snapshot = List.copyOf(entries.values());
+        }
+        for (Entry entry : snapshot) {
+            synchronized (entry) {
+                if (cachedContentName.equals(entry.name)) {
+                    entry.name = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Upload the prompt and complete pending with the new name, or null if it could not be cached
+     */
+    private void create(Entry entry, String promptVariant, String promptText, CompletableFuture<String> pending) {
+        GeminiCachedContentDTO request = new GeminiCachedContentDTO();
+        request.setModel(model);
+        request.setDisplayName("ipter-" + promptVariant);
+        request.setContents(List.of(new GeminiRequestDTO.ContentPart("user",
+            List.of(new GeminiRequestDTO.Part(promptText)))));
+        request.setTtl(ttl.getSeconds() + "s");
+
+        long estimatedTokens = rateLimiter.estimateTokens(promptText.length(), 0, 0);
+        gated(() -> webClient.post()
+                .uri(apiBaseUrl + "/cachedContents?key=" + apiKey)
+                .header("x-goog-api-key", apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(GeminiCachedContentDTO.class), estimatedTokens)
+            .subscribe(response -> {
+                String name = null;
+                synchronized (entry) {
+                    entry.pending = null;
+                    if (response.getName() != null) {
+                        name = response.getName();
+                        entry.name = name;
+                        entry.expireAt = expireTime(response, Instant.now());
+                        entry.failedUntil = null;
+                    }
+                }
+                if (name != null) {
+                    created.increment();
+                    logger.info("Created Gemini context cache {} for {}", name, promptVariant);
+                } else {
+                    createFailed(entry, promptVariant, new IllegalStateException("cachedContents response has no name"));
+                }
+                pending.complete(name);
+            }, error -> {
+                createFailed(entry, promptVariant, error);
+                pending.complete(null);
+            }, () -> {
+                if (!pending.isDone()) {
+                    createFailed(entry, promptVariant, new IllegalStateException("empty cachedContents response"));
+                    pending.complete(null);
+                }
+            });
+    }
+
+    private void createFailed(Entry entry, String promptVariant, Throwable error) {
+        synchronized (entry) {
+            entry.pending = null;
+            entry.name = null;
+            // Busy or open circuit: just try again on a later use
+            if (!isSkipped(error)) {
+                entry.failedUntil = Instant.now().plus(failureBackoff);
+            }
+        }
+        if (isSkipped(error)) {
+            logger.debug("Gemini context cache for {} not created: {}", promptVariant, error.getMessage());
+        } else {
+            failures.increment();
+            logger.warn("Could not create Gemini context cache for {}; sending the prompt inline: {}",
+                        promptVariant, error.getMessage());
+        }
+    }
+
+    /**
+     * Push the expiry of a live cache out by ttl; if Gemini refuses, upload the prompt again
+     */
+    private void extend(Entry entry, String name, String promptVariant, String promptText,
+                        CompletableFuture<String> pending) {
+        GeminiCachedContentDTO request = new GeminiCachedContentDTO();
+        request.setTtl(ttl.getSeconds() + "s");
+
+        gated(() -> webClient.patch()
+                .uri(apiBaseUrl + "/" + name + "?updateMask=ttl&key=" + apiKey)
+                .header("x-goog-api-key", apiKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(GeminiCachedContentDTO.class), 0)
+            .subscribe(response -> {
+                synchronized (entry) {
+                    entry.pending = null;
+                    if (name.equals(entry.name)) {
+                        entry.expireAt = expireTime(response, Instant.now());
+                    }
+                }
+                refreshed.increment();
+                logger.debug("Extended Gemini context cache {}", name);
+                pending.complete(name);
+            }, error -> {
+                if (isSkipped(error)) {
+                    synchronized (entry) {
+                        entry.pending = null;
+                    }
+                    pending.complete(name);
+                    return;
+                }
+                logger.warn("Could not extend Gemini context cache {}; creating a new one: {}", name, error.getMessage());
+                create(entry, promptVariant, promptText, pending);
+            }, () -> {
+                if (!pending.isDone()) {
+                    create(entry, promptVariant, promptText, pending);
+                }
+            });
+    }
+
+    /**
+     * A cachedContents call behind the circuit breaker and the rate limiter. These calls are an
+     * optimisation, so they never queue for capacity: without a free permit they fail right away.
+     */
+    private Mono<GeminiCachedContentDTO> gated(Supplier<Mono<GeminiCachedContentDTO>> call, long estimatedTokens) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(new GeminiCircuitBreaker.CallNotPermittedException(
+                    "Gemini circuit breaker is " + circuitBreaker.getState()));
+            }
+            GeminiRateLimiter.Permit permit = rateLimiter.tryAcquire(estimatedTokens);
+            if (permit == null) {
+                circuitBreaker.releasePermission();
+                return Mono.error(new GeminiRateLimiter.LimitExceededException("No free Gemini capacity"));
+            }
+            long start = System.nanoTime();
+            return call.get()
+                .timeout(callTimeout)
+                .doOnSuccess(response -> {
+                    circuitBreaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    permit.onSuccess(null);
+                })
+                .doOnError(e -> {
+                    if (e instanceof WebClientResponseException response && response.getStatusCode().is4xxClientError()
+                            && response.getStatusCode().value() != 429) {
+                        circuitBreaker.releasePermission(); // Gemini answered; it will not cache this
+                        permit.onFailure();
+                    } else {
+                        circuitBreaker.onFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        if (e instanceof WebClientResponseException response
+                                && (response.getStatusCode().value() == 429 || response.getStatusCode().value() == 503)) {
+                            permit.onOverload(null);
+                        } else {
+                            permit.onFailure();
+                        }
+                    }
+                })
+                .doOnCancel(() -> {
+                    permit.onFailure();
+                    circuitBreaker.releasePermission();
+                });
+        });
+    }
+
+    private static boolean isSkipped(Throwable e) {
+        return e instanceof GeminiCircuitBreaker.CallNotPermittedException
+            || e instanceof GeminiRateLimiter.LimitExceededException;
+    }
+
+    /**
+     * Server expiry if present, otherwise now + ttl
+     */
+    private Instant expireTime(GeminiCachedContentDTO response, Instant now) {
+        if (response != null && response.getExpireTime() != null) {
+            try {
+                return Instant.parse(response.getExpireTime());
+            } catch (DateTimeParseException e) {
+                logger.debug("Unparseable cachedContents expireTime: {}", response.getExpireTime());
+            }
+        }
+        return now.plus(ttl);
+    }
+
+    private static final class Entry {
+        private String name;
+        private Instant expireAt;
+        private Instant failedUntil;
+        // Creation or extension in flight; completes with the usable name or null
+        private CompletableFuture<String> pending;
+    }
+}
@@ -0,0 +1,297 @@
+package com.ipter.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.ipter.dto.OCRResultDTO;
+import com.ipter.util.ContentHashUtil;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache of parsed Gemini extraction results keyed by image content.
+ *
+ * Key = SHA-256 of the image bytes + prompt variant + example number, so the same photo
+ * uploaded twice (or reprocessed unchanged) never pays for a second model call. Entries are
+ * kept as serialized JSON: an LRU memory tier bounded by entry count, plus an optional disk
+ * tier that survives restarts. Both tiers expire entries after the configured TTL.
+ */
+@Service
+public class GeminiExtractionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiExtractionCache.class);
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path diskDir;
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final Map<String, CacheEntry> memory;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    @Autowired
+    public GeminiExtractionCache(@Value("${gemini.cache.enabled:true}") boolean enabled,
+                                 @Value("${gemini.cache.max-entries:1000}") int maxEntries,
+                                 @Value("${gemini.cache.ttl-minutes:1440}") long ttlMinutes,
+                                 @Value("${gemini.cache.disk.enabled:false}") boolean diskEnabled,
+                                 @Value("${gemini.cache.disk.dir:./cache/gemini}") String diskDir,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.diskDir = enabled && diskEnabled ? Paths.get(diskDir) : null;
+
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > GeminiExtractionCache.this.maxEntries) {
+                    sizeEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.memoryHits = Counter.builder("gemini.extraction.cache.hits").tag("tier", "memory")
+                .description("Extraction results served from the in-memory cache").register(meterRegistry);
+        this.diskHits = Counter.builder("gemini.extraction.cache.hits").tag("tier", "disk")
+                .description("Extraction results served from the on-disk cache").register(meterRegistry);
+        this.misses = Counter.builder("gemini.extraction.cache.misses")
+                .description("Extractions that had to call Gemini").register(meterRegistry);
+        this.sizeEvictions = Counter.builder("gemini.extraction.cache.evictions").tag("cause", "size")
+                .description("Entries evicted by the LRU bound").register(meterRegistry);
+        this.expiredEvictions = Counter.builder("gemini.extraction.cache.evictions").tag("cause", "expired")
+                .description("Entries evicted after their TTL").register(meterRegistry);
+        Gauge.builder("gemini.extraction.cache.size", this, GeminiExtractionCache::memorySize)
+                .description("Entries in the in-memory cache").register(meterRegistry);
+
+        if (this.diskDir != null) {
+            try {
+                Files.createDirectories(this.diskDir);
+            } catch (IOException e) {
+                logger.warn("Could not create extraction cache directory {}: {}", this.diskDir, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Build a cache key for an image extraction
+     */
+    public static String key(String contentSha256, String promptVariant, String exampleNumber) {
+        String example = exampleNumber == null ? "" : exampleNumber.trim();
+        return contentSha256 + "|" + promptVariant + "|" + example;
+    }
+
+    /**
+     * Look up a cached result. Returns a fresh copy the caller may modify.
+     */
+    public Optional<OCRResultDTO> get(String key) {
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+
+        long now = System.currentTimeMillis();
+        byte[] json = null;
+
+        synchronized (memory) {
+            CacheEntry entry = memory.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    json = entry.json;
+                } else {
+                    memory.remove(key);
+                    expiredEvictions.increment();
+                }
+            }
+        }
+
+        if (json != null) {
+            memoryHits.increment();
+            return deserialize(json);
+        }
+
+        json = readFromDisk(key, now);
+        if (json != null) {
+            diskHits.increment();
+            synchronized (memory) {
+                memory.put(key, new CacheEntry(json, now + ttlMillis));
+            }
+            return deserialize(json);
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Store a successful extraction result
+     */
+    public void put(String key, OCRResultDTO result) {
+        if (!enabled || key == null || result == null || !Boolean.TRUE.equals(result.getSuccess())) {
+            return;
+        }
+
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(result);
+        } catch (IOException e) {
+            logger.warn("Could not serialize extraction result for cache: {}", e.getMessage());
+            return;
+        }
+
+        synchronized (memory) {
+            memory.put(key, new CacheEntry(json, System.currentTimeMillis() + ttlMillis));
+        }
+        writeToDisk(key, json);
+    }
+
+    /**
+     * Drop a single entry from both tiers (used when a caller explicitly asks for a fresh extraction)
+     */
+    public void invalidate(String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        synchronized (memory) {
+            memory.remove(key);
+        }
+        if (diskDir != null) {
+            try {
+                Files.deleteIfExists(diskPath(key));
+            } catch (IOException e) {
+                logger.debug("Could not delete cache file for {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Periodically drop expired entries so idle entries do not hold memory or disk until touched
+     */
+    @Scheduled(fixedDelayString = "${gemini.cache.cleanup-interval-ms:600000}")
+    public void evictExpired() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            int before = memory.size();
+            memory.values().removeIf(entry -> entry.expiresAt <= now);
+            int removed = before - memory.size();
+            if (removed > 0) {
+                expiredEvictions.increment(removed);
+            }
+        }
+
+        if (diskDir != null && Files.isDirectory(diskDir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir, "*.json")) {
+                for (Path file : files) {
+                    if (Files.getLastModifiedTime(file).toMillis() + ttlMillis <= now) {
+                        Files.deleteIfExists(file);
+                        expiredEvictions.increment();
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Extraction cache disk cleanup failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private int memorySize() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    private Optional<OCRResultDTO> deserialize(byte[] json) {
+        try {
+            return Optional.of(mapper.readValue(json, OCRResultDTO.class));
+        } catch (IOException e) {
+            logger.warn("Discarding unreadable extraction cache entry: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private byte[] readFromDisk(String key, long now) {
+        if (diskDir == null) {
+            return null;
+        }
+        Path file = diskPath(key);
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            if (Files.getLastModifiedTime(file).toMillis() + ttlMillis <= now) {
+                Files.deleteIfExists(file);
+                expiredEvictions.increment();
+                return null;
+            }
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            logger.debug("Could not read cache file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] json) {
+        if (diskDir == null) {
+            return;
+        }
+        Path target = diskPath(key);
+        try {
+            Path tmp = Files.createTempFile(diskDir, "entry", ".tmp");
+            Files.write(tmp, json);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write extraction cache file: {}", e.getMessage());
+        }
+    }
+
+    private Path diskPath(String key) {
+        // Keys contain free-text example numbers; hash them into a safe file name
+        return diskDir.resolve(ContentHashUtil.sha256Hex(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    private static final class CacheEntry {
+        private final byte[] json;
+        private final long expiresAt;
+
+        private CacheEntry(byte[] json, long expiresAt) {
+            this.json = json;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
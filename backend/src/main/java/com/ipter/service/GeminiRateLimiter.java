@@ -0,0 +1,329 @@
+package com.ipter.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Client-side throttle for Gemini calls.
+ *
+ * A call needs three things before it may start: a request from the requests-per-minute bucket,
+ * its estimated tokens from the tokens-per-minute bucket, and a free slot under the concurrency
+ * limit. The concurrency limit adapts AIMD-style: +1/limit on every success, halved (at most once
+ * per cool-down) on 429/503, and a Retry-After pauses all new calls. Callers that cannot start yet
+ * wait in FIFO order until their deadline instead of failing straight away.
+ */
+@Service
+public class GeminiRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiRateLimiter.class);
+
+    private static final long MAX_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final boolean enabled;
+    private final double requestsPerNano;
+    private final double requestCapacity;
+    private final double tokensPerNano;
+    private final double tokenCapacity;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double decreaseFactor;
+    private final long decreaseCooldownNanos;
+    private final long maxWaitNanos;
+    private final int maxQueue;
+    private final int tokensPerMediaPart;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Object> waiters = new ArrayDeque<>();
+
+    // Guarded by lock; volatile so metric gauges can read them without locking
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private volatile double limit;
+    private volatile int inFlight;
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+
+    private final Counter queueFullRejections;
+    private final Counter deadlineRejections;
+    private final Counter overloadSignals;
+    private final Timer waitTimer;
+
+    public GeminiRateLimiter(@Value("${gemini.rate-limit.enabled:true}") boolean enabled,
+                             @Value("${gemini.rate-limit.requests-per-minute:150}") double requestsPerMinute,
+                             @Value("${gemini.rate-limit.tokens-per-minute:1000000}") double tokensPerMinute,
+                             @Value("${gemini.rate-limit.initial-concurrency:8}") int initialConcurrency,
+                             @Value("${gemini.rate-limit.min-concurrency:1}") int minConcurrency,
+                             @Value("${gemini.rate-limit.max-concurrency:32}") int maxConcurrency,
+                             @Value("${gemini.rate-limit.decrease-factor:0.5}") double decreaseFactor,
+                             @Value("${gemini.rate-limit.decrease-cooldown-ms:5000}") long decreaseCooldownMs,
+                             @Value("${gemini.rate-limit.max-wait-ms:120000}") long maxWaitMs,
+                             @Value("${gemini.rate-limit.max-queue:500}") int maxQueue,
+                             @Value("${gemini.rate-limit.tokens-per-media-part:1500}") int tokensPerMediaPart,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.requestCapacity = Math.max(1, requestsPerMinute);
+        this.requestsPerNano = requestCapacity / TimeUnit.MINUTES.toNanos(1);
+        this.tokenCapacity = Math.max(1, tokensPerMinute);
+        this.tokensPerNano = tokenCapacity / TimeUnit.MINUTES.toNanos(1);
+        this.minLimit = Math.max(1, minConcurrency);
+        this.maxLimit = Math.max(this.minLimit, maxConcurrency);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialConcurrency));
+        this.decreaseFactor = decreaseFactor;
+        this.decreaseCooldownNanos = TimeUnit.MILLISECONDS.toNanos(decreaseCooldownMs);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.tokensPerMediaPart = tokensPerMediaPart;
+
+        // Start with full buckets so a cold start is not throttled
+        this.availableRequests = requestCapacity;
+        this.availableTokens = tokenCapacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastDecreaseNanos = lastRefillNanos - decreaseCooldownNanos;
+
+        Gauge.builder("gemini.limiter.limit", this, l -> l.limit)
+            .description("Current adaptive concurrency limit for Gemini calls").register(meterRegistry);
+        Gauge.builder("gemini.limiter.in-flight", this, l -> l.inFlight)
+            .description("Gemini calls currently running").register(meterRegistry);
+        Gauge.builder("gemini.limiter.queue.depth", this, GeminiRateLimiter::getQueueDepth)
+            .description("Callers waiting for Gemini capacity").register(meterRegistry);
+        this.queueFullRejections = Counter.builder("gemini.limiter.rejections").tag("reason", "queue_full")
+            .description("Calls rejected by the Gemini limiter").register(meterRegistry);
+        this.deadlineRejections = Counter.builder("gemini.limiter.rejections").tag("reason", "deadline")
+            .description("Calls rejected by the Gemini limiter").register(meterRegistry);
+        this.overloadSignals = Counter.builder("gemini.limiter.overloads")
+            .description("429/503 responses that reduced the concurrency limit").register(meterRegistry);
+        this.waitTimer = Timer.builder("gemini.limiter.wait")
+            .description("Time callers waited for Gemini capacity").register(meterRegistry);
+    }
+
+    /**
+     * Rough token cost of a request before it is sent; corrected from usage metadata afterwards
+     */
+    public long estimateTokens(long promptChars, int mediaParts, int maxOutputTokens) {
+        return promptChars / 4 + (long) mediaParts * tokensPerMediaPart + maxOutputTokens;
+    }
+
+    /**
+     * Wait (up to the configured deadline) until a call costing the estimated tokens may start
+     */
+    public Permit acquire(long estimatedTokens) {
+        if (!enabled) {
+            return new Permit(0, false);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + maxWaitNanos;
+        // Very large requests only need a full bucket, otherwise they could never run
+        double cost = Math.min(Math.max(0, estimatedTokens), tokenCapacity);
+        Object ticket = new Object();
+
+        lock.lock();
+        try {
+            if (waiters.size() >= maxQueue && !waiters.isEmpty()) {
+                queueFullRejections.increment();
+                throw new LimitExceededException("Gemini request queue is full (" + waiters.size() + " waiting)");
+            }
+            waiters.addLast(ticket);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    long waitNanos = waiters.peekFirst() == ticket ? nanosUntilAvailable(cost, now) : Long.MAX_VALUE;
+                    if (waitNanos == 0) {
+                        availableRequests -= 1;
+                        availableTokens -= cost;
+                        inFlight++;
+                        break;
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        deadlineRejections.increment();
+                        throw new LimitExceededException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)
+                            + " ms waiting for Gemini capacity");
+                    }
+                    changed.awaitNanos(Math.min(waitNanos, remaining));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LimitExceededException("Interrupted while waiting for Gemini capacity");
+            } finally {
+                waiters.remove(ticket);
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit((long) cost, true);
+    }
+
+    /**
+     * Take a permit only if one is available right now and nobody is queued ahead; null otherwise.
+     * Used for optional extra calls (hedges) that should never add to a backlog.
+     */
+    public Permit tryAcquire(long estimatedTokens) {
+        if (!enabled) {
+            return new Permit(0, false);
+        }
+        double cost = Math.min(Math.max(0, estimatedTokens), tokenCapacity);
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            if (!waiters.isEmpty() || nanosUntilAvailable(cost, now) != 0) {
+                return null;
+            }
+            availableRequests -= 1;
+            availableTokens -= cost;
+            inFlight++;
+            return new Permit((long) cost, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            availableRequests = Math.min(requestCapacity, availableRequests + elapsed * requestsPerNano);
+            availableTokens = Math.min(tokenCapacity, availableTokens + elapsed * tokensPerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    /**
+     * 0 if the head caller can start now, otherwise how long until it might
+     */
+    private long nanosUntilAvailable(double cost, long now) {
+        if (now < pausedUntilNanos) {
+            return pausedUntilNanos - now;
+        }
+        if (inFlight >= (int) limit) {
+            return Long.MAX_VALUE; // woken by release()
+        }
+        long wait = 0;
+        if (availableRequests < 1) {
+            wait = Math.max(wait, (long) Math.ceil((1 - availableRequests) / requestsPerNano));
+        }
+        if (availableTokens < cost) {
+            wait = Math.max(wait, (long) Math.ceil((cost - availableTokens) / tokensPerNano));
+        }
+        return wait;
+    }
+
+    private void release(long reservedTokens, Integer actualTokens, boolean success,
+                         boolean overload, Duration retryAfter) {
+        lock.lock();
+        try {
+            inFlight--;
+            long now = System.nanoTime();
+
+            if (actualTokens != null) {
+                // Settle the estimate against what Gemini actually billed; may leave the bucket in debt
+                availableTokens -= actualTokens - reservedTokens;
+            }
+
+            if (success) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            } else if (overload) {
+                overloadSignals.increment();
+                if (now - lastDecreaseNanos >= decreaseCooldownNanos) {
+                    double previous = limit;
+                    limit = Math.max(minLimit, limit * decreaseFactor);
+                    lastDecreaseNanos = now;
+                    logger.warn("Gemini overloaded; concurrency limit {} -> {}", (int) previous, (int) limit);
+                }
+                if (retryAfter != null && !retryAfter.isNegative()) {
+                    long pause = Math.min(retryAfter.toNanos(), MAX_PAUSE_NANOS);
+                    pausedUntilNanos = Math.max(pausedUntilNanos, now + pause);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Grant for one Gemini call; report the outcome exactly once
+     */
+    public class Permit {
+        private final long reservedTokens;
+        private final AtomicBoolean open;
+
+        private Permit(long reservedTokens, boolean tracked) {
+            this.reservedTokens = reservedTokens;
+            this.open = new AtomicBoolean(tracked);
+        }
+
+        /**
+         * The call succeeded; actualTokens is the billed total if the response reported it
+         */
+        public void onSuccess(Integer actualTokens) {
+            if (open.compareAndSet(true, false)) {
+                release(reservedTokens, actualTokens, true, false, null);
+            }
+        }
+
+        /**
+         * The server signalled overload (429/503)
+         */
+        public void onOverload(Duration retryAfter) {
+            if (open.compareAndSet(true, false)) {
+                release(reservedTokens, null, false, true, retryAfter);
+            }
+        }
+
+        /**
+         * Any other failure; does not change the limit
+         */
+        public void onFailure() {
+            if (open.compareAndSet(true, false)) {
+                release(reservedTokens, null, false, false, null);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a caller could not get Gemini capacity before its deadline
+     */
+    public static class LimitExceededException extends RuntimeException {
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+}
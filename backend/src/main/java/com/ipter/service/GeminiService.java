@@ -1,27 +1,66 @@
 package com.ipter.service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.reactivestreams.Publisher;
 
-import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.ipter.dto.ContainerExtractionResultDTO;
 import com.ipter.dto.GeminiRequestDTO;
 import com.ipter.dto.GeminiResponseDTO;
 import com.ipter.dto.OCRResultDTO;
+import com.ipter.dto.PdfExtractionResultDTO;
+import com.ipter.util.ContentHashUtil;
+import com.ipter.util.GeminiGridParser;
+import com.ipter.util.GeminiItemListParser;
 import com.ipter.util.ImageProcessingUtil;
+import com.ipter.util.LatencyWindow;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Service for integrating with Google Gemini API
@@ -37,11 +76,126 @@ public class GeminiService {
     
     @Value("${gemini.api.url:https://generativelanguage.googleapis.com/v1beta/models/gemini-2.0-flash:generateContent}")
     private String apiUrl;
+
+    @Value("${gemini.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${gemini.retry.initial-backoff-ms:500}")
+    private long retryInitialBackoffMs;
+
+    @Value("${gemini.retry.max-backoff-ms:8000}")
+    private long retryMaxBackoffMs;
+
+    @Value("${gemini.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${gemini.hedge.percentile:95}")
+    private double hedgePercentile;
+
+    @Value("${gemini.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${gemini.hedge.min-delay-ms:2000}")
+    private long hedgeMinDelayMs;
+
+    @Value("${gemini.preprocess.enabled:true}")
+    private boolean preprocessEnabled;
+
+    @Value("${gemini.preprocess.max-long-edge:2048}")
+    private int preprocessMaxLongEdge;
+
+    @Value("${gemini.preprocess.jpeg-quality:0.85}")
+    private float preprocessJpegQuality;
+
+    @Value("${gemini.multi-image.enabled:false}")
+    private boolean multiImageEnabled;
+
+    @Value("${gemini.multi-image.max-images:4}")
+    private int multiImageMaxImages;
     
+    /**
+     * Identifies the prompt wording used for cached results. Bump when a prompt or the
+     * response parsing changes so stale cached extractions are not served.
+     */
+    static final String IMAGE_PROMPT_VARIANT = "image-grid-v2";
+    static final String PDF_PROMPT_VARIANT = "pdf-v2";
+    static final String MULTI_IMAGE_PROMPT_VARIANT = "image-grid-multi-v1";
+
+    /**
+     * Structured output for the image grid: the same row/position shape the prompt describes
+     */
+    static final GeminiRequestDTO.Schema GRID_RESPONSE_SCHEMA =
+        GeminiRequestDTO.Schema.object(gridProperties(), "grid_structure");
+
+    /**
+     * Structured output for several images in one request: one tagged grid per image
+     */
+    static final GeminiRequestDTO.Schema MULTI_IMAGE_RESPONSE_SCHEMA = multiImageResponseSchema();
+
+    /**
+     * Structured output for PDFs: a flat item list
+     */
+    static final GeminiRequestDTO.Schema PDF_RESPONSE_SCHEMA = GeminiRequestDTO.Schema.object(
+        properties("items", GeminiRequestDTO.Schema.array(numberSchema())), "items");
+
+    private static final int REQUEST_BODY_CHUNK_SIZE = 64 * 1024;
+
+    private static final int MAX_CACHED_PROMPTS = 256;
+
+    private final WebClient webClient;
     private final ObjectMapper objectMapper;
+    private final ObjectWriter requestWriter;
+    private final GeminiExtractionCache extractionCache;
+    private final GeminiRateLimiter rateLimiter;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiContextCache contextCache;
+    private final LegacyOcrService legacyOcrService;
+    private final Executor bodyWriterExecutor = runnable -> Schedulers.boundedElastic().schedule(runnable);
+
+    private final LatencyWindow latencyWindow = new LatencyWindow(200);
 
-    public GeminiService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    /**
+     * Assembled prompt text by variant and example number. Projects keep a stable example block
+     * (ProjectPromptCache), so each project's prompt is built once rather than on every call.
+     */
+    private final Map<String, String> prompts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_PROMPTS;
+        }
+    };
+    private final Counter retryCounter;
+    private final Counter hedgeCounter;
+    private final DistributionSummary requestBodySize;
+    private final DistributionSummary requestBodyAllocation;
+    private final MeterRegistry meterRegistry;
+
+    public GeminiService(@Qualifier("geminiWebClient") WebClient webClient, ObjectMapper objectMapper,
+                         GeminiExtractionCache extractionCache, GeminiRateLimiter rateLimiter,
+                         GeminiCircuitBreaker circuitBreaker, GeminiContextCache contextCache,
+                         LegacyOcrService legacyOcrService, MeterRegistry meterRegistry) {
+        this.webClient = webClient;
         this.objectMapper = objectMapper;
+        this.requestWriter = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.extractionCache = extractionCache;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.contextCache = contextCache;
+        this.legacyOcrService = legacyOcrService;
+        this.meterRegistry = meterRegistry;
+        this.retryCounter = Counter.builder("gemini.request.retries")
+            .description("Gemini calls retried after a transient failure").register(meterRegistry);
+        this.hedgeCounter = Counter.builder("gemini.request.hedges")
+            .description("Hedged Gemini calls sent because the first attempt was slow").register(meterRegistry);
+        Gauge.builder("gemini.request.latency.p95", latencyWindow, window -> window.percentile(95))
+            .description("p95 latency of recent successful Gemini calls").baseUnit("milliseconds")
+            .register(meterRegistry);
+        this.requestBodySize = DistributionSummary.builder("gemini.request.body.size")
+            .description("Size of the serialized Gemini request body").baseUnit("bytes")
+            .register(meterRegistry);
+        this.requestBodyAllocation = DistributionSummary.builder("gemini.request.body.allocated")
+            .description("Heap allocated while serializing a Gemini request body").baseUnit("bytes")
+            .register(meterRegistry);
     }
 
     /**
@@ -55,30 +209,209 @@ public class GeminiService {
      * Extract container numbers from image using Gemini API with optional example number
      */
     public OCRResultDTO extractContainerNumbers(byte[] imageBytes, String filename, String mimeType, String exampleNumber) {
+        if (imageBytes == null) {
+            return createErrorResult(filename, "Container extraction failed: no image data");
+        }
+        return extractContainerNumbers(new ByteArrayResource(imageBytes), ContentHashUtil.sha256Hex(imageBytes),
+            filename, mimeType, exampleNumber);
+    }
+
+    /**
+     * Extract container numbers from an image that is read as a stream (e.g. a stored upload).
+     * The content is Base64-encoded straight into the request body, so the image is never held
+     * in memory as a byte array or String. Pass the SHA-256 if it is already known (computed
+     * while the upload was written); otherwise it is computed by streaming the content once.
+     */
+    public OCRResultDTO extractContainerNumbers(InputStreamSource image, String contentSha256, String filename,
+                                                String mimeType, String exampleNumber) {
+        return extractContainerNumbers(image, contentSha256, filename, mimeType, exampleNumber, false);
+    }
+
+    /**
+     * Same as above; with refresh (an explicit reprocess) the cached result is dropped and Gemini is asked again
+     */
+    public OCRResultDTO extractContainerNumbers(InputStreamSource image, String contentSha256, String filename,
+                                                String mimeType, String exampleNumber, boolean refresh) {
         try {
             logger.info("Starting container extraction for image: {} with example: {}", filename, exampleNumber);
 
-            // Validate and normalize MIME type
-            String geminiMimeType = ImageProcessingUtil.getGeminiCompatibleMimeType(mimeType);
+            String contentHash = contentSha256 != null ? contentSha256 : ContentHashUtil.sha256Hex(image);
+            String cacheKey = GeminiExtractionCache.key(contentHash, imageCacheVariant(), exampleNumber);
+            if (refresh) {
+                extractionCache.invalidate(cacheKey);
+            }
+            OCRResultDTO cached = refresh ? null : extractionCache.get(cacheKey).orElse(null);
+            if (cached != null) {
+                logger.info("Serving cached extraction for image: {}", filename);
+                cached.setFilename(filename);
+                return cached;
+            }
 
-            // Encode image to base64
-            String base64Image = Base64.encodeBase64String(imageBytes);
+            // Downscale/convert/strip metadata; falls back to the original image unless it must be converted
+            ImageProcessingUtil.PreprocessedImage prepared = preprocess(image, mimeType, filename);
 
-            // Create Gemini request with example number
-            GeminiRequestDTO request = createGeminiImageRequest(base64Image, geminiMimeType, exampleNumber);
+            // Create Gemini request with example number; the image is encoded while the body is written
+            GeminiRequestDTO request = createGeminiImageRequest(prepared.source(image), prepared.getMimeType(),
+                exampleNumber);
 
             // Call Gemini API
-            GeminiResponseDTO response = callGeminiAPI(request);
+            GeminiResponseDTO response = callGeminiAPI(request,
+                () -> createGeminiImageRequest(prepared.source(image), prepared.getMimeType(), exampleNumber));
 
             // Process response and extract container numbers
-            return processGeminiResponse(response, filename);
+            OCRResultDTO result = processGeminiResponse(response, filename);
+            if (result.getProcessingMetadata() != null && prepared.isChanged()) {
+                result.getProcessingMetadata().setPreprocessingApplied(prepared.getApplied());
+            }
+            extractionCache.put(cacheKey, result);
+            return result;
 
+        } catch (GeminiCircuitBreaker.CallNotPermittedException e) {
+            return extractWithFallback(image, filename);
         } catch (Exception e) {
             logger.error("Error extracting container numbers from {}: {}", filename, e.getMessage());
             return createErrorResult(filename, "Container extraction failed: " + e.getMessage());
         }
     }
 
+    /**
+     * Largest number of images sent in one request: 1 unless multi-image mode is on
+     */
+    public int getMultiImageBatchSize() {
+        return multiImageEnabled ? Math.max(1, multiImageMaxImages) : 1;
+    }
+
+    /**
+     * Extract container numbers from several images, returning one result per image in input order.
+     *
+     * In multi-image mode, images not already in the extraction cache are packed up to max-images
+     * per generateContent request, each labelled "IMAGE n" and answered as a tagged grid. If the
+     * combined response fails or cannot be parsed, the group is split and every image is sent on its
+     * own; an image whose tag is missing from an otherwise good response is retried the same way.
+     */
+    public List<OCRResultDTO> extractContainerNumbers(List<BatchImage> images, String exampleNumber) {
+        OCRResultDTO[] results = new OCRResultDTO[images.size()];
+        String[] cacheKeys = new String[images.size()];
+        List<Integer> pending = new ArrayList<>();
+
+        for (int i = 0; i < images.size(); i++) {
+            BatchImage image = images.get(i);
+            try {
+                if (image.getContentSha256() == null) {
+                    image.setContentSha256(ContentHashUtil.sha256Hex(image.getSource()));
+                }
+                cacheKeys[i] = GeminiExtractionCache.key(image.getContentSha256(), imageCacheVariant(), exampleNumber);
+                OCRResultDTO cached = extractionCache.get(cacheKeys[i]).orElse(null);
+                if (cached != null) {
+                    cached.setFilename(image.getFilename());
+                    results[i] = cached;
+                } else {
+                    pending.add(i);
+                }
+            } catch (IOException e) {
+                logger.error("Error reading image {}: {}", image.getFilename(), e.getMessage());
+                results[i] = createErrorResult(image.getFilename(), "Container extraction failed: " + e.getMessage());
+            }
+        }
+
+        int batchSize = getMultiImageBatchSize();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<Integer> group = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            if (group.size() > 1) {
+                extractGroup(images, group, cacheKeys, exampleNumber, results);
+            }
+            for (int i : group) {
+                if (results[i] == null) {
+                    BatchImage image = images.get(i);
+                    results[i] = extractContainerNumbers(image.getSource(), image.getContentSha256(),
+                        image.getFilename(), image.getMimeType(), exampleNumber);
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * One multi-image request for the group. Fills results for the images it could read, and an
+     * error for any image that could not be converted; the caller extracts the rest one by one.
+     */
+    private void extractGroup(List<BatchImage> images, List<Integer> group, String[] cacheKeys,
+                              String exampleNumber, OCRResultDTO[] results) {
+        List<Integer> sent = new ArrayList<>(group.size());
+        List<ImageProcessingUtil.PreprocessedImage> prepared = new ArrayList<>(group.size());
+        for (int i : group) {
+            BatchImage image = images.get(i);
+            try {
+                prepared.add(preprocess(image.getSource(), image.getMimeType(), image.getFilename()));
+                sent.add(i);
+            } catch (IOException e) {
+                logger.error("Error preparing image {}: {}", image.getFilename(), e.getMessage());
+                results[i] = createErrorResult(image.getFilename(), "Container extraction failed: " + e.getMessage());
+            }
+        }
+        if (sent.size() < 2) {
+            return;
+        }
+
+        List<GeminiRequestDTO.Part> mediaParts = new ArrayList<>(sent.size() * 2);
+        for (int tag = 1; tag <= sent.size(); tag++) {
+            BatchImage image = images.get(sent.get(tag - 1));
+            ImageProcessingUtil.PreprocessedImage preparedImage = prepared.get(tag - 1);
+            mediaParts.add(new GeminiRequestDTO.Part("IMAGE " + tag));
+            mediaParts.add(new GeminiRequestDTO.Part(new GeminiRequestDTO.InlineData(
+                preparedImage.getMimeType(), preparedImage.source(image.getSource()))));
+        }
+
+        try {
+            logger.info("Extracting {} images in one Gemini request", sent.size());
+            GeminiResponseDTO response = callGeminiAPI(
+                createGeminiMultiImageRequest(mediaParts, sent.size(), exampleNumber),
+                () -> createGeminiMultiImageRequest(mediaParts, sent.size(), exampleNumber));
+
+            Map<Integer, ContainerExtractionResultDTO> grids = GeminiGridParser.parseImages(responseText(response));
+            for (int tag = 1; tag <= sent.size(); tag++) {
+                int i = sent.get(tag - 1);
+                ContainerExtractionResultDTO grid = grids.get(tag);
+                if (grid == null) {
+                    logger.warn("Multi-image response has no entry for {}; extracting it on its own",
+                                images.get(i).getFilename());
+                    continue;
+                }
+                OCRResultDTO result = convertToOCRResult(grid, images.get(i).getFilename(), response);
+                if (result.getProcessingMetadata() != null && prepared.get(tag - 1).isChanged()) {
+                    result.getProcessingMetadata().setPreprocessingApplied(prepared.get(tag - 1).getApplied());
+                }
+                extractionCache.put(cacheKeys[i], result);
+                results[i] = result;
+            }
+        } catch (GeminiCircuitBreaker.CallNotPermittedException e) {
+            for (int i : sent) {
+                results[i] = extractWithFallback(images.get(i).getSource(), images.get(i).getFilename());
+            }
+        } catch (Exception e) {
+            logger.warn("Multi-image request for {} images failed ({}); extracting them one by one",
+                        sent.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Text of the first candidate; fails when there is none so a multi-image group is split
+     */
+    private static String responseText(GeminiResponseDTO response) throws IOException {
+        if (response == null || response.getCandidates() == null || response.getCandidates().isEmpty()
+                || response.getCandidates().get(0).getContent() == null
+                || response.getCandidates().get(0).getContent().getParts() == null) {
+            throw new IOException("No response candidates from Gemini API");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (GeminiResponseDTO.Part part : response.getCandidates().get(0).getContent().getParts()) {
+            if (part.getText() != null) {
+                sb.append(part.getText());
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Extract container numbers directly from a PDF using Gemini API
      */
@@ -90,51 +423,151 @@ public class GeminiService {
      * Extract container numbers directly from a PDF using Gemini API with optional example number
      */
     public OCRResultDTO extractContainerNumbersFromPdf(byte[] pdfBytes, String filename, String exampleNumber) {
+        return extractContainerNumbersFromPdf(pdfBytes, filename, exampleNumber, false);
+    }
+
+    /**
+     * Same as above; with refresh (a forced reprocess) the cached result is dropped and Gemini is asked again
+     */
+    public OCRResultDTO extractContainerNumbersFromPdf(byte[] pdfBytes, String filename, String exampleNumber,
+                                                       boolean refresh) {
         try {
             logger.info("Starting container extraction for PDF: {} with example: {}", filename, exampleNumber);
 
+            String cacheKey = GeminiExtractionCache.key(
+                ContentHashUtil.sha256Hex(pdfBytes), PDF_PROMPT_VARIANT, exampleNumber);
+            if (refresh) {
+                extractionCache.invalidate(cacheKey);
+            }
+            OCRResultDTO cached = refresh ? null : extractionCache.get(cacheKey).orElse(null);
+            if (cached != null) {
+                logger.info("Serving cached extraction for PDF: {}", filename);
+                cached.setFilename(filename);
+                return cached;
+            }
+
             // Create Gemini request for PDF with example number
             GeminiRequestDTO request = createGeminiPdfRequest(pdfBytes, exampleNumber);
 
             // Call Gemini API
-            GeminiResponseDTO response = callGeminiAPI(request);
+            GeminiResponseDTO response = callGeminiAPI(request, () -> createGeminiPdfRequest(pdfBytes, exampleNumber));
 
             // Process response and extract container numbers
-            return processGeminiPdfResponse(response, filename);
+            OCRResultDTO result = processGeminiPdfResponse(response, filename);
+            extractionCache.put(cacheKey, result);
+            return result;
 
+        } catch (GeminiCircuitBreaker.CallNotPermittedException e) {
+            // The legacy service only handles images, so PDFs always wait for Gemini
+            meterRegistry.counter("gemini.fallback", "mode", "queue").increment();
+            return createDeferredResult(filename);
         } catch (Exception e) {
             logger.error("Error extracting container numbers from PDF {}: {}", filename, e.getMessage());
             return createErrorResult(filename, "PDF extraction failed: " + e.getMessage());
         }
     }
     
+    /**
+     * Shrink the image before it is encoded into the request. A failure just sends the original,
+     * except for formats Gemini does not accept (TIFF/BMP): those are always converted to JPEG,
+     * even with preprocessing disabled, and fail if they cannot be decoded.
+     */
+    private ImageProcessingUtil.PreprocessedImage preprocess(InputStreamSource image, String mimeType, String filename)
+            throws IOException {
+        String geminiMimeType = ImageProcessingUtil.getGeminiCompatibleMimeType(mimeType);
+        boolean mustConvert = ImageProcessingUtil.requiresConversion(geminiMimeType);
+        if (!preprocessEnabled && !mustConvert) {
+            return ImageProcessingUtil.PreprocessedImage.unchanged(geminiMimeType);
+        }
+        try {
+            ImageProcessingUtil.PreprocessedImage prepared = ImageProcessingUtil.preprocessForGemini(
+                image, geminiMimeType, preprocessEnabled ? preprocessMaxLongEdge : 0, preprocessJpegQuality);
+            if (prepared.isChanged()) {
+                logger.debug("Preprocessed {} to {} bytes: {}", filename, prepared.getSize(), prepared.getApplied());
+            }
+            return prepared;
+        } catch (Exception e) {
+            if (mustConvert) {
+                throw new IOException("Could not convert " + geminiMimeType + " image to JPEG: " + e.getMessage(), e);
+            }
+            logger.warn("Image preprocessing failed for {}; sending original: {}", filename, e.getMessage());
+            return ImageProcessingUtil.PreprocessedImage.unchanged(geminiMimeType);
+        }
+    }
+
+    /**
+     * Cache variant for image extractions; preprocessing settings change what Gemini sees
+     */
+    private String imageCacheVariant() {
+        return preprocessEnabled
+            ? IMAGE_PROMPT_VARIANT + "+pre" + preprocessMaxLongEdge + "q" + Math.round(preprocessJpegQuality * 100)
+            : IMAGE_PROMPT_VARIANT;
+    }
+
+    /**
+     * Degraded mode while the circuit breaker is open: use the legacy AI service if configured,
+     * otherwise hand back a deferred result so the caller leaves the image queued
+     */
+    private OCRResultDTO extractWithFallback(InputStreamSource image, String filename) {
+        if (circuitBreaker.getFallback() == GeminiCircuitBreaker.Fallback.LEGACY) {
+            try {
+                logger.warn("Gemini circuit open; using legacy AI service for {}", filename);
+                OCRResultDTO result = legacyOcrService.extractContainerNumbers(image, filename);
+                result.setFilename(filename);
+                meterRegistry.counter("gemini.fallback", "mode", "legacy").increment();
+                return result;
+            } catch (Exception e) {
+                logger.error("Legacy AI service fallback failed for {}: {}", filename, e.getMessage());
+            }
+        }
+        logger.warn("Gemini circuit open; deferring extraction for {}", filename);
+        meterRegistry.counter("gemini.fallback", "mode", "queue").increment();
+        return createDeferredResult(filename);
+    }
+
     /**
      * Create Gemini API request for image content
      */
-    private GeminiRequestDTO createGeminiImageRequest(String base64Image, String mimeType) {
-        return createGeminiImageRequest(base64Image, mimeType, null);
+    private GeminiRequestDTO createGeminiImageRequest(InputStreamSource image, String mimeType) {
+        return createGeminiImageRequest(image, mimeType, null);
     }
 
     /**
      * Create Gemini API request for image content with optional example number
      */
-    private GeminiRequestDTO createGeminiImageRequest(String base64Image, String mimeType, String exampleNumber) {
-        String prompt = createContainerExtractionPrompt(exampleNumber);
+    private GeminiRequestDTO createGeminiImageRequest(InputStreamSource image, String mimeType, String exampleNumber) {
+        String prompt = cachedPrompt(IMAGE_PROMPT_VARIANT, exampleNumber, this::createContainerExtractionPrompt);
 
-        GeminiRequestDTO.Part textPart = new GeminiRequestDTO.Part(prompt);
-        GeminiRequestDTO.InlineData inlineData = new GeminiRequestDTO.InlineData(mimeType, base64Image);
+        GeminiRequestDTO.InlineData inlineData = new GeminiRequestDTO.InlineData(mimeType, image);
         GeminiRequestDTO.Part imagePart = new GeminiRequestDTO.Part(inlineData);
 
-        GeminiRequestDTO.ContentPart content = new GeminiRequestDTO.ContentPart(
-            Arrays.asList(textPart, imagePart)
-        );
-
-        GeminiRequestDTO request = new GeminiRequestDTO(Arrays.asList(content));
+        GeminiRequestDTO request = createPromptedRequest(IMAGE_PROMPT_VARIANT, prompt, Arrays.asList(imagePart));
 
         GeminiRequestDTO.GenerationConfig config = new GeminiRequestDTO.GenerationConfig();
         config.setTemperature(0.1);
         config.setMaxOutputTokens(2048);
         config.setResponseMimeType("application/json");
+        config.setResponseSchema(GRID_RESPONSE_SCHEMA);
+        request.setGenerationConfig(config);
+
+        request.setSafetySettings(createSafetySettings());
+        return request;
+    }
+
+    /**
+     * Create Gemini API request for several labelled images
+     */
+    private GeminiRequestDTO createGeminiMultiImageRequest(List<GeminiRequestDTO.Part> mediaParts, int imageCount,
+                                                           String exampleNumber) {
+        String prompt = cachedPrompt(MULTI_IMAGE_PROMPT_VARIANT, exampleNumber, this::createMultiImageExtractionPrompt);
+
+        GeminiRequestDTO request = createPromptedRequest(MULTI_IMAGE_PROMPT_VARIANT, prompt, mediaParts);
+
+        GeminiRequestDTO.GenerationConfig config = new GeminiRequestDTO.GenerationConfig();
+        config.setTemperature(0.1);
+        config.setMaxOutputTokens(Math.min(8192, 2048 * imageCount));
+        config.setResponseMimeType("application/json");
+        config.setResponseSchema(MULTI_IMAGE_RESPONSE_SCHEMA);
         request.setGenerationConfig(config);
 
         request.setSafetySettings(createSafetySettings());
@@ -152,31 +585,67 @@ public class GeminiService {
      * Create Gemini API request for PDF content with optional example number
      */
     private GeminiRequestDTO createGeminiPdfRequest(byte[] pdfBytes, String exampleNumber) {
-        String prompt = createPdfExtractionPrompt(exampleNumber);
+        String prompt = cachedPrompt(PDF_PROMPT_VARIANT, exampleNumber, this::createPdfExtractionPrompt);
 
-        GeminiRequestDTO.Part textPart = new GeminiRequestDTO.Part(prompt);
-
-        // Encode PDF to base64 (fallback inline)
-        String base64Pdf = Base64.encodeBase64String(pdfBytes);
-        GeminiRequestDTO.InlineData inlineData = new GeminiRequestDTO.InlineData("application/pdf", base64Pdf);
+        // PDF is sent inline; Base64 encoding happens while the request body is written
+        GeminiRequestDTO.InlineData inlineData =
+            new GeminiRequestDTO.InlineData("application/pdf", new ByteArrayResource(pdfBytes));
         GeminiRequestDTO.Part pdfPart = new GeminiRequestDTO.Part(inlineData);
 
-        GeminiRequestDTO.ContentPart content = new GeminiRequestDTO.ContentPart(
-            Arrays.asList(textPart, pdfPart)
-        );
-
-        GeminiRequestDTO request = new GeminiRequestDTO(Arrays.asList(content));
+        GeminiRequestDTO request = createPromptedRequest(PDF_PROMPT_VARIANT, prompt, Arrays.asList(pdfPart));
 
         GeminiRequestDTO.GenerationConfig config = new GeminiRequestDTO.GenerationConfig();
         config.setTemperature(0.1);
         config.setMaxOutputTokens(8192);
         config.setResponseMimeType("application/json");
+        config.setResponseSchema(PDF_RESPONSE_SCHEMA);
         request.setGenerationConfig(config);
 
         request.setSafetySettings(createSafetySettings());
         return request;
     }
 
+    /**
+     * Request with the prompt followed by the media parts. When the prompt is held in a Gemini
+     * context cache only the media parts are sent and the cache is referenced by name.
+     */
+    private GeminiRequestDTO createPromptedRequest(String promptVariant, String prompt,
+                                                   List<GeminiRequestDTO.Part> mediaParts) {
+        String cachedContent = contextCache.getCachedContentName(promptVariant, prompt);
+        List<GeminiRequestDTO.Part> parts = new ArrayList<>(mediaParts.size() + 1);
+        if (cachedContent == null) {
+            parts.add(new GeminiRequestDTO.Part(prompt));
+        }
+        parts.addAll(mediaParts);
+        GeminiRequestDTO.ContentPart content = cachedContent != null
+            ? new GeminiRequestDTO.ContentPart("user", parts)
+            : new GeminiRequestDTO.ContentPart(parts);
+
+        GeminiRequestDTO request = new GeminiRequestDTO(Arrays.asList(content));
+        request.setCachedContent(cachedContent);
+        return request;
+    }
+
+    /**
+     * Prompt text for the variant and example number, built on first use
+     */
+    String cachedPrompt(String variant, String exampleNumber, Function<String, String> builder) {
+        String example = exampleNumber == null ? "" : exampleNumber.trim();
+        String key = variant + '\n' + example;
+        synchronized (prompts) {
+            String prompt = prompts.get(key);
+            if (prompt != null) {
+                return prompt;
+            }
+        }
+        // Built outside the lock; a concurrent build of the same key produces the same text
+        String prompt = builder.apply(example.isEmpty() ? null : example);
+        synchronized (prompts) {
+            prompts.put(key, prompt);
+        }
+        return prompt;
+    }
+
     /**
      * Prompt specialized for PDF container extraction as a flat list
      */
@@ -416,6 +885,18 @@ public class GeminiService {
         return prompt.toString();
     }
 
+    /**
+     * Prompt for several images in one request: the single-image instructions, applied per image
+     */
+    private String createMultiImageExtractionPrompt(String exampleNumber) {
+        return """
+            MULTIPLE IMAGES: You will receive several images, each preceded by a text label "IMAGE <n>". Every image is a separate photo. Apply all of the instructions below to each image on its own and never carry serial numbers over from one image to another.
+
+            Respond with {"images": [...]} containing exactly one entry per image, in label order. Each entry has "image": <n> (the number from its label) followed by that image's "grid_structure" and row fields exactly as described below.
+
+            """ + createContainerExtractionPrompt(exampleNumber);
+    }
+
     /**
      * Helper method to identify missing row names for validation
      */
@@ -443,34 +924,296 @@ public class GeminiService {
     }
     
     /**
-     * Call Gemini API using WebClient to better handle large JSON responses
+     * Call Gemini API; if it rejects the referenced context cache (expired or deleted), the cache
+     * is forgotten and the call is made once more with a rebuilt request
+     */
+    private GeminiResponseDTO callGeminiAPI(GeminiRequestDTO request, Supplier<GeminiRequestDTO> rebuild) throws Exception {
+        try {
+            return callGeminiAPI(request);
+        } catch (Exception e) {
+            if (request.getCachedContent() == null || !isCachedContentRejected(e)) {
+                throw e;
+            }
+            logger.warn("Gemini rejected context cache {}; resending: {}", request.getCachedContent(), e.getMessage());
+            contextCache.invalidate(request.getCachedContent());
+            return callGeminiAPI(rebuild.get());
+        }
+    }
+
+    /**
+     * Gemini's error for a cached content it no longer has ("CachedContent not found"); a 403/404
+     * about anything else (API key, model) is not a stale cache and must not be retried
+     */
+    private boolean isCachedContentRejected(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof GeminiApiException apiError) {
+                int status = apiError.getStatusCode();
+                String message = apiError.getMessage() != null ? apiError.getMessage().toLowerCase() : "";
+                return (status == 400 || status == 403 || status == 404)
+                    && (message.contains("cachedcontent") || message.contains("cached content"));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Call Gemini API using the shared, pooled WebClient (see GeminiClientConfig), retrying
+     * transient failures with jittered exponential backoff.
+     * Extraction requests are idempotent, so a retry or a hedge simply re-sends the same body.
      */
     private GeminiResponseDTO callGeminiAPI(GeminiRequestDTO request) throws Exception {
+        long estimatedTokens = estimateTokens(request);
+        int attempts = Math.max(1, retryMaxAttempts);
+
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                throw new GeminiCircuitBreaker.CallNotPermittedException(
+                    "Gemini circuit breaker is " + circuitBreaker.getState());
+            }
+            long start = System.nanoTime();
+            try {
+                GeminiResponseDTO response = executeHedged(request, estimatedTokens);
+                circuitBreaker.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return response;
+            } catch (GeminiRateLimiter.LimitExceededException e) {
+                circuitBreaker.releasePermission();
+                // Already waited for capacity up to the deadline; retrying would only wait again
+                logger.warn("Gemini call not started: {}", e.getMessage());
+                throw new RuntimeException("Gemini API call failed: " + e.getMessage(), e);
+            } catch (Exception e) {
+                // One outcome per permission, however many hedge legs were sent
+                if (isRetryable(e)) {
+                    circuitBreaker.onFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } else {
+                    circuitBreaker.releasePermission(); // Gemini answered; the request itself was bad
+                }
+                if (attempt >= attempts || !isRetryable(e)) {
+                    logger.error("Failed to call Gemini API (attempt {}/{}): {}", attempt, attempts, e.getMessage());
+                    throw new RuntimeException("Gemini API call failed", e);
+                }
+                long backoffMs = backoffMillis(attempt, e);
+                logger.warn("Gemini call attempt {}/{} failed ({}); retrying in {} ms",
+                            attempt, attempts, e.getMessage(), backoffMs);
+                retryCounter.increment();
+                Thread.sleep(backoffMs);
+            }
+        }
+    }
+
+    /**
+     * One logical attempt. When hedging is on and the call runs past the observed p95 latency,
+     * a second identical call is started (only if the limiter has a free slot right now) and
+     * whichever succeeds first wins; the other is cancelled.
+     */
+    private GeminiResponseDTO executeHedged(GeminiRequestDTO request, long estimatedTokens) throws Exception {
+        CompletableFuture<GeminiResponseDTO> primary = send(request, rateLimiter.acquire(estimatedTokens)).toFuture();
+
+        long hedgeDelayMs = hedgeDelayMillis();
+        if (hedgeDelayMs < 0 || circuitBreaker.getState() != GeminiCircuitBreaker.State.CLOSED) {
+            return await(primary);
+        }
+
         try {
-            String url = apiUrl + "?key=" + apiKey;
+            return primary.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException slow) {
+            GeminiRateLimiter.Permit hedgePermit = rateLimiter.tryAcquire(estimatedTokens);
+            if (hedgePermit == null) {
+                return await(primary);
+            }
+            hedgeCounter.increment();
+            logger.info("Gemini call exceeded p95 ({} ms); sending hedged request", hedgeDelayMs);
+            CompletableFuture<GeminiResponseDTO> hedge = send(request, hedgePermit).toFuture();
+            return await(firstSuccessful(primary, hedge));
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
 
-            org.springframework.web.reactive.function.client.WebClient webClient =
-                org.springframework.web.reactive.function.client.WebClient.builder()
-                    .codecs(cfg -> cfg.defaultCodecs().maxInMemorySize(100 * 1024 * 1024)) // 100MB
-                    .build();
+    /**
+     * A single HTTP exchange. The rate-limit permit is settled when the exchange succeeds, fails or is
+     * cancelled; the circuit breaker is told once per logical call, in callGeminiAPI.
+     */
+    private Mono<GeminiResponseDTO> send(GeminiRequestDTO request, GeminiRateLimiter.Permit permit) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            String url = apiUrl + "?key=" + apiKey;
 
             return webClient.post()
                 .uri(url)
                 .header("x-goog-api-key", apiKey)
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
-                .bodyValue(request)
+                .body(BodyInserters.fromDataBuffers(streamRequestBody(request)))
                 .retrieve()
                 .onStatus(status -> !status.is2xxSuccessful(), resp -> resp.bodyToMono(String.class)
-                    .map(body -> new RuntimeException("Gemini API returned error: " + resp.statusCode() + " - " + body)))
+                    .defaultIfEmpty("")
+                    .map(body -> new GeminiApiException(resp.statusCode().value(),
+                        "Gemini API returned error: " + resp.statusCode() + " - " + body,
+                        parseRetryAfter(resp.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER)))))
                 .bodyToMono(GeminiResponseDTO.class)
-                .block();
-        } catch (Exception e) {
-            logger.error("Failed to call Gemini API: {}", e.getMessage());
-            throw new RuntimeException("Gemini API call failed", e);
+                .doOnSuccess(response -> {
+                    latencyWindow.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    permit.onSuccess(response != null && response.getUsageMetadata() != null
+                        ? response.getUsageMetadata().getTotalTokenCount()
+                        : null);
+                })
+                .doOnError(e -> {
+                    if (e instanceof GeminiApiException apiError && apiError.isOverload()) {
+                        permit.onOverload(apiError.getRetryAfter());
+                    } else {
+                        permit.onFailure();
+                    }
+                })
+                .doOnCancel(permit::onFailure);
+        });
+    }
+
+    /**
+     * Delay after which to hedge, or -1 when hedging is off or there is not enough history yet
+     */
+    private long hedgeDelayMillis() {
+        if (!hedgeEnabled || latencyWindow.size() < hedgeMinSamples) {
+            return -1;
+        }
+        return Math.max(hedgeMinDelayMs, latencyWindow.percentile(hedgePercentile));
+    }
+
+    private boolean isRetryable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof GeminiApiException apiError) {
+                int status = apiError.getStatusCode();
+                return status == 408 || status == 429 || status >= 500;
+            }
+            if (t instanceof WebClientRequestException || t instanceof TimeoutException
+                    || t instanceof IOException) {
+                return true; // connect/reset/read timeout: the request may never have reached Gemini
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Full-jitter exponential backoff, but never shorter than a server-sent Retry-After
+     */
+    private long backoffMillis(int attempt, Throwable e) {
+        long ceiling = Math.min(retryMaxBackoffMs, retryInitialBackoffMs * (1L << Math.min(attempt - 1, 20)));
+        long backoff = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof GeminiApiException apiError && apiError.getRetryAfter() != null) {
+                backoff = Math.max(backoff, Math.min(apiError.getRetryAfter().toMillis(), retryMaxBackoffMs));
+                break;
+            }
+        }
+        return backoff;
+    }
+
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<T, Throwable> onDone = (value, error) -> {
+            if (error == null) {
+                winner.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        };
+        first.whenComplete(onDone);
+        second.whenComplete(onDone);
+        // Cancelling the loser disposes its subscription, which aborts the HTTP exchange
+        winner.whenComplete((value, error) -> {
+            first.cancel(true);
+            second.cancel(true);
+        });
+        return winner;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+            ? e.getCause().getCause()
+            : e.getCause();
+        return cause instanceof Exception ex ? ex : e;
+    }
+
+    /**
+     * Token estimate used to reserve rate-limit budget before the call
+     */
+    private long estimateTokens(GeminiRequestDTO request) {
+        long promptChars = 0;
+        int mediaParts = 0;
+        if (request.getContents() != null) {
+            for (GeminiRequestDTO.ContentPart content : request.getContents()) {
+                if (content.getParts() == null) {
+                    continue;
+                }
+                for (GeminiRequestDTO.Part part : content.getParts()) {
+                    if (part.getText() != null) {
+                        promptChars += part.getText().length();
+                    }
+                    if (part.getInlineData() != null || part.getFileData() != null) {
+                        mediaParts++;
+                    }
+                }
+            }
+        }
+        Integer maxOutputTokens = request.getGenerationConfig() != null
+            ? request.getGenerationConfig().getMaxOutputTokens()
+            : null;
+        return rateLimiter.estimateTokens(promptChars, mediaParts, maxOutputTokens != null ? maxOutputTokens : 0);
+    }
+
+    /**
+     * Retry-After in delta-seconds form; HTTP-date values are ignored
+     */
+    private static Duration parseRetryAfter(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
     
+    /**
+     * Serialize the request as a stream of buffers. Jackson writes (and Base64-encodes inline
+     * image data) on a worker thread into fixed-size chunks that are sent as they fill, so the
+     * full JSON body never exists in memory. Body size and the bytes allocated while writing it
+     * are recorded so the per-request heap cost can be tracked.
+     */
+    private Publisher<DataBuffer> streamRequestBody(GeminiRequestDTO request) {
+        return DataBufferUtils.outputStreamPublisher(out -> {
+            long allocatedBefore = currentThreadAllocatedBytes();
+            CountingOutputStream counting = new CountingOutputStream(out);
+            try {
+                requestWriter.writeValue(counting, request);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write Gemini request body", e);
+            }
+            requestBodySize.record(counting.getByteCount());
+            long allocatedAfter = currentThreadAllocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                requestBodyAllocation.record(allocatedAfter - allocatedBefore);
+            }
+        }, DefaultDataBufferFactory.sharedInstance, bodyWriterExecutor, REQUEST_BODY_CHUNK_SIZE);
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean
+                && threadBean.isThreadAllocatedMemoryEnabled()) {
+            return threadBean.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
     /**
      * Process Gemini response and convert to OCRResultDTO
      */
@@ -495,7 +1238,7 @@ public class GeminiService {
             }
             String jsonResponse = sb.toString();
             logger.info("Gemini API response length: {}", jsonResponse.length());
-            logger.info("Raw Gemini response: {}", jsonResponse);
+            logger.debug("Raw Gemini response: {}", jsonResponse);
 
             // Parse the structured JSON response
             ContainerExtractionResultDTO extractionResult = parseContainerExtractionResult(jsonResponse);
@@ -510,113 +1253,33 @@ public class GeminiService {
     }
 
     /**
-     * Parse container extraction result from JSON (image flow - rows/columns)
+     * Decode the schema-constrained grid response (rows/columns structure for images)
      */
-    private ContainerExtractionResultDTO parseContainerExtractionResult(String jsonResponse) throws JsonProcessingException {
-        String cleanJson = jsonResponse.trim();
-        if (cleanJson.startsWith("```json")) cleanJson = cleanJson.substring(7);
-        if (cleanJson.endsWith("```")) cleanJson = cleanJson.substring(0, cleanJson.length() - 3);
-        cleanJson = cleanJson.trim();
-        return parseGeminiJsonResponse(cleanJson);
-    }
-
-    /**
-     * Parse Gemini's JSON response (rows/columns structure for images)
-     */
-    @SuppressWarnings("unchecked")
-    private ContainerExtractionResultDTO parseGeminiJsonResponse(String jsonResponse) throws JsonProcessingException {
+    private ContainerExtractionResultDTO parseContainerExtractionResult(String jsonResponse) throws IOException {
+        ContainerExtractionResultDTO result;
         try {
-            Map<String, Object> jsonMap = objectMapper.readValue(jsonResponse, Map.class);
-            ContainerExtractionResultDTO result = new ContainerExtractionResultDTO();
-            Map<String, ContainerExtractionResultDTO.RowData> rows = new HashMap<>();
-
-            // Extract and store grid structure information
-            if (jsonMap.containsKey("grid_structure")) {
-                Map<String, Object> gridStructure = (Map<String, Object>) jsonMap.get("grid_structure");
-                logger.info("Grid structure detected: rows={}, columns={}, total_products={}",
-                    gridStructure.get("rows"), gridStructure.get("columns"), gridStructure.get("total_products"));
-
-                // Store grid structure in result for later use
-                result.setGridStructure(gridStructure);
-            }
-
-            for (Map.Entry<String, Object> rowEntry : jsonMap.entrySet()) {
-                String rowKey = rowEntry.getKey();
-                if (rowKey.startsWith("row") && rowEntry.getValue() instanceof Map) {
-                    Map<String, Object> rowMap = (Map<String, Object>) rowEntry.getValue();
-                    ContainerExtractionResultDTO.RowData rowData = new ContainerExtractionResultDTO.RowData();
-
-                    for (Map.Entry<String, Object> posEntry : rowMap.entrySet()) {
-                        String posKey = posEntry.getKey();
-                        Object posValue = posEntry.getValue();
-
-                        try {
-                            int position = Integer.parseInt(posKey);
-                            // Increased from 5 to 8 to support larger grids
-                            if (position >= 1 && position <= 8) {
-                                String containerNumber = null;
-                                String confidence = "75%"; // More realistic default instead of 95%
-
-                                // Handle new format: {"number": "ABC123", "confidence": "87%"}
-                                if (posValue instanceof Map) {
-                                    Map<String, Object> posMap = (Map<String, Object>) posValue;
-                                    Object numberObj = posMap.get("number");
-                                    Object confObj = posMap.get("confidence");
-
-                                    if (numberObj != null) {
-                                        containerNumber = String.valueOf(numberObj).trim();
-                                    }
-                                    if (confObj != null) {
-                                        confidence = String.valueOf(confObj);
-                                    }
-                                }
-                                // Handle legacy format: direct string value
-                                else if (posValue != null) {
-                                    String value = String.valueOf(posValue);
-                                    if (!value.trim().isEmpty() && !value.equals("null") && !value.equals("N/A")) {
-                                        containerNumber = value.trim();
-                                        // For legacy format, look for row-level confidence
-                                        if (rowMap.containsKey("confidence")) {
-                                            confidence = String.valueOf(rowMap.get("confidence"));
-                                        }
-                                    }
-                                }
-
-                                // Only add if we have a valid container number
-                                if (containerNumber != null && !containerNumber.isEmpty()) {
-                                    rowData.setEntry(position, containerNumber, confidence);
-                                    logger.debug("Extracted container: {} at position {} with confidence {}",
-                                        containerNumber, position, confidence);
-                                }
-                            }
-                        } catch (NumberFormatException ignored) {
-                            // Skip non-numeric keys (like "confidence" at row level)
-                        }
-                    }
-
-                    // Only add row if it has at least one container
-                    boolean hasContainers = false;
-                    for (int i = 1; i <= 8; i++) { // Increased from 5 to 8
-                        if (rowData.getEntry(i) != null && rowData.getEntry(i).getContainerNumber() != null) {
-                            hasContainers = true;
-                            break;
-                        }
-                    }
-
-                    if (hasContainers) {
-                        rows.put(rowKey, rowData);
-                    }
-                }
-            }
+            result = GeminiGridParser.parse(jsonResponse);
+        } catch (IOException ex) {
+            logger.error("Failed to parse Gemini JSON response: {}", ex.getMessage());
+            logger.debug("Raw JSON response: {}", jsonResponse);
+            throw ex;
+        }
 
-            result.setRows(rows);
+        Map<String, ContainerExtractionResultDTO.RowData> rows = result.getRows();
+        if (result.isPartial()) {
+            logger.warn("Gemini response was cut off after {} chars; keeping the {} rows read before the cut",
+                        jsonResponse.length(), rows.size());
+        }
 
-            // Validation: Check for missing rows based on grid structure
-            if (result.getGridStructure() != null) {
-                Map<String, Object> gridStructure = result.getGridStructure();
-                Object rowsObj = gridStructure.get("rows");
-                if (rowsObj != null) {
-                    int expectedRows = Integer.valueOf(rowsObj.toString());
+        // Validation: Check for missing rows based on grid structure
+        Map<String, Object> gridStructure = result.getGridStructure();
+        if (gridStructure != null) {
+            logger.info("Grid structure detected: rows={}, columns={}, total_products={}",
+                gridStructure.get("rows"), gridStructure.get("columns"), gridStructure.get("total_products"));
+            Object rowsObj = gridStructure.get("rows");
+            if (rowsObj != null) {
+                try {
+                    int expectedRows = Integer.parseInt(rowsObj.toString());
                     int actualRows = rows.size();
 
                     if (actualRows < expectedRows) {
@@ -626,55 +1289,20 @@ public class GeminiService {
                     } else {
                         logger.info("Grid validation passed: Found all {} expected rows", expectedRows);
                     }
+                } catch (NumberFormatException ignored) {
+                    // Not a row count; nothing to validate against
                 }
             }
-
-            logger.info("Successfully parsed {} rows from Gemini response", rows.size());
-            return result;
-        } catch (JsonProcessingException ex) {
-            logger.error("Failed to parse Gemini JSON response: {}", ex.getMessage());
-            logger.debug("Raw JSON response: {}", jsonResponse);
-
-            // Attempt to salvage truncated/incomplete JSON by extracting valid prefix
-            String repaired = tryRepairJsonArrayItems(jsonResponse);
-            if (repaired != null) {
-                ContainerExtractionResultDTO result = new ContainerExtractionResultDTO();
-                result.setRows(new HashMap<>()); // no rows for image repair path
-                logger.warn("Repaired Gemini JSON for image flow; items ignored. Length={}.", repaired.length());
-                return result;
-            }
-            throw ex;
         }
-    }
 
-    // Attempt to salvage truncated/incomplete JSON by extracting the longest valid JSON object prefix
-    private String tryRepairJsonArrayItems(String json) {
-        // Simple heuristic: find last occurrence of '}' followed by ']' to close items, else null
-        try {
-            int itemsIdx = json.indexOf("\"items\"");
-            if (itemsIdx < 0) return null;
-            int lastBrace = json.lastIndexOf('}');
-            int lastBracket = json.lastIndexOf(']');
-            if (lastBracket < 0 || lastBrace < 0) return null;
-            int end = Math.max(lastBrace, lastBracket);
-            String candidate = json.substring(0, end + 1);
-            // Ensure it ends with valid object: if ends with ']', add closing '}' for the outer object
-            if (candidate.endsWith("]")) {
-                candidate = candidate + "}";
-            }
-            // Basic sanity check by parsing
-            objectMapper.readTree(candidate);
-            return candidate;
-        } catch (Exception ex) {
-            logger.warn("Failed to repair Gemini JSON: {}", ex.getMessage());
-            return null;
-        }
+        logger.info("Successfully parsed {} rows from Gemini response", rows.size());
+        return result;
     }
 
     /**
      * Process PDF response (flat items list) and convert to OCRResultDTO
      */
-    private OCRResultDTO processGeminiPdfResponse(GeminiResponseDTO response, String filename) throws JsonProcessingException {
+    private OCRResultDTO processGeminiPdfResponse(GeminiResponseDTO response, String filename) throws IOException {
         if (response.getCandidates() == null || response.getCandidates().isEmpty()) {
             return createErrorResult(filename, "No response candidates from Gemini API");
         }
@@ -692,29 +1320,10 @@ public class GeminiService {
         String jsonResponse = sb.toString();
         logger.info("Full Gemini response length: {} chars", jsonResponse.length());
 
-        String cleanJson = jsonResponse.trim();
-        if (cleanJson.startsWith("```json")) cleanJson = cleanJson.substring(7);
-        if (cleanJson.endsWith("```")) cleanJson = cleanJson.substring(0, cleanJson.length() - 3);
-        cleanJson = cleanJson.trim();
-
-        Map<String, Object> map = null;
-        List<Map<String, Object>> items = new ArrayList<>();
-        try {
-            map = objectMapper.readValue(cleanJson, Map.class);
-            items = (List<Map<String, Object>>) map.getOrDefault("items", new ArrayList<>());
-            logger.info("Successfully parsed JSON with {} items", items.size());
-        } catch (JsonProcessingException ex) {
-            logger.warn("JSON parse failed: {}", ex.getMessage());
-            String repaired = tryRepairJsonArrayItems(cleanJson);
-            if (repaired != null) {
-                map = objectMapper.readValue(repaired, Map.class);
-                items = (List<Map<String, Object>>) map.getOrDefault("items", new ArrayList<>());
-                logger.info("Repaired JSON with {} items", items.size());
-            } else {
-                // Fallback: items-only extraction from raw text
-                logger.warn("Repair failed, trying items-only extraction");
-                items = extractItemsFromText(cleanJson);
-            }
+        PdfExtractionResultDTO extraction = GeminiItemListParser.parse(jsonResponse);
+        if (extraction.isPartial()) {
+            logger.warn("Gemini PDF response was cut off after {} chars; keeping the {} items read before the cut",
+                        jsonResponse.length(), extraction.getItems().size());
         }
 
         OCRResultDTO result = new OCRResultDTO();
@@ -726,12 +1335,9 @@ public class GeminiService {
         int count = 0;
         StringBuilder text = new StringBuilder();
 
-        for (Map<String, Object> item : items) {
-            Object numObj = item.get("number");
-            Object confObj = item.get("confidence");
-            if (numObj == null) continue;
-            String number = numObj.toString();
-            String confStr = confObj != null ? confObj.toString() : "";
+        for (PdfExtractionResultDTO.Item item : extraction.getItems()) {
+            String number = item.getNumber();
+            String confStr = item.getConfidence();
             double conf = parseConfidence(confStr);
 
             OCRResultDTO.ContainerNumberDTO dto = new OCRResultDTO.ContainerNumberDTO();
@@ -763,30 +1369,6 @@ public class GeminiService {
         return result;
     }
 
-    // Fallback extractor: pull {"number":"...","confidence":"..."} pairs from raw text
-    private List<Map<String, Object>> extractItemsFromText(String text) {
-        List<Map<String, Object>> items = new ArrayList<>();
-        logger.info("Attempting items-only extraction from text length: {}", text.length());
-
-        // Very permissive pattern to catch pairs even across newlines/spaces
-        java.util.regex.Pattern p = java.util.regex.Pattern.compile("\\{\\s*\"number\"\\s*:\\s*\"([^\"]+)\"\\s*,\\s*\"confidence\"\\s*:\\s*\"([^\"]+)\"\\s*\\}");
-        java.util.regex.Matcher m = p.matcher(text.replace("\n", " "));
-
-        int matchCount = 0;
-        while (m.find()) {
-            String number = m.group(1);
-            String confidence = m.group(2);
-            java.util.HashMap<String, Object> map = new java.util.HashMap<>();
-            map.put("number", number);
-            map.put("confidence", confidence);
-            items.add(map);
-            matchCount++;
-        }
-
-        logger.info("Items-only extraction found {} matches", matchCount);
-        return items;
-    }
-
     /**
      * Convert ContainerExtractionResultDTO (image rows/columns) to OCRResultDTO
      */
@@ -881,6 +1463,12 @@ public class GeminiService {
         return ImageProcessingUtil.isValidContainerNumberFlexible(containerNumber);
     }
 
+    private OCRResultDTO createDeferredResult(String filename) {
+        OCRResultDTO result = createErrorResult(filename, "Gemini is temporarily unavailable; extraction deferred");
+        result.setDeferred(true);
+        return result;
+    }
+
     private OCRResultDTO createErrorResult(String filename, String errorMessage) {
         OCRResultDTO result = new OCRResultDTO();
         result.setFilename(filename);
@@ -891,5 +1479,80 @@ public class GeminiService {
         result.setConfidence(0.0);
         return result;
     }
-}
 
+    /**
+     * One image of a multi-image extraction
+     */
+    public static class BatchImage {
+        private final InputStreamSource source;
+        private String contentSha256;
+        private final String filename;
+        private final String mimeType;
+
+        public BatchImage(InputStreamSource source, String contentSha256, String filename, String mimeType) {
+            this.source = source;
+            this.contentSha256 = contentSha256;
+            this.filename = filename;
+            this.mimeType = mimeType;
+        }
+
+        public InputStreamSource getSource() {
+            return source;
+        }
+
+        public String getContentSha256() {
+            return contentSha256;
+        }
+
+        void setContentSha256(String contentSha256) {
+            this.contentSha256 = contentSha256;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    private static LinkedHashMap<String, GeminiRequestDTO.Schema> gridProperties() {
+        LinkedHashMap<String, GeminiRequestDTO.Schema> positions = new LinkedHashMap<>();
+        for (int position = 1; position <= 8; position++) {
+            positions.put(String.valueOf(position), numberSchema());
+        }
+        GeminiRequestDTO.Schema row = GeminiRequestDTO.Schema.object(positions);
+
+        LinkedHashMap<String, GeminiRequestDTO.Schema> properties = properties("grid_structure",
+            GeminiRequestDTO.Schema.object(properties("rows", GeminiRequestDTO.Schema.integer(),
+                                                      "columns", GeminiRequestDTO.Schema.integer(),
+                                                      "total_products", GeminiRequestDTO.Schema.integer()),
+                                           "rows", "columns", "total_products"));
+        for (int rowNumber = 1; rowNumber <= 8; rowNumber++) {
+            properties.put("row" + rowNumber, row);
+        }
+        return properties;
+    }
+
+    private static GeminiRequestDTO.Schema multiImageResponseSchema() {
+        LinkedHashMap<String, GeminiRequestDTO.Schema> image = properties("image", GeminiRequestDTO.Schema.integer());
+        image.putAll(gridProperties());
+        return GeminiRequestDTO.Schema.object(properties("images",
+            GeminiRequestDTO.Schema.array(GeminiRequestDTO.Schema.object(image, "image", "grid_structure"))), "images");
+    }
+
+    private static GeminiRequestDTO.Schema numberSchema() {
+        return GeminiRequestDTO.Schema.object(properties("number", GeminiRequestDTO.Schema.string(),
+                                                         "confidence", GeminiRequestDTO.Schema.string()),
+                                              "number", "confidence");
+    }
+
+    private static LinkedHashMap<String, GeminiRequestDTO.Schema> properties(Object... namesAndSchemas) {
+        LinkedHashMap<String, GeminiRequestDTO.Schema> properties = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndSchemas.length; i += 2) {
+            properties.put((String) namesAndSchemas[i], (GeminiRequestDTO.Schema) namesAndSchemas[i + 1]);
+        }
+        return properties;
+    }
+}
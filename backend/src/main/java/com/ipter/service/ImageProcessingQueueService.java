@@ -0,0 +1,208 @@
+package com.ipter.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ipter.event.ImageProcessingRequestedEvent;
+import com.ipter.repository.ImageRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Persistent, bounded job queue for image processing.
+ *
+ * The images table is the queue: PENDING rows with a queuedAt time are waiting, rows in PROCESSING
+ * are claimed. Images uploaded without processing stay PENDING but are never picked up.
+ * A dispatcher claims queued rows (oldest first) with an atomic status update and hands them
+ * to a fixed worker pool, never holding more jobs in memory than workers + queue capacity.
+ * Rows left in PROCESSING by a crash or restart are put back on the queue, once they are older
+ * than stale-after-minutes, until they run out of attempts.
+ * While the Gemini circuit breaker is open (with the queue fallback) nothing is dispatched, and
+ * images whose extraction was deferred go back on the queue without using up an attempt.
+ */
+@Service
+public class ImageProcessingQueueService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageProcessingQueueService.class);
+
+    private final ImageRepository imageRepository;
+    private final ImageService imageService;
+    private final GeminiCircuitBreaker circuitBreaker;
+
+    private final int workers;
+    private final int capacity;
+    private final int maxAttempts;
+    private final long staleAfterMinutes;
+
+    private final ThreadPoolExecutor executor;
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    public ImageProcessingQueueService(ImageRepository imageRepository,
+                                       ImageService imageService,
+                                       GeminiCircuitBreaker circuitBreaker,
+                                       @Value("${image.processing.queue.workers:4}") int workers,
+                                       @Value("${image.processing.queue.capacity:100}") int queueCapacity,
+                                       @Value("${image.processing.queue.max-attempts:3}") int maxAttempts,
+                                       @Value("${image.processing.queue.stale-after-minutes:10}") long staleAfterMinutes) {
+        this.imageRepository = imageRepository;
+        this.imageService = imageService;
+        this.circuitBreaker = circuitBreaker;
+        this.workers = Math.max(1, workers);
+        this.capacity = this.workers + Math.max(0, queueCapacity);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.staleAfterMinutes = staleAfterMinutes;
+
+        this.executor = new ThreadPoolExecutor(
+            this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+            new CustomizableThreadFactory("image-worker-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Wake the dispatcher as soon as an image is enqueued instead of waiting for the next poll
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onImageProcessingRequested(ImageProcessingRequestedEvent event) {
+        logger.debug("Image {} queued for processing", event.getImageId());
+        dispatch();
+    }
+
+    /**
+     * Restart recovery. Only rows that have been PROCESSING for longer than stale-after-minutes count
+     * as orphaned: during a rolling deploy, younger rows may still be running on another instance.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInterruptedJobs() {
+        List<UUID> orphaned = imageRepository.findStaleProcessingImageIds(staleCutoff());
+        if (!orphaned.isEmpty()) {
+            logger.warn("Recovering {} image(s) left in PROCESSING by a previous run", orphaned.size());
+            orphaned.forEach(this::recover);
+        }
+        dispatch();
+    }
+
+    /**
+     * Periodic safety net for jobs that stopped making progress, including ones a previous run left
+     * behind too recently to be recovered at startup
+     */
+    @Scheduled(fixedDelayString = "${image.processing.queue.stale-check-interval-ms:60000}")
+    public void requeueStaleJobs() {
+        for (UUID imageId : imageRepository.findStaleProcessingImageIds(staleCutoff())) {
+            if (!inFlight.contains(imageId)) {
+                logger.warn("Image {} has been PROCESSING for more than {} minutes; recovering", imageId, staleAfterMinutes);
+                recover(imageId);
+            }
+        }
+    }
+
+    /**
+     * Claim as many PENDING images as there are free slots and submit them to the worker pool
+     */
+    @Scheduled(fixedDelayString = "${image.processing.queue.poll-interval-ms:2000}")
+    public synchronized void dispatch() {
+        if (!running) {
+            return;
+        }
+
+        if (circuitBreaker.isQueuePaused()) {
+            return; // Gemini circuit is open; queued images wait instead of failing one by one
+        }
+
+        int freeSlots = capacity - inFlight.size();
+        if (circuitBreaker.getState() == GeminiCircuitBreaker.State.HALF_OPEN) {
+            freeSlots = Math.min(freeSlots, 1); // trickle work through while Gemini is being probed
+        }
+        if (freeSlots <= 0) {
+            return;
+        }
+
+        List<UUID> candidates = imageRepository.findQueuedImageIds(PageRequest.of(0, freeSlots));
+
+        for (UUID imageId : candidates) {
+            if (imageRepository.claimForProcessing(imageId, LocalDateTime.now()) != 1) {
+                continue; // claimed elsewhere or no longer pending
+            }
+
+            inFlight.add(imageId);
+            try {
+                executor.execute(() -> runJob(imageId));
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(imageId);
+                imageRepository.releaseClaim(imageId);
+                logger.warn("Worker pool is full; image {} stays queued", imageId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Number of jobs currently claimed by this instance (running or waiting for a worker)
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void runJob(UUID imageId) {
+        try {
+            logger.info("Worker {} processing image {}", Thread.currentThread().getName(), imageId);
+            imageService.processImage(imageId);
+        } catch (Exception e) {
+            // processImage has already recorded FAILED and the error message on the row
+            logger.error("Queued processing failed for image {}: {}", imageId, e.getMessage());
+        } finally {
+            inFlight.remove(imageId);
+        }
+        dispatch();
+    }
+
+    private LocalDateTime staleCutoff() {
+        return LocalDateTime.now().minusMinutes(staleAfterMinutes);
+    }
+
+    private void recover(UUID imageId) {
+        if (imageRepository.requeueIfAttemptsRemain(imageId, maxAttempts, LocalDateTime.now()) == 1) {
+            return;
+        }
+        imageRepository.failIfAttemptsExhausted(imageId, maxAttempts,
+            "Processing was interrupted " + maxAttempts + " time(s); giving up");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                // Unfinished rows stay in PROCESSING and are recovered on the next start
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.ipter.service;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.ipter.event.ImagesDeletedEvent;
+import com.ipter.model.Image;
+
+import jakarta.persistence.PostRemove;
+
+/**
+ * JPA listener on Image: announces every removed image, whether deleted directly or by cascade
+ * from its project, so files derived from it can be cleaned up once the delete commits
+ */
+@Component
+public class ImageRemovalListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ImageRemovalListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostRemove
+    public void onImageRemoved(Image image) {
+        eventPublisher.publishEvent(new ImagesDeletedEvent(List.of(image.getId())));
+    }
+}
@@ -1,13 +1,17 @@
 package com.ipter.service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -15,43 +19,45 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.ipter.config.AIServiceConfig;
+import com.ipter.dto.ExtractedContainerRow;
+import com.ipter.dto.ImageCursor;
+import com.ipter.dto.ImageListFilter;
+import com.ipter.dto.ImagePageResponse;
 import com.ipter.dto.ImageProcessingResponse;
 import com.ipter.dto.ImageUploadRequest;
 import com.ipter.dto.ImageUploadResponse;
 import com.ipter.dto.OCRResultDTO;
 import com.ipter.dto.SerialNumberUpdateRequest;
 import com.ipter.dto.SerialNumberUpdateResponse;
+import com.ipter.event.ImageProcessingRequestedEvent;
+import com.ipter.event.ImagesUploadedEvent;
 import com.ipter.model.ExtractedData;
 import com.ipter.model.ExtractionType;
 import com.ipter.model.Image;
-import com.ipter.model.MasterData;
 import com.ipter.model.ProcessingStatus;
 import com.ipter.model.Project;
 import com.ipter.model.User;
 import com.ipter.model.ValidationStatus;
 import com.ipter.repository.ExtractedDataRepository;
 import com.ipter.repository.ImageRepository;
-import com.ipter.repository.MasterDataRepository;
 import com.ipter.repository.ProjectRepository;
 import com.ipter.repository.UserRepository;
+import com.ipter.util.ContentHashUtil;
 
 /**
  * Service for handling image upload, processing, and OCR operations
@@ -75,20 +81,21 @@ public class ImageService {
     private ExtractedDataRepository extractedDataRepository;
 
     @Autowired
-    private MasterDataRepository masterDataRepository;
+    private GeminiService geminiService;
 
     @Autowired
-    @Qualifier("aiServiceRestTemplate")
-    private RestTemplate restTemplate;
+    private ProjectPromptCache projectPromptCache;
 
     @Autowired
-    private AIServiceConfig aiServiceConfig;
+    private ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    private GeminiService geminiService;
+    private TransactionTemplate transactionTemplate;
 
     private static final String UPLOAD_DIR = "uploads/images";
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
+    private static final int IMAGE_ID_BATCH_SIZE = 1000; // IN-list size per extracted-data query
+    private static final int MAX_PAGE_SIZE = 500;
     private static final String[] ALLOWED_CONTENT_TYPES = {
         "image/jpeg", "image/jpg", "image/png", "image/tiff", "image/bmp"
     };
@@ -118,31 +125,15 @@ public class ImageService {
             Files.createDirectories(uploadPath);
         }
 
-        // Generate unique filename
         String originalFilename = file.getOriginalFilename();
-        String fileExtension = getFileExtension(originalFilename);
-        String uniqueFilename = UUID.randomUUID().toString() + "_" + originalFilename;
-        Path filePath = uploadPath.resolve(uniqueFilename);
 
         try {
-            // Save file to disk
-            Files.copy(file.getInputStream(), filePath);
-
-            // Create image entity
-            Image image = new Image(
-                originalFilename,
-                filePath.toString(),
-                file.getContentType(),
-                file.getSize(),
-                project,
-                user
-            );
-
-            // Set additional metadata
-            image.setProcessingStatus(ProcessingStatus.PENDING);
+            Image image = storeUploadedFile(file, uploadPath, project, user);
+            String contentSha256 = image.getContentSha256();
 
             // Save to database
             image = imageRepository.save(image);
+            eventPublisher.publishEvent(new ImagesUploadedEvent(List.of(image.getId())));
 
             // Audit logging will be handled by frontend
 
@@ -153,7 +144,7 @@ public class ImageService {
                 processImageAsync(image.getId());
             }
 
-            return new ImageUploadResponse(
+            ImageUploadResponse response = new ImageUploadResponse(
                 image.getId(),
                 image.getOriginalFilename(),
                 image.getContentType(),
@@ -163,6 +154,8 @@ public class ImageService {
                 image.getUploadedAt(),
                 "Image uploaded successfully"
             );
+            response.setContentSha256(contentSha256);
+            return response;
 
         } catch (IOException e) {
             logger.error("Failed to save image file: {}", e.getMessage());
@@ -171,46 +164,178 @@ public class ImageService {
     }
 
     /**
-     * Process an image using AI service
+     * Upload many images for one project in a single transaction.
+     * All files are validated before anything is written; if any file or the insert fails,
+     * no rows are kept and the files already written are removed.
+     */
+    public List<Image> uploadImages(List<MultipartFile> files, UUID projectId) throws Exception {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("No files provided");
+        }
+        for (MultipartFile file : files) {
+            try {
+                validateImageFile(file);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file.getOriginalFilename() + ": " + e.getMessage());
+            }
+        }
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String username = auth.getName();
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found: " + username));
+
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found: " + projectId));
+
+        Path uploadPath = Paths.get(UPLOAD_DIR);
+        if (!Files.exists(uploadPath)) {
+            Files.createDirectories(uploadPath);
+        }
+
+        List<Path> writtenFiles = new ArrayList<>();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Rows are only visible if the transaction commits; otherwise drop the orphaned files
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        deleteQuietly(writtenFiles);
+                    }
+                }
+            });
+        }
+
+        try {
+            List<Image> images = new ArrayList<>(files.size());
+            for (MultipartFile file : files) {
+                Image image = storeUploadedFile(file, uploadPath, project, user);
+                writtenFiles.add(Paths.get(image.getFilePath()));
+                images.add(image);
+            }
+
+            List<Image> saved = imageRepository.saveAll(images);
+            eventPublisher.publishEvent(new ImagesUploadedEvent(saved.stream().map(Image::getId).toList()));
+            logger.info("Batch upload stored {} images for project {}", saved.size(), projectId);
+            return saved;
+
+        } catch (IOException e) {
+            logger.error("Failed to save batch image files: {}", e.getMessage());
+            deleteQuietly(writtenFiles);
+            throw new RuntimeException("Failed to save image files", e);
+        }
+    }
+
+    /**
+     * Stream a multipart file to a unique path under the upload directory, hashing it on the
+     * way so the bytes are read exactly once, and build the (unsaved) image entity for it
+     */
+    private Image storeUploadedFile(MultipartFile file, Path uploadPath, Project project, User user) throws IOException {
+        String originalFilename = file.getOriginalFilename();
+        String uniqueFilename = UUID.randomUUID().toString() + "_" + originalFilename;
+        Path filePath = uploadPath.resolve(uniqueFilename);
+
+        MessageDigest digest = ContentHashUtil.newSha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, filePath);
+        }
+
+        Image image = new Image(
+            originalFilename,
+            filePath.toString(),
+            file.getContentType(),
+            file.getSize(),
+            project,
+            user
+        );
+        image.setContentSha256(ContentHashUtil.toHex(digest));
+        image.setProcessingStatus(ProcessingStatus.PENDING);
+        return image;
+    }
+
+    private void deleteQuietly(List<Path> paths) {
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Could not remove uploaded file {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Process an image using AI service.
+     * Runs without a surrounding transaction so no connection is held across the Gemini call: the
+     * PROCESSING and FAILED updates commit on their own, and the results are written in one transaction.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ImageProcessingResponse processImage(UUID imageId) throws Exception {
+        return process(imageId, false);
+    }
+
+    /**
+     * Process an image again on explicit request: a cached extraction of the same content is dropped
+     * and Gemini is asked again
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ImageProcessingResponse reprocessImage(UUID imageId) throws Exception {
+        return process(imageId, true);
+    }
+
+    private ImageProcessingResponse process(UUID imageId, boolean refresh) throws Exception {
         Image image = imageRepository.findById(imageId)
                 .orElseThrow(() -> new RuntimeException("Image not found: " + imageId));
 
         // Update status to processing
         image.setProcessingStatus(ProcessingStatus.PROCESSING);
-        imageRepository.save(image);
+        if (image.getProcessingStartedAt() == null) {
+            image.setProcessingStartedAt(LocalDateTime.now());
+        }
+        image = imageRepository.save(image);
 
         try {
-            // Read image file
+            // Image file is streamed into the Gemini request rather than loaded into memory
             Path imagePath = Paths.get(image.getFilePath());
-            byte[] imageBytes = Files.readAllBytes(imagePath);
-
-            // Call Gemini AI service
-            OCRResultDTO ocrResult = callGeminiService(imageBytes, image.getOriginalFilename(), image.getContentType());
-
-            // Process results
-            if (ocrResult.getSuccess()) {
-                // Save extracted data
-                saveExtractedData(image, ocrResult);
-
-                // Update image metadata
-                updateImageWithResults(image, ocrResult);
-
-                image.setProcessingStatus(ProcessingStatus.COMPLETED);
-                image.setProcessedAt(LocalDateTime.now());
+            if (!Files.exists(imagePath)) {
+                throw new RuntimeException("Image file not found: " + imagePath);
+            }
 
-                logger.info("Image processed successfully: {} (ID: {})",
-                           image.getOriginalFilename(), image.getId());
+            // Call Gemini AI service with the project's example number
+            String exampleNumber = resolveExampleNumber(image.getProject().getId());
+            OCRResultDTO ocrResult = callGeminiService(new FileSystemResource(imagePath), image.getContentSha256(),
+                image.getOriginalFilename(), image.getContentType(), exampleNumber, refresh);
 
-            } else {
-                image.setProcessingStatus(ProcessingStatus.FAILED);
-                image.setErrorMessage(ocrResult.getErrorMessage());
-                logger.error("Image processing failed: {} - {}",
-                           image.getOriginalFilename(), ocrResult.getErrorMessage());
+            if (ocrResult.isDeferred()) {
+                return deferProcessing(image);
             }
 
-            image = imageRepository.save(image);
+            // Process results
+            Image processed = image;
+            image = transactionTemplate.execute(status -> {
+                if (ocrResult.getSuccess()) {
+                    // Save extracted data
+                    saveExtractedData(processed, ocrResult);
+
+                    // Update image metadata
+                    updateImageWithResults(processed, ocrResult);
+
+                    processed.setProcessingStatus(ProcessingStatus.COMPLETED);
+                    processed.setProcessedAt(LocalDateTime.now());
+
+                    logger.info("Image processed successfully: {} (ID: {})",
+                               processed.getOriginalFilename(), processed.getId());
+
+                } else {
+                    processed.setProcessingStatus(ProcessingStatus.FAILED);
+                    processed.setErrorMessage(ocrResult.getErrorMessage());
+                    logger.error("Image processing failed: {} - {}",
+                               processed.getOriginalFilename(), ocrResult.getErrorMessage());
+                }
+
+                processed.setProcessingStartedAt(null);
+                processed.setQueuedAt(null);
+                return imageRepository.save(processed);
+            });
 
             // Create response
             ImageProcessingResponse response = new ImageProcessingResponse(
@@ -250,6 +375,8 @@ public class ImageService {
 
             image.setProcessingStatus(ProcessingStatus.FAILED);
             image.setErrorMessage("Processing error: " + e.getMessage());
+            image.setProcessingStartedAt(null);
+            image.setQueuedAt(null);
             imageRepository.save(image);
 
             throw new RuntimeException("Image processing failed", e);
@@ -257,17 +384,46 @@ public class ImageService {
     }
 
     /**
-     * Process image asynchronously
+     * Gemini is unavailable (circuit open): put the image back on the queue without using up an attempt
+     */
+    private ImageProcessingResponse deferProcessing(Image image) {
+        image.setProcessingStatus(ProcessingStatus.PENDING);
+        image.setProcessingStartedAt(null);
+        image.setQueuedAt(LocalDateTime.now());
+        image.setProcessingAttempts(Math.max(0, image.getProcessingAttempts() - 1));
+        image = imageRepository.save(image);
+        logger.warn("Gemini unavailable; image {} left queued for later processing", image.getId());
+
+        ImageProcessingResponse response = new ImageProcessingResponse(
+            image.getId(),
+            image.getOriginalFilename(),
+            image.getProcessingStatus()
+        );
+        response.setErrorMessage("Gemini is temporarily unavailable; image queued for processing");
+        return response;
+    }
+
+    /**
+     * Queue an image for background processing and return immediately.
+     * The image is picked up by ImageProcessingQueueService; clients poll /images/{imageId}/status.
      */
     public void processImageAsync(UUID imageId) {
-        // In a real application, this would use @Async or a message queue
-        // For now, we'll process synchronously but log it as async
-        try {
-            logger.info("Starting async processing for image: {}", imageId);
-            processImage(imageId);
-        } catch (Exception e) {
-            logger.error("Async image processing failed for {}: {}", imageId, e.getMessage());
+        Image image = imageRepository.findById(imageId)
+                .orElseThrow(() -> new RuntimeException("Image not found: " + imageId));
+
+        if (image.getProcessingStatus() == ProcessingStatus.PROCESSING) {
+            logger.info("Image {} is already being processed; not re-queuing", imageId);
+            return;
         }
+
+        image.setProcessingStatus(ProcessingStatus.PENDING);
+        image.setErrorMessage(null);
+        image.setQueuedAt(LocalDateTime.now());
+        image.setProcessingAttempts(0);
+        imageRepository.save(image);
+
+        logger.info("Queued image for async processing: {}", imageId);
+        eventPublisher.publishEvent(new ImageProcessingRequestedEvent(imageId));
     }
 
     /**
@@ -314,83 +470,93 @@ public class ImageService {
     }
 
     /**
-     * Get images for a project
+     * Get all images for a project (unpaged; listings use getProjectImagesPage)
      */
     public List<ImageProcessingResponse> getProjectImages(UUID projectId) {
         List<Image> images = imageRepository.findByProjectIdOrderByUploadedAtDesc(projectId);
 
         return images.stream()
-                .map(image -> {
-                    ImageProcessingResponse response = new ImageProcessingResponse(
-                        image.getId(),
-                        image.getOriginalFilename(),
-                        image.getProcessingStatus()
-                    );
-
-                    if (image.getProcessingStatus() == ProcessingStatus.COMPLETED) {
-                        response.setConfidence(image.getConfidence());
-                        response.setContainerNumbersFound(image.getContainerNumbersFound());
-                        response.setProcessedAt(image.getProcessedAt());
-                    } else if (image.getProcessingStatus() == ProcessingStatus.FAILED) {
-                        response.setErrorMessage(image.getErrorMessage());
-                    }
-
-                    // Set verification status
-                    response.setVerified(image.isVerified());
-
-                    return response;
-                })
+                .map(this::convertToStatusResponse)
                 .collect(Collectors.toList());
     }
 
     /**
-     * Call Gemini AI service for container number extraction
+     * One keyset page of a project's images, newest first, filtered in the database.
+     * withContainerNumbers adds each image's extracted numbers (one extra query per page);
+     * includeTotal adds the number of matching images (one COUNT query).
      */
-    private OCRResultDTO callGeminiService(byte[] imageBytes, String filename, String contentType) throws Exception {
-        try {
-            logger.info("Calling Gemini service for container extraction: {}", filename);
-            return geminiService.extractContainerNumbers(imageBytes, filename, contentType);
-        } catch (Exception e) {
-            logger.error("Failed to call Gemini service: {}", e.getMessage());
-            throw new RuntimeException("Gemini service call failed", e);
+    @Transactional(readOnly = true)
+    public ImagePageResponse getProjectImagesPage(UUID projectId, ImageListFilter filter, String cursor, int limit,
+                                                  boolean includeTotal, boolean withContainerNumbers) {
+        if (filter.getMinConfidence() != null && filter.getMaxConfidence() != null
+                && filter.getMinConfidence() > filter.getMaxConfidence()) {
+            throw new IllegalArgumentException("minConfidence must not be greater than maxConfidence");
+        }
+        int pageSize = Math.min(MAX_PAGE_SIZE, Math.max(1, limit));
+        ImageCursor after = cursor != null && !cursor.isBlank() ? ImageCursor.decode(cursor) : null;
+
+        // One row more than the page tells whether another page follows, without counting
+        List<Image> images = imageRepository.findPageByProjectId(projectId,
+                filter.getStatus(), filter.getVerified(), filter.getMinConfidence(), filter.getMaxConfidence(),
+                after != null ? after.getUploadedAt() : null, after != null ? after.getImageId() : null,
+                PageRequest.of(0, pageSize + 1));
+        boolean hasMore = images.size() > pageSize;
+        if (hasMore) {
+            images = images.subList(0, pageSize);
         }
+
+        List<ImageProcessingResponse> responses = withContainerNumbers
+                ? convertToImageProcessingResponses(images)
+                : images.stream().map(this::convertToStatusResponse).collect(Collectors.toList());
+        String nextCursor = null;
+        if (hasMore) {
+            Image last = images.get(images.size() - 1);
+            nextCursor = new ImageCursor(last.getUploadedAt(), last.getId()).encode();
+        }
+        Long totalCount = includeTotal
+                ? imageRepository.countFilteredByProjectId(projectId, filter.getStatus(), filter.getVerified(),
+                                                            filter.getMinConfidence(), filter.getMaxConfidence())
+                : null;
+
+        return new ImagePageResponse(responses, nextCursor, hasMore, totalCount);
     }
 
     /**
-     * Call AI service for OCR processing (Legacy - kept for fallback)
+     * Listing DTO: results only for completed images, the error only for failed ones
      */
-    private OCRResultDTO callAIService(byte[] imageBytes, String filename) throws Exception {
-        try {
-            // Prepare multipart request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("file", new ByteArrayResource(imageBytes) {
-                @Override
-                public String getFilename() {
-                    return filename;
-                }
-            });
+    private ImageProcessingResponse convertToStatusResponse(Image image) {
+        ImageProcessingResponse response = new ImageProcessingResponse(
+            image.getId(),
+            image.getOriginalFilename(),
+            image.getProcessingStatus()
+        );
 
-            HttpEntity<MultiValueMap<String, Object>> requestEntity =
-                new HttpEntity<>(body, headers);
+        if (image.getProcessingStatus() == ProcessingStatus.COMPLETED) {
+            response.setConfidence(image.getConfidence());
+            response.setContainerNumbersFound(image.getContainerNumbersFound());
+            response.setProcessedAt(image.getProcessedAt());
+        } else if (image.getProcessingStatus() == ProcessingStatus.FAILED) {
+            response.setErrorMessage(image.getErrorMessage());
+        }
 
-            // Call Python AI service
-            String url = aiServiceConfig.getAiServiceUrl() + "/ocr/extract-containers";
-            ResponseEntity<OCRResultDTO> response = restTemplate.postForEntity(
-                url, requestEntity, OCRResultDTO.class
-            );
+        // Set verification status
+        response.setVerified(image.isVerified());
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return response.getBody();
-            } else {
-                throw new RuntimeException("AI service returned error: " + response.getStatusCode());
-            }
+        return response;
+    }
 
+    /**
+     * Call Gemini AI service for container number extraction
+     */
+    private OCRResultDTO callGeminiService(Resource image, String contentSha256, String filename, String contentType,
+                                          String exampleNumber, boolean refresh) throws Exception {
+        try {
+            logger.info("Calling Gemini service for container extraction: {}", filename);
+            return geminiService.extractContainerNumbers(image, contentSha256, filename, contentType, exampleNumber,
+                refresh);
         } catch (Exception e) {
-            logger.error("Failed to call AI service: {}", e.getMessage());
-            throw new RuntimeException("AI service call failed", e);
+            logger.error("Failed to call Gemini service: {}", e.getMessage());
+            throw new RuntimeException("Gemini service call failed", e);
         }
     }
 
@@ -398,6 +564,9 @@ public class ImageService {
      * Save extracted data to database
      */
     private void saveExtractedData(Image image, OCRResultDTO ocrResult) {
+        // Collected and saved together so the INSERTs go out as one JDBC batch
+        List<ExtractedData> rows = new ArrayList<>();
+
         // Save full extracted text
         if (ocrResult.getExtractedText() != null && !ocrResult.getExtractedText().isEmpty()) {
             ExtractedData textData = new ExtractedData(
@@ -413,7 +582,7 @@ public class ImageService {
                 textData.setProcessingVersion(ocrResult.getProcessingMetadata().getEngineVersion());
             }
 
-            extractedDataRepository.save(textData);
+            rows.add(textData);
         }
 
         // Save individual container numbers
@@ -441,9 +610,11 @@ public class ImageService {
                     containerData.setProcessingVersion(ocrResult.getProcessingMetadata().getEngineVersion());
                 }
 
-                extractedDataRepository.save(containerData);
+                rows.add(containerData);
             }
         }
+
+        extractedDataRepository.saveAll(rows);
     }
 
     /**
@@ -522,6 +693,10 @@ public class ImageService {
         if (ocrResult == null) {
             throw new IllegalArgumentException("OCR result is null");
         }
+        if (ocrResult.isDeferred()) {
+            processImageAsync(imageId);
+            return;
+        }
         if (ocrResult.getSuccess()) {
             saveExtractedData(image, ocrResult);
             updateImageWithResults(image, ocrResult);
@@ -551,6 +726,7 @@ public class ImageService {
                     .orElseThrow(() -> new RuntimeException("Project not found: " + request.getProjectId()));
 
             int updatedCount = 0;
+            List<ExtractedData> rows = new ArrayList<>();
 
             // Process each updated serial number
             if (request.getUpdatedSerials() != null) {
@@ -570,7 +746,7 @@ public class ImageService {
                         extractedData.setProcessingVersion("1.0");
                         extractedData.setExtractedAt(java.time.LocalDateTime.now());
 
-                        extractedDataRepository.save(extractedData);
+                        rows.add(extractedData);
                         updatedCount++;
 
                         logger.debug("Updated serial number: {} at Row {}, Position {}",
@@ -579,6 +755,8 @@ public class ImageService {
                 }
             }
 
+            extractedDataRepository.saveAll(rows);
+
             // Update image processing status if needed
             if (updatedCount > 0) {
                 image.setProcessingStatus(ProcessingStatus.COMPLETED);
@@ -675,9 +853,7 @@ public class ImageService {
      */
     public List<ImageProcessingResponse> getVerifiedProjectImages(UUID projectId) {
         List<Image> images = imageRepository.findByProjectIdAndIsVerified(projectId, true);
-        return images.stream()
-                .map(this::convertToImageProcessingResponse)
-                .collect(Collectors.toList());
+        return convertToImageProcessingResponses(images);
     }
 
     /**
@@ -685,15 +861,36 @@ public class ImageService {
      */
     public List<ImageProcessingResponse> getImagesByVerificationStatus(boolean isVerified) {
         List<Image> images = imageRepository.findByIsVerified(isVerified);
+        return convertToImageProcessingResponses(images);
+    }
+
+    /**
+     * Convert Image entities to ImageProcessingResponse DTOs, fetching the extracted
+     * container numbers of all images in one query per IMAGE_ID_BATCH_SIZE images
+     */
+    private List<ImageProcessingResponse> convertToImageProcessingResponses(List<Image> images) {
+        Map<UUID, List<String>> containerNumbersByImage = new HashMap<>();
+        List<UUID> imageIds = images.stream().map(Image::getId).collect(Collectors.toList());
+        for (int from = 0; from < imageIds.size(); from += IMAGE_ID_BATCH_SIZE) {
+            List<UUID> batch = imageIds.subList(from, Math.min(imageIds.size(), from + IMAGE_ID_BATCH_SIZE));
+            for (ExtractedContainerRow row : extractedDataRepository.findContainerRowsByImageIds(batch)) {
+                String containerNumber = row.getContainerNumber().trim();
+                if (!containerNumber.isEmpty()) {
+                    containerNumbersByImage.computeIfAbsent(row.getImageId(), id -> new ArrayList<>()).add(containerNumber);
+                }
+            }
+        }
+
         return images.stream()
-                .map(this::convertToImageProcessingResponse)
+                .map(image -> convertToImageProcessingResponse(
+                        image, containerNumbersByImage.getOrDefault(image.getId(), new ArrayList<>())))
                 .collect(Collectors.toList());
     }
 
     /**
      * Convert Image entity to ImageProcessingResponse DTO
      */
-    private ImageProcessingResponse convertToImageProcessingResponse(Image image) {
+    private ImageProcessingResponse convertToImageProcessingResponse(Image image, List<String> containerNumbers) {
         ImageProcessingResponse response = new ImageProcessingResponse();
         response.setImageId(image.getId());
         response.setOriginalFilename(image.getOriginalFilename());
@@ -703,44 +900,26 @@ public class ImageService {
         response.setProcessedAt(image.getProcessedAt());
         response.setErrorMessage(image.getErrorMessage());
         response.setVerified(image.isVerified());
-
-        // Get extracted container numbers
-        List<ExtractedData> extractedDataList = extractedDataRepository.findByImageId(image.getId());
-        List<String> containerNumbers = extractedDataList.stream()
-                .filter(ed -> ed.getContainerNumber() != null && !ed.getContainerNumber().trim().isEmpty())
-                .map(ed -> ed.getContainerNumber().trim())
-                .collect(Collectors.toList());
         response.setContainerNumbers(containerNumbers);
-
         return response;
     }
 
+    /**
+     * Resolve the example number used in the extraction prompt for a project: its configured
+     * example, otherwise a few sampled master numbers (cached per project)
+     */
+    @Transactional(readOnly = true)
+    public String resolveExampleNumber(UUID projectId) {
+        return projectPromptCache.getExampleNumber(projectId);
+    }
+
     /**
      * Get random master data examples for a project to use as example numbers
      */
     @Transactional(readOnly = true)
     public List<String> getRandomMasterDataExamples(UUID projectId, int count) {
         try {
-            // Get the project first
-            Project project = projectRepository.findById(projectId)
-                    .orElseThrow(() -> new RuntimeException("Project not found: " + projectId));
-
-            // Get master data for the project
-            List<MasterData> masterDataList = masterDataRepository.findByProject(project);
-
-            if (masterDataList.isEmpty()) {
-                logger.warn("No master data found for project: {}", projectId);
-                return new ArrayList<>();
-            }
-
-            // Shuffle and take the requested count
-            Collections.shuffle(masterDataList);
-            return masterDataList.stream()
-                    .limit(count)
-                    .map(MasterData::getContainerNumber)
-                    .filter(containerNumber -> containerNumber != null && !containerNumber.trim().isEmpty())
-                    .collect(Collectors.toList());
-
+            return projectPromptCache.sampleMasterNumbers(projectId, count);
         } catch (Exception e) {
             logger.error("Error getting random master data examples for project {}: {}", projectId, e.getMessage());
             return new ArrayList<>();
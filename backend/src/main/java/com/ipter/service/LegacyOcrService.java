@@ -0,0 +1,79 @@
+package com.ipter.service;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import com.ipter.config.AIServiceConfig;
+import com.ipter.dto.OCRResultDTO;
+
+/**
+ * Client for the legacy Python OCR service (ai.service.url).
+ * Only used as a degraded-mode fallback while the Gemini circuit breaker is open.
+ */
+@Service
+public class LegacyOcrService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LegacyOcrService.class);
+
+    private final RestTemplate restTemplate;
+    private final AIServiceConfig aiServiceConfig;
+
+    public LegacyOcrService(@Qualifier("aiServiceRestTemplate") RestTemplate restTemplate,
+                            AIServiceConfig aiServiceConfig) {
+        this.restTemplate = restTemplate;
+        this.aiServiceConfig = aiServiceConfig;
+    }
+
+    /**
+     * Call AI service for OCR processing; the image is streamed into the multipart body
+     */
+    public OCRResultDTO extractContainerNumbers(InputStreamSource image, String filename) {
+        try {
+            // Prepare multipart request
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+            body.add("file", new InputStreamResource(image.getInputStream()) {
+                @Override
+                public String getFilename() {
+                    return filename;
+                }
+            });
+
+            HttpEntity<MultiValueMap<String, Object>> requestEntity =
+                new HttpEntity<>(body, headers);
+
+            // Call Python AI service
+            String url = aiServiceConfig.getAiServiceUrl() + "/ocr/extract-containers";
+            ResponseEntity<OCRResultDTO> response = restTemplate.postForEntity(
+                url, requestEntity, OCRResultDTO.class
+            );
+
+            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                return response.getBody();
+            } else {
+                throw new RuntimeException("AI service returned error: " + response.getStatusCode());
+            }
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read image for AI service: " + e.getMessage(), e);
+        } catch (Exception e) {
+            logger.error("Failed to call AI service: {}", e.getMessage());
+            throw new RuntimeException("AI service call failed", e);
+        }
+    }
+}
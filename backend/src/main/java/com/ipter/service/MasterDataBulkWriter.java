@@ -0,0 +1,168 @@
+package com.ipter.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+
+import com.ipter.model.MasterData;
+import com.ipter.repository.MasterDataRepository;
+
+/**
+ * Inserts new master data rows and moves kept ones to their position in a reprocessed PDF.
+ *
+ * Normal lists go through saveAll, which Hibernate sends as JDBC batches. On PostgreSQL, lists
+ * of at least copy-threshold rows are streamed with COPY instead: one statement, no per-row
+ * parsing or round trips. COPY and the position updates use the connection of the surrounding
+ * transaction, so they commit or roll back together with the rest of the reprocess.
+ */
+@Service
+public class MasterDataBulkWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MasterDataBulkWriter.class);
+
+    private static final String COPY_SQL = "COPY master_data (id, project_id, container_number, line_number, page_number, "
+        + "confidence_score, raw_text, is_validated, validation_notes, is_matched, match_count, created_at, updated_at) "
+        + "FROM STDIN WITH (FORMAT csv)";
+
+    private static final String UPDATE_POSITION_SQL = "UPDATE master_data SET line_number = ?, page_number = ?, "
+        + "confidence_score = ?, raw_text = ?, updated_at = ? WHERE project_id = ? AND container_number = ?";
+    private static final int UPDATE_BATCH_SIZE = 500;
+
+    private final MasterDataRepository masterDataRepository;
+    private final DataSource dataSource;
+    private final int copyThreshold;
+    private volatile Boolean postgres;
+
+    public MasterDataBulkWriter(MasterDataRepository masterDataRepository,
+                                DataSource dataSource,
+                                @Value("${master-data.bulk.copy-threshold:5000}") int copyThreshold) {
+        this.masterDataRepository = masterDataRepository;
+        this.dataSource = dataSource;
+        this.copyThreshold = copyThreshold;
+    }
+
+    /**
+     * Insert the rows; must be called inside a transaction
+     */
+    public void insertAll(List<MasterData> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (copyThreshold <= 0 || rows.size() < copyThreshold || !isPostgres()) {
+            masterDataRepository.saveAll(rows);
+            return;
+        }
+
+        // Pending deletes of the old rows must reach the database before the COPY
+        masterDataRepository.flush();
+        long start = System.currentTimeMillis();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                for (MasterData row : rows) {
+                    if (row.getId() == null) {
+                        row.setId(UUID.randomUUID());
+                    }
+                    byte[] line = toCsvLine(row).getBytes(StandardCharsets.UTF_8);
+                    copy.writeToCopy(line, 0, line.length);
+                }
+                copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Bulk insert of master data failed: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        logger.info("Copied {} master data rows in {} ms", rows.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Set line, page, confidence and raw text of existing rows (matched by container number) in JDBC
+     * batches, leaving their validation and match state alone; must be called inside a transaction
+     */
+    public void updatePositions(UUID projectId, List<MasterData> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        new JdbcTemplate(dataSource).batchUpdate(UPDATE_POSITION_SQL, rows, UPDATE_BATCH_SIZE, (statement, row) -> {
+            statement.setObject(1, row.getLineNumber());
+            statement.setObject(2, row.getPageNumber());
+            statement.setObject(3, row.getConfidenceScore());
+            statement.setString(4, row.getRawText());
+            statement.setObject(5, now);
+            statement.setObject(6, projectId);
+            statement.setString(7, row.getContainerNumber());
+        });
+    }
+
+    /**
+     * One CSV record in COPY_SQL column order. Unquoted empty fields are NULL; text is always quoted.
+     */
+    static String toCsvLine(MasterData row) {
+        StringBuilder line = new StringBuilder(128);
+        line.append(row.getId()).append(',')
+            .append(row.getProject().getId()).append(',');
+        appendText(line, row.getContainerNumber());
+        line.append(',');
+        appendValue(line, row.getLineNumber());
+        line.append(',');
+        appendValue(line, row.getPageNumber());
+        line.append(',');
+        appendValue(line, row.getConfidenceScore());
+        line.append(',');
+        appendText(line, row.getRawText());
+        line.append(',').append(row.isValidated()).append(',');
+        appendText(line, row.getValidationNotes());
+        line.append(',').append(row.isMatched())
+            .append(',').append(row.getMatchCount())
+            .append(',').append(row.getCreatedAt())
+            .append(',').append(row.getUpdatedAt())
+            .append('\n');
+        return line.toString();
+    }
+
+    private static void appendValue(StringBuilder line, Object value) {
+        if (value != null) {
+            line.append(value);
+        }
+    }
+
+    private static void appendText(StringBuilder line, String value) {
+        if (value != null) {
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                postgres = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT).contains("postgresql");
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+        return postgres;
+    }
+}
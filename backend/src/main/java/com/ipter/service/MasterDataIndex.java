@@ -0,0 +1,75 @@
+package com.ipter.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.ipter.util.ImageProcessingUtil;
+
+/**
+ * Immutable snapshot of a project's master container numbers: the list in document order
+ * (as shown to users) plus a hash set of normalized numbers, so a lookup is one normalization
+ * and one hash probe however long the master list is ("abcu 123456-7" matches "ABCU1234567").
+ * The version identifies the master data the snapshot was built from.
+ */
+public class MasterDataIndex {
+
+    private final List<String> containerNumbers;
+    private final Set<String> normalized;
+    private final long version;
+
+    public MasterDataIndex(Collection<String> containerNumbers, long version) {
+        this.containerNumbers = List.copyOf(containerNumbers);
+        this.normalized = new HashSet<>(this.containerNumbers.size() * 2);
+        for (String containerNumber : this.containerNumbers) {
+            normalized.add(ImageProcessingUtil.normalizeContainerNumber(containerNumber));
+        }
+        this.version = version;
+    }
+
+    public List<String> getContainerNumbers() {
+        return containerNumbers;
+    }
+
+    /**
+     * Whether the container number is in the master data, ignoring case and separators
+     */
+    public boolean contains(String containerNumber) {
+        return containerNumber != null && normalized.contains(ImageProcessingUtil.normalizeContainerNumber(containerNumber));
+    }
+
+    /**
+     * Up to count non-blank numbers chosen uniformly at random (reservoir sampling), in one
+     * pass over the list without copying or shuffling it
+     */
+    public List<String> sample(int count, Random random) {
+        List<String> reservoir = new ArrayList<>(Math.min(count, containerNumbers.size()));
+        int seen = 0;
+        for (String containerNumber : containerNumbers) {
+            if (containerNumber == null || containerNumber.isBlank()) {
+                continue;
+            }
+            seen++;
+            if (reservoir.size() < count) {
+                reservoir.add(containerNumber);
+            } else {
+                int slot = random.nextInt(seen);
+                if (slot < count) {
+                    reservoir.set(slot, containerNumber);
+                }
+            }
+        }
+        return reservoir;
+    }
+
+    public int size() {
+        return containerNumbers.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
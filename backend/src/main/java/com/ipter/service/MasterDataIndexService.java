@@ -0,0 +1,100 @@
+package com.ipter.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ipter.event.MasterDataChangedEvent;
+import com.ipter.repository.MasterDataRepository;
+
+/**
+ * Per-project cache of master-data indexes for the data views.
+ *
+ * Master data only changes when a project's PDF is (re)processed, while the views are read far
+ * more often, so each project's container numbers are loaded once (numbers only, not the entities)
+ * and kept in an LRU map of at most max-projects entries until a MasterDataChangedEvent drops them.
+ *
+ * Every invalidation bumps the project's version. A load that raced with an invalidation carries
+ * the old version and is returned to its caller but not cached, so stale numbers never stick.
+ */
+@Service
+public class MasterDataIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MasterDataIndexService.class);
+
+    private final MasterDataRepository masterDataRepository;
+    private final int maxProjects;
+
+    // Both guarded by indexes
+    private final Map<UUID, MasterDataIndex> indexes;
+    private final Map<UUID, Long> versions = new HashMap<>();
+
+    public MasterDataIndexService(MasterDataRepository masterDataRepository,
+                                  @Value("${dataview.master-index.max-projects:50}") int maxProjects) {
+        this.masterDataRepository = masterDataRepository;
+        this.maxProjects = Math.max(1, maxProjects);
+        this.indexes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, MasterDataIndex> eldest) {
+                return size() > MasterDataIndexService.this.maxProjects;
+            }
+        };
+    }
+
+    /**
+     * Index of the project's master data, loaded on first use
+     */
+    public MasterDataIndex getIndex(UUID projectId) {
+        long version;
+        synchronized (indexes) {
+            MasterDataIndex index = indexes.get(projectId);
+            if (index != null) {
+                return index;
+            }
+            version = versions.getOrDefault(projectId, 0L);
+        }
+
+        // Load outside the lock so one slow project does not block the others
+        MasterDataIndex index = new MasterDataIndex(masterDataRepository.findContainerNumbersByProjectId(projectId), version);
+        synchronized (indexes) {
+            if (versions.getOrDefault(projectId, 0L) == version) {
+                indexes.put(projectId, index);
+            }
+        }
+        logger.debug("Loaded master-data index for project {} ({} container numbers, version {})",
+                     projectId, index.size(), version);
+        return index;
+    }
+
+    /**
+     * Current master-data version of the project; changes whenever its master data is replaced
+     */
+    public long getVersion(UUID projectId) {
+        synchronized (indexes) {
+            return versions.getOrDefault(projectId, 0L);
+        }
+    }
+
+    public void invalidate(UUID projectId) {
+        synchronized (indexes) {
+            versions.merge(projectId, 1L, Long::sum);
+            indexes.remove(projectId);
+        }
+    }
+
+    /**
+     * Drop the index once the new master data is committed, so the next read sees it
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMasterDataChanged(MasterDataChangedEvent event) {
+        invalidate(event.getProjectId());
+        logger.debug("Invalidated master-data index for project {}", event.getProjectId());
+    }
+}
@@ -0,0 +1,355 @@
+package com.ipter.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.ipter.dto.OCRResultDTO;
+import com.ipter.util.ImageProcessingUtil;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Page-aware master data extraction from a PDF.
+ *
+ * Each page is classified by its text layer. When the example is an ISO 6346 container number,
+ * pages exported digitally carry their text, so the numbers are read from it directly in
+ * milliseconds: only ISO 6346 numbers with a valid check digit are accepted, which keeps dates,
+ * postcodes and order numbers out. Any other numbering cannot be validated locally, so without an
+ * ISO example every page goes to Gemini. Scanned pages (little or no text) and text pages where too
+ * few number-like tokens were recognised (min-text-yield) are cut into chunks of pages-per-chunk
+ * pages and only those chunks are sent to Gemini, at most concurrency at a time.
+ * Small chunks keep every response well under the output-token limit, so nothing is lost to
+ * truncation. Items come back in page order with their page number (the chunk's first page for
+ * multi-page chunks).
+ */
+@Service
+public class PdfMasterDataExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfMasterDataExtractor.class);
+
+    /**
+     * Tokens with a run of 6+ digits; on a text page these should nearly all be numbers we recognise
+     */
+    private static final Pattern NUMBER_LIKE_TOKEN = Pattern.compile("(?<![A-Za-z0-9])[A-Za-z0-9]*\\d{6,}[A-Za-z0-9]*");
+
+    private static final double TEXT_LAYER_CONFIDENCE = 99.0;
+    private static final int MAX_LINE_LENGTH = 500;
+
+    private final GeminiService geminiService;
+    private final int pagesPerChunk;
+    private final int concurrency;
+    private final int textLayerMinChars;
+    private final double minTextYield;
+    private final ThreadPoolExecutor executor;
+
+    public PdfMasterDataExtractor(GeminiService geminiService,
+                                  @Value("${pdf.extraction.pages-per-chunk:1}") int pagesPerChunk,
+                                  @Value("${pdf.extraction.concurrency:4}") int concurrency,
+                                  @Value("${pdf.extraction.text-layer-min-chars:32}") int textLayerMinChars,
+                                  @Value("${pdf.extraction.min-text-yield:0.5}") double minTextYield) {
+        this.geminiService = geminiService;
+        this.pagesPerChunk = Math.max(1, pagesPerChunk);
+        this.concurrency = Math.max(1, concurrency);
+        this.textLayerMinChars = textLayerMinChars;
+        this.minTextYield = minTextYield;
+        this.executor = new ThreadPoolExecutor(
+            this.concurrency, this.concurrency, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("pdf-extract-"));
+    }
+
+    /**
+     * Extract all numbers from the PDF; duplicates are left for the caller to resolve
+     */
+    public Result extract(Path pdfFile, String exampleNumber) throws IOException {
+        return extract(pdfFile, exampleNumber, false);
+    }
+
+    /**
+     * Same as extract(Path, String); with refresh, Gemini is asked again instead of serving cached chunk results
+     */
+    public Result extract(Path pdfFile, String exampleNumber, boolean refresh) throws IOException {
+        String filename = pdfFile.getFileName().toString();
+        PDDocument document;
+        try {
+            document = PDDocument.load(pdfFile.toFile(), MemoryUsageSetting.setupTempFileOnly());
+        } catch (IOException e) {
+            // Encrypted or damaged files PDFBox cannot open may still be readable by Gemini
+            logger.warn("Could not open {} for page-wise extraction ({}); sending the whole file", filename, e.getMessage());
+            Result result = new Result();
+            collect(result, geminiService.extractContainerNumbersFromPdf(Files.readAllBytes(pdfFile), filename, exampleNumber, refresh),
+                    null, "PDF");
+            result.scannedPages = -1;
+            return result;
+        }
+
+        try {
+            return extract(document, filename, exampleNumber, refresh);
+        } finally {
+            document.close();
+        }
+    }
+
+    private Result extract(PDDocument document, String filename, String exampleNumber, boolean refresh)
+            throws IOException {
+        Result result = new Result();
+        List<CompletableFuture<Result>> chunks = new ArrayList<>();
+        Semaphore inFlight = new Semaphore(concurrency);
+        boolean readLocally = canReadTextLayer(exampleNumber);
+
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setSortByPosition(true);
+        int pageCount = document.getNumberOfPages();
+        int scannedFrom = 0;
+
+        try {
+            for (int page = 1; page <= pageCount + 1; page++) {
+                String text = null;
+                if (page <= pageCount) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    text = stripper.getText(document);
+                }
+                Result textResult = null;
+                boolean scanned = false;
+                if (text != null) {
+                    if (readLocally && hasTextLayer(text)) {
+                        textResult = extractFromText(text, page);
+                        scanned = textResult.isLowYield(minTextYield);
+                        result.lowYieldPages += scanned ? 1 : 0;
+                    } else {
+                        scanned = true;
+                    }
+                }
+
+                // Close the pending run of scanned pages at a text page, the chunk size or the end
+                if (scannedFrom > 0 && (!scanned || page - scannedFrom == pagesPerChunk)) {
+                    chunks.add(submitChunk(document, scannedFrom, page - 1, filename, exampleNumber, refresh, inFlight));
+                    result.scannedPages += page - scannedFrom;
+                    scannedFrom = 0;
+                }
+                if (text == null) {
+                    break;
+                }
+                if (scanned) {
+                    if (scannedFrom == 0) {
+                        scannedFrom = page;
+                    }
+                } else {
+                    chunks.add(CompletableFuture.completedFuture(textResult));
+                    result.textPages++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + filename, e);
+        } finally {
+            // Merge in page order, whatever completed first
+            for (CompletableFuture<Result> chunk : chunks) {
+                Result part = chunk.join();
+                result.items.addAll(part.items);
+                result.errors.addAll(part.errors);
+            }
+        }
+
+        logger.info("Extracted {} numbers from {}: {} text-layer pages, {} pages ({} with low text yield) in {} Gemini calls",
+                    result.items.size(), filename, result.textPages, result.scannedPages, result.lowYieldPages,
+                    chunks.size() - result.textPages);
+        return result;
+    }
+
+    /**
+     * Cut the pages out on this thread (PDDocument is not thread-safe) and send them from the pool
+     */
+    private CompletableFuture<Result> submitChunk(PDDocument document, int fromPage, int toPage, String filename,
+                                                  String exampleNumber, boolean refresh, Semaphore inFlight)
+            throws IOException, InterruptedException {
+        String label = fromPage == toPage ? "Page " + fromPage : "Pages " + fromPage + "-" + toPage;
+        byte[] chunk = copyPages(document, fromPage, toPage);
+
+        // Holding a permit per chunk also bounds how many chunk copies are in memory at once
+        inFlight.acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                    Result part = new Result();
+                    collect(part, geminiService.extractContainerNumbersFromPdf(
+                                chunk, filename + " (" + label + ")", exampleNumber, refresh),
+                            fromPage, label);
+                    return part;
+                }, executor)
+                .exceptionally(e -> {
+                    Result failed = new Result();
+                    failed.errors.add(label + ": " + e.getMessage());
+                    return failed;
+                })
+                .whenComplete((part, e) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private byte[] copyPages(PDDocument document, int fromPage, int toPage) throws IOException {
+        Splitter splitter = new Splitter();
+        splitter.setStartPage(fromPage);
+        splitter.setEndPage(toPage);
+        splitter.setSplitAtPage(toPage - fromPage + 1);
+        List<PDDocument> parts = splitter.split(document);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            parts.get(0).save(out);
+            return out.toByteArray();
+        } finally {
+            for (PDDocument part : parts) {
+                part.close();
+            }
+        }
+    }
+
+    private boolean hasTextLayer(String text) {
+        int chars = 0;
+        for (int i = 0; i < text.length() && chars < textLayerMinChars; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                chars++;
+            }
+        }
+        return chars >= textLayerMinChars;
+    }
+
+    /**
+     * Text layers are only trusted when every number can be validated locally, i.e. the example is
+     * an ISO 6346 number; anything else needs Gemini's reading of the context
+     */
+    static boolean canReadTextLayer(String exampleNumber) {
+        return exampleNumber != null && !exampleNumber.isBlank()
+            && ImageProcessingUtil.isValidContainerNumberStrict(ImageProcessingUtil.normalizeContainerNumber(exampleNumber));
+    }
+
+    /**
+     * ISO 6346 numbers with a valid check digit on one text page, in reading order. Number-like tokens
+     * that are not such numbers are counted so a page with a garbled text layer can go to Gemini instead.
+     */
+    static Result extractFromText(String text, int pageNumber) {
+        Result result = new Result();
+        for (String line : text.split("\\R")) {
+            StringBuilder rest = new StringBuilder(line);
+            TreeMap<Integer, String> found = new TreeMap<>();
+            Matcher matcher = ImageProcessingUtil.containerNumberTextPattern().matcher(line);
+            while (matcher.find()) {
+                String normalized = ImageProcessingUtil.normalizeContainerNumber(matcher.group());
+                if (ImageProcessingUtil.hasValidCheckDigit(normalized)) {
+                    found.put(matcher.start(), normalized);
+                    blank(rest, matcher.start(), matcher.end());
+                }
+            }
+            Matcher unmatched = NUMBER_LIKE_TOKEN.matcher(rest);
+            while (unmatched.find()) {
+                result.unmatchedTokens++;
+            }
+
+            if (!found.isEmpty()) {
+                String rawLine = line.strip();
+                if (rawLine.length() > MAX_LINE_LENGTH) {
+                    rawLine = rawLine.substring(0, MAX_LINE_LENGTH);
+                }
+                for (String number : found.values()) {
+                    result.items.add(new Item(number, TEXT_LAYER_CONFIDENCE, pageNumber, rawLine));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void blank(StringBuilder line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            line.setCharAt(i, ' ');
+        }
+    }
+
+    private static void collect(Result result, OCRResultDTO ocr, Integer pageNumber, String label) {
+        if (Boolean.TRUE.equals(ocr.getSuccess()) && ocr.getContainerNumbers() != null) {
+            for (OCRResultDTO.ContainerNumberDTO c : ocr.getContainerNumbers()) {
+                result.items.add(new Item(c.getNumber(), c.getConfidence(), pageNumber, ocr.getExtractedText()));
+            }
+        } else if (ocr.getErrorMessage() != null) {
+            result.errors.add(label + ": " + ocr.getErrorMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Items in page order plus per-chunk errors; other chunks still contribute when one fails
+     */
+    public static class Result {
+        private final List<Item> items = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private int textPages;
+        private int scannedPages;
+        private int lowYieldPages;
+        private int unmatchedTokens;
+
+        public List<Item> getItems() { return items; }
+        public List<String> getErrors() { return errors; }
+        public int getTextPages() { return textPages; }
+
+        /**
+         * Pages sent to Gemini, or -1 if the file could not be split and was sent whole
+         */
+        public int getScannedPages() { return scannedPages; }
+
+        /**
+         * Pages that had a text layer but were sent to Gemini because too few of their numbers were recognised
+         */
+        public int getLowYieldPages() { return lowYieldPages; }
+
+        boolean isLowYield(double minYield) {
+            int recognised = items.size();
+            return unmatchedTokens > 0 && recognised < minYield * (recognised + unmatchedTokens);
+        }
+    }
+
+    public static class Item {
+        private final String number;
+        private final Double confidence;
+        private final Integer pageNumber;
+        private final String rawText;
+
+        public Item(String number, Double confidence, Integer pageNumber, String rawText) {
+            this.number = number;
+            this.confidence = confidence;
+            this.pageNumber = pageNumber;
+            this.rawText = rawText;
+        }
+
+        public String getNumber() { return number; }
+        public Double getConfidence() { return confidence; }
+        public Integer getPageNumber() { return pageNumber; }
+        public String getRawText() { return rawText; }
+    }
+}
@@ -0,0 +1,152 @@
+package com.ipter.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ipter.event.ProjectUpdatedEvent;
+import com.ipter.model.Project;
+import com.ipter.repository.ProjectRepository;
+
+/**
+ * Per-project cache of the example-number block used in extraction prompts.
+ *
+ * The block is the project's configured example container number, otherwise a few master numbers
+ * reservoir-sampled from the cached master-data index, so an upload neither loads nor shuffles the
+ * master list. Keeping the block stable per project also keeps the assembled prompt text (memoized
+ * in GeminiService) and the extraction cache keys stable between uploads.
+ *
+ * An entry remembers the master-data version it was sampled from and is recomputed once that moves
+ * on (reprocessed PDF); a ProjectUpdatedEvent drops it. Invalidation bumps the project's version,
+ * and a computation that raced with it is returned to its caller but not cached.
+ */
+@Service
+public class ProjectPromptCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectPromptCache.class);
+
+    static final int EXAMPLE_COUNT = 3;
+
+    private final ProjectRepository projectRepository;
+    private final MasterDataIndexService masterDataIndexService;
+    private final int maxProjects;
+
+    // Both guarded by entries
+    private final Map<UUID, Entry> entries;
+    private final Map<UUID, Long> versions = new HashMap<>();
+
+    public ProjectPromptCache(ProjectRepository projectRepository, MasterDataIndexService masterDataIndexService,
+                              @Value("${gemini.prompt-cache.max-projects:200}") int maxProjects) {
+        this.projectRepository = projectRepository;
+        this.masterDataIndexService = masterDataIndexService;
+        this.maxProjects = Math.max(1, maxProjects);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                return size() > ProjectPromptCache.this.maxProjects;
+            }
+        };
+    }
+
+    /**
+     * Example number for the project's prompts, or null if it has neither an example nor master data
+     */
+    public String getExampleNumber(UUID projectId) {
+        String cached = cached(projectId);
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new RuntimeException("Project not found: " + projectId));
+        return load(project);
+    }
+
+    /**
+     * Same as getExampleNumber(UUID) for an already loaded project
+     */
+    public String getExampleNumber(Project project) {
+        String cached = cached(project.getId());
+        if (cached != null) {
+            return cached.isEmpty() ? null : cached;
+        }
+        return load(project);
+    }
+
+    /**
+     * Up to count master numbers of the project, sampled without loading the master list
+     */
+    public List<String> sampleMasterNumbers(UUID projectId, int count) {
+        return masterDataIndexService.getIndex(projectId).sample(count, ThreadLocalRandom.current());
+    }
+
+    public void invalidate(UUID projectId) {
+        synchronized (entries) {
+            versions.merge(projectId, 1L, Long::sum);
+            entries.remove(projectId);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProjectUpdated(ProjectUpdatedEvent event) {
+        invalidate(event.getProjectId());
+        logger.debug("Invalidated prompt examples for project {}", event.getProjectId());
+    }
+
+    /**
+     * Cached block ("" when the project has no examples), or null if absent or stale
+     */
+    private String cached(UUID projectId) {
+        long masterVersion = masterDataIndexService.getVersion(projectId);
+        synchronized (entries) {
+            Entry entry = entries.get(projectId);
+            return entry != null && entry.masterVersion == masterVersion ? entry.exampleNumber : null;
+        }
+    }
+
+    private String load(Project project) {
+        UUID projectId = project.getId();
+        long version;
+        synchronized (entries) {
+            version = versions.getOrDefault(projectId, 0L);
+        }
+        long masterVersion = masterDataIndexService.getVersion(projectId);
+
+        String exampleNumber = project.getExampleContainerNumber();
+        if (exampleNumber == null || exampleNumber.trim().isEmpty()) {
+            List<String> examples = sampleMasterNumbers(projectId, EXAMPLE_COUNT);
+            exampleNumber = String.join(", ", examples);
+            if (examples.isEmpty()) {
+                logger.warn("No master data found for project: {}", projectId);
+            }
+        } else {
+            exampleNumber = exampleNumber.trim();
+        }
+
+        synchronized (entries) {
+            if (versions.getOrDefault(projectId, 0L) == version) {
+                entries.put(projectId, new Entry(exampleNumber, masterVersion));
+            }
+        }
+        logger.debug("Computed prompt examples for project {}: {}", projectId, exampleNumber);
+        return exampleNumber.isEmpty() ? null : exampleNumber;
+    }
+
+    private static final class Entry {
+        private final String exampleNumber;
+        private final long masterVersion;
+
+        private Entry(String exampleNumber, long masterVersion) {
+            this.exampleNumber = exampleNumber;
+            this.masterVersion = masterVersion;
+        }
+    }
+}
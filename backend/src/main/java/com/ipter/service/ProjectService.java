@@ -6,14 +6,19 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -27,10 +32,14 @@ import com.ipter.dto.CreateProjectRequest;
 import com.ipter.dto.ProcessPdfRequest;
 import com.ipter.dto.ProcessPdfResponse;
 import com.ipter.dto.ProjectResponse;
+import com.ipter.event.ImagesDeletedEvent;
+import com.ipter.event.MasterDataChangedEvent;
+import com.ipter.event.ProjectUpdatedEvent;
 import com.ipter.model.MasterData;
 import com.ipter.model.Project;
 import com.ipter.model.ProjectStatus;
 import com.ipter.model.User;
+import com.ipter.repository.ImageRepository;
 import com.ipter.repository.MasterDataRepository;
 import com.ipter.repository.ProjectRepository;
 import com.ipter.repository.UserRepository;
@@ -44,19 +53,30 @@ public class ProjectService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProjectService.class);
 
+    private static final int DELETE_BATCH_SIZE = 1000;
+
     @Autowired
     private ProjectRepository projectRepository;
 
     @Autowired
     private MasterDataRepository masterDataRepository;
 
+    @Autowired
+    private MasterDataBulkWriter masterDataBulkWriter;
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ImageRepository imageRepository;
+
 
 
     @Autowired
-    private GeminiService geminiService;
+    private PdfMasterDataExtractor pdfMasterDataExtractor;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     /**
      * Create a new project
@@ -146,6 +166,11 @@ public class ProjectService {
 
         Project savedProject = projectRepository.save(project);
 
+        // Deleted projects keep their rows (soft delete) but not their derived thumbnails
+        if (status == ProjectStatus.DELETED && oldStatus != ProjectStatus.DELETED) {
+            eventPublisher.publishEvent(new ImagesDeletedEvent(imageRepository.findIdsByProjectId(projectId)));
+        }
+
         // Audit logging will be handled by frontend
 
         logger.info("Project status updated: {} from {} to {} by user: {}",
@@ -192,6 +217,7 @@ public class ProjectService {
 
         // Save the updated project
         Project savedProject = projectRepository.save(project);
+        eventPublisher.publishEvent(new ProjectUpdatedEvent(savedProject.getId()));
 
         // Audit logging will be handled by frontend
 
@@ -238,6 +264,7 @@ public class ProjectService {
         project.setPdfFilePath(filePath.toString());
         project.setUpdatedAt(LocalDateTime.now());
         projectRepository.save(project);
+        eventPublisher.publishEvent(new MasterDataChangedEvent(project.getId()));
 
         // Audit logging will be handled by frontend
 
@@ -282,12 +309,6 @@ public class ProjectService {
             throw new Exception("PDF file not found at path: " + pdfPath);
         }
 
-        // Clear existing master data if reprocessing
-        if (request.isForceReprocess()) {
-            masterDataRepository.deleteByProject(project);
-            project.getMasterData().clear();
-        }
-
         List<MasterData> masterDataList = new ArrayList<>();
         List<String> extractedNumbers = new ArrayList<>();
         List<String> errors = new ArrayList<>();
@@ -298,46 +319,76 @@ public class ProjectService {
             effectiveExampleNumber = project.getExampleContainerNumber();
         }
 
-        // Read entire PDF and send directly to Gemini with example number
-        byte[] pdfBytes = Files.readAllBytes(pdfFilePath);
-        com.ipter.dto.OCRResultDTO ocr = geminiService.extractContainerNumbersFromPdf(pdfBytes, pdfFilePath.getFileName().toString(), effectiveExampleNumber);
+        // Text-layer pages are read locally; scanned pages go to Gemini in small parallel chunks
+        // (a forced reprocess asks Gemini again rather than reusing cached chunk results)
+        PdfMasterDataExtractor.Result extraction = pdfMasterDataExtractor.extract(pdfFilePath, effectiveExampleNumber,
+                request.isForceReprocess());
+
+        // Stored numbers by normalized form, so a reprocess only writes the difference
+        Map<String, String> existing = new HashMap<>();
+        for (String stored : masterDataRepository.findContainerNumbersByProjectId(project.getId())) {
+            existing.put(com.ipter.util.ImageProcessingUtil.normalizeContainerNumber(stored), stored);
+        }
 
         int lineCounter = 0;
-        if (Boolean.TRUE.equals(ocr.getSuccess()) && ocr.getContainerNumbers() != null) {
-            for (com.ipter.dto.OCRResultDTO.ContainerNumberDTO c : ocr.getContainerNumbers()) {
-                String normalized = com.ipter.util.ImageProcessingUtil.normalizeContainerNumber(c.getNumber());
-                if (normalized == null || normalized.isBlank()) continue;
-                boolean seen = extractedNumbers.stream().anyMatch(n -> n.equalsIgnoreCase(normalized));
-                if (!seen) {
-                    extractedNumbers.add(normalized);
-
-                    MasterData md = new MasterData(project, normalized);
-                    md.setConfidenceScore(c.getConfidence());
-                    md.setLineNumber(++lineCounter);
-                    md.setPageNumber(null);
-                    // Truncate raw text to fit database column (10000 chars max)
-                    String rawText = ocr.getExtractedText();
-                    if (rawText != null && rawText.length() > 9900) {
-                        rawText = rawText.substring(0, 9900) + "... [truncated]";
-                    }
-                    md.setRawText(rawText);
-                    masterDataList.add(md);
+        Set<String> seen = new HashSet<>();
+        // Kept rows get the position of this run too, so line numbers follow the current document
+        List<MasterData> keptPositions = new ArrayList<>();
+        for (PdfMasterDataExtractor.Item item : extraction.getItems()) {
+            String normalized = com.ipter.util.ImageProcessingUtil.normalizeContainerNumber(item.getNumber());
+            if (normalized == null || normalized.isBlank() || !seen.add(normalized)) continue;
+            extractedNumbers.add(normalized);
+            lineCounter++;
+
+            String stored = existing.get(normalized);
+            MasterData md = new MasterData(project, stored != null ? stored : normalized);
+            md.setConfidenceScore(item.getConfidence());
+            md.setLineNumber(lineCounter);
+            md.setPageNumber(item.getPageNumber());
+            // Truncate raw text to fit database column (10000 chars max)
+            String rawText = item.getRawText();
+            if (rawText != null && rawText.length() > 9900) {
+                rawText = rawText.substring(0, 9900) + "... [truncated]";
+            }
+            md.setRawText(rawText);
+            if (stored != null) {
+                keptPositions.add(md);
+            } else {
+                masterDataList.add(md);
+            }
+        }
+        errors.addAll(extraction.getErrors());
+
+        // Numbers no longer in the document; kept when part of it could not be read, as they may be on those pages
+        List<String> removed = new ArrayList<>();
+        if (errors.isEmpty()) {
+            for (Map.Entry<String, String> entry : existing.entrySet()) {
+                if (!seen.contains(entry.getKey())) {
+                    removed.add(entry.getValue());
                 }
             }
-        } else if (ocr.getErrorMessage() != null) {
-            errors.add(ocr.getErrorMessage());
+        } else if (!existing.isEmpty()) {
+            errors.add("Some pages could not be read; existing master data was kept and only new numbers were added");
         }
 
-        // Persist master data
-        if (!masterDataList.isEmpty()) {
-            masterDataRepository.saveAll(masterDataList);
+        // Apply only the delta: kept rows retain their validation and match state
+        for (int from = 0; from < removed.size(); from += DELETE_BATCH_SIZE) {
+            masterDataRepository.deleteByProjectIdAndContainerNumberIn(
+                    project.getId(), removed.subList(from, Math.min(removed.size(), from + DELETE_BATCH_SIZE)));
         }
+        masterDataBulkWriter.updatePositions(project.getId(), keptPositions);
+        // Persist master data (JDBC batches, or COPY for very large lists on PostgreSQL)
+        masterDataBulkWriter.insertAll(masterDataList);
 
         // Update project state
+        int masterDataCount = existing.size() - removed.size() + masterDataList.size();
         project.setMasterDataProcessed(true);
-        project.setMasterDataCount(masterDataList.size());
+        project.setMasterDataCount(masterDataCount);
         project.setUpdatedAt(LocalDateTime.now());
         projectRepository.save(project);
+        if (!masterDataList.isEmpty() || !removed.isEmpty()) {
+            eventPublisher.publishEvent(new MasterDataChangedEvent(project.getId()));
+        }
 
         // Audit logging will be handled by frontend
 
@@ -346,13 +397,16 @@ public class ProjectService {
         ProcessPdfResponse response = new ProcessPdfResponse(
                 project.getId(), project.getName(), true,
                 errors.isEmpty() ? "Master data extracted successfully" : "Processed with warnings");
-        response.setExtractedCount(masterDataList.size());
+        response.setExtractedCount(extractedNumbers.size());
         response.setExtractedContainerNumbers(extractedNumbers);
+        response.setAddedCount(masterDataList.size());
+        response.setRemovedCount(removed.size());
+        response.setUnchangedCount(masterDataCount - masterDataList.size());
         response.setErrors(errors.isEmpty() ? null : errors);
         response.setProcessingTimeMs(processingTime);
 
-        logger.info("PDF processed for project: {} - extracted {} container numbers in {}ms", project.getName(),
-                masterDataList.size(), processingTime);
+        logger.info("PDF processed for project: {} - extracted {} container numbers ({} added, {} removed) in {}ms",
+                project.getName(), extractedNumbers.size(), masterDataList.size(), removed.size(), processingTime);
 
         return response;
     }
@@ -0,0 +1,156 @@
+package com.ipter.service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ipter.dto.ImageStatusCountRow;
+import com.ipter.event.MasterDataChangedEvent;
+import com.ipter.repository.ExtractedDataRepository;
+import com.ipter.repository.ImageRepository;
+import com.ipter.util.ImageProcessingUtil;
+
+/**
+ * Per-project image statistics for the dashboard.
+ *
+ * Counts come from one GROUP BY over the project's images (status x verification) and one
+ * DISTINCT over its extracted numbers, checked against the cached master-data index. The result
+ * is cached for ttl-ms, so a dashboard polling every second costs at most one aggregate per
+ * project per TTL however many clients poll; reprocessing a project's PDF evicts it at once.
+ */
+@Service
+public class ProjectStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectStatsService.class);
+
+    private final ImageRepository imageRepository;
+    private final ExtractedDataRepository extractedDataRepository;
+    private final MasterDataIndexService masterDataIndexService;
+    private final long ttlNanos;
+    private final int maxProjects;
+    private final Map<UUID, CachedStats> cache;
+
+    public ProjectStatsService(ImageRepository imageRepository,
+                               ExtractedDataRepository extractedDataRepository,
+                               MasterDataIndexService masterDataIndexService,
+                               @Value("${project.stats.cache-ttl-ms:5000}") long ttlMs,
+                               @Value("${project.stats.cache-max-projects:200}") int maxProjects) {
+        this.imageRepository = imageRepository;
+        this.extractedDataRepository = extractedDataRepository;
+        this.masterDataIndexService = masterDataIndexService;
+        this.ttlNanos = Math.max(0, ttlMs) * 1_000_000L;
+        this.maxProjects = Math.max(1, maxProjects);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedStats> eldest) {
+                return size() > ProjectStatsService.this.maxProjects;
+            }
+        };
+    }
+
+    /**
+     * Statistics of the project's images, at most ttl-ms old
+     */
+    public Map<String, Object> getProjectStats(UUID projectId) {
+        long now = System.nanoTime();
+        synchronized (cache) {
+            CachedStats cached = cache.get(projectId);
+            if (cached != null && now - cached.computedAtNanos < ttlNanos) {
+                return cached.stats;
+            }
+        }
+
+        Map<String, Object> stats = computeStats(projectId);
+        synchronized (cache) {
+            cache.put(projectId, new CachedStats(stats, now));
+        }
+        return stats;
+    }
+
+    public void evict(UUID projectId) {
+        synchronized (cache) {
+            cache.remove(projectId);
+        }
+    }
+
+    /**
+     * Match counts depend on the master data, so they must not outlive a reprocess
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMasterDataChanged(MasterDataChangedEvent event) {
+        evict(event.getProjectId());
+    }
+
+    private Map<String, Object> computeStats(UUID projectId) {
+        long totalImages = 0;
+        long completedImages = 0;
+        long failedImages = 0;
+        long pendingImages = 0;
+        long verifiedImages = 0;
+        long totalContainerNumbers = 0;
+        for (ImageStatusCountRow row : imageRepository.countByProjectIdGroupByStatus(projectId)) {
+            totalImages += row.getImageCount();
+            if (row.isVerified()) {
+                verifiedImages += row.getImageCount();
+            }
+            switch (row.getProcessingStatus()) {
+                case COMPLETED -> {
+                    completedImages += row.getImageCount();
+                    // Only completed images report how many numbers they found
+                    totalContainerNumbers += row.getContainerNumbersFound();
+                }
+                case FAILED -> failedImages += row.getImageCount();
+                case PENDING, PROCESSING -> pendingImages += row.getImageCount();
+                default -> { }
+            }
+        }
+
+        MasterDataIndex masterIndex = masterDataIndexService.getIndex(projectId);
+        List<String> extractedNumbers = extractedDataRepository.findDistinctContainerNumbersByProjectId(projectId);
+        Set<String> distinctExtracted = new HashSet<>(extractedNumbers.size() * 2);
+        int matchedContainerNumbers = 0;
+        for (String containerNumber : extractedNumbers) {
+            String normalized = ImageProcessingUtil.normalizeContainerNumber(containerNumber);
+            if (!normalized.isEmpty() && distinctExtracted.add(normalized) && masterIndex.contains(normalized)) {
+                matchedContainerNumbers++;
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalImages", totalImages);
+        stats.put("completedImages", completedImages);
+        stats.put("failedImages", failedImages);
+        stats.put("pendingImages", pendingImages);
+        stats.put("verifiedImages", verifiedImages);
+        stats.put("unverifiedImages", totalImages - verifiedImages);
+        stats.put("totalContainerNumbers", (int) totalContainerNumbers);
+        stats.put("successRate", totalImages > 0 ? (double) completedImages / totalImages * 100 : 0);
+        stats.put("masterContainerNumbers", masterIndex.size());
+        stats.put("matchedContainerNumbers", matchedContainerNumbers);
+        stats.put("unmatchedContainerNumbers", distinctExtracted.size() - matchedContainerNumbers);
+        stats.put("computedAt", LocalDateTime.now());
+        logger.debug("Computed stats for project {}: {} images, {} matched numbers", projectId, totalImages, matchedContainerNumbers);
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private static class CachedStats {
+        private final Map<String, Object> stats;
+        private final long computedAtNanos;
+
+        CachedStats(Map<String, Object> stats, long computedAtNanos) {
+            this.stats = stats;
+            this.computedAtNanos = computedAtNanos;
+        }
+    }
+}
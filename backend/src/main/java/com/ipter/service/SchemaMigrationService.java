@@ -0,0 +1,196 @@
+package com.ipter.service;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Versioned schema migrations.
+ *
+ * Migrations are numbered and applied once each, in order; applied versions are recorded in
+ * the schema_migrations table. Statements must be idempotent (IF NOT EXISTS) because with
+ * ddl-auto=create/update Hibernate may already have created the same objects from the entity
+ * annotations. Runs after Hibernate has built its schema and before the application takes traffic;
+ * afterwards every index the hot queries rely on is checked to exist.
+ */
+@Service
+public class SchemaMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrationService.class);
+
+    private static final String HISTORY_TABLE = "schema_migrations";
+
+    enum Database { POSTGRESQL, H2, OTHER }
+
+    /**
+     * All migrations, in version order. Never edit an applied one; add a new version instead.
+     */
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Indexes for hot lookup columns", database -> List.of(
+            "CREATE INDEX IF NOT EXISTS idx_images_project_uploaded ON images (project_id, uploaded_at)",
+            "CREATE INDEX IF NOT EXISTS idx_images_project_verified ON images (project_id, is_verified)",
+            "CREATE INDEX IF NOT EXISTS idx_images_status_queued ON images (processing_status, queued_at)",
+            "CREATE INDEX IF NOT EXISTS idx_extracted_data_image ON extracted_data (image_id)",
+            "CREATE INDEX IF NOT EXISTS idx_extracted_data_container ON extracted_data (container_number)",
+            "CREATE INDEX IF NOT EXISTS idx_master_data_project_container ON master_data (project_id, container_number)",
+            "CREATE INDEX IF NOT EXISTS idx_audit_logs_timestamp ON audit_logs (timestamp)",
+            "CREATE INDEX IF NOT EXISTS idx_audit_logs_review_status ON audit_logs (review_status, timestamp)")),
+        // LOWER(container_number) LIKE '%...%' can only use a trigram index; PostgreSQL only
+        new Migration(2, "Trigram index for container number substring search", database ->
+            database != Database.POSTGRESQL ? List.of() : List.of(
+                "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+                "CREATE INDEX IF NOT EXISTS idx_extracted_data_container_trgm ON extracted_data "
+                    + "USING gin (LOWER(container_number) gin_trgm_ops)"))
+    );
+
+    /**
+     * Indexes that must exist after migrating, as table -> index
+     */
+    private static final List<String[]> REQUIRED_INDEXES = List.of(
+        new String[] {"images", "idx_images_project_uploaded"},
+        new String[] {"images", "idx_images_project_verified"},
+        new String[] {"images", "idx_images_status_queued"},
+        new String[] {"extracted_data", "idx_extracted_data_image"},
+        new String[] {"extracted_data", "idx_extracted_data_container"},
+        new String[] {"master_data", "idx_master_data_project_container"},
+        new String[] {"audit_logs", "idx_audit_logs_timestamp"},
+        new String[] {"audit_logs", "idx_audit_logs_review_status"}
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final boolean enabled;
+
+    /**
+     * The EntityManagerFactory is only injected so Hibernate's schema exists before migrate() runs
+     */
+    public SchemaMigrationService(JdbcTemplate jdbcTemplate,
+                                  DataSource dataSource,
+                                  EntityManagerFactory entityManagerFactory,
+                                  @Value("${database.migrations.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!enabled) {
+            logger.info("Schema migrations disabled");
+            return;
+        }
+        try {
+            Database database = detectDatabase();
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + HISTORY_TABLE + " ("
+                + "version INTEGER PRIMARY KEY, description VARCHAR(200) NOT NULL, applied_at TIMESTAMP NOT NULL)");
+            Set<Integer> applied = new HashSet<>(
+                jdbcTemplate.queryForList("SELECT version FROM " + HISTORY_TABLE, Integer.class));
+
+            for (Migration migration : MIGRATIONS) {
+                if (applied.contains(migration.version)) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                for (String statement : migration.statements.apply(database)) {
+                    jdbcTemplate.execute(statement);
+                }
+                jdbcTemplate.update("INSERT INTO " + HISTORY_TABLE + " (version, description, applied_at) VALUES (?, ?, ?)",
+                                    migration.version, migration.description, Timestamp.valueOf(LocalDateTime.now()));
+                logger.info("Applied schema migration {} ({}) in {} ms",
+                            migration.version, migration.description, System.currentTimeMillis() - start);
+            }
+
+            List<String> missing = findMissingIndexes();
+            if (!missing.isEmpty()) {
+                logger.warn("Expected indexes missing after migration: {}", missing);
+            }
+        } catch (Exception e) {
+            // Don't fail the application startup for migration errors; the next start retries
+            logger.error("Schema migration failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Required indexes that do not exist in the database, as table.index
+     */
+    public List<String> findMissingIndexes() throws SQLException {
+        List<String[]> required = new ArrayList<>(REQUIRED_INDEXES);
+        if (detectDatabase() == Database.POSTGRESQL) {
+            required.add(new String[] {"extracted_data", "idx_extracted_data_container_trgm"});
+        }
+        List<String> missing = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String[] index : required) {
+                if (!indexNames(metaData, index[0]).contains(index[1])) {
+                    missing.add(index[0] + "." + index[1]);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Highest applied migration version, 0 if none
+     */
+    public int getCurrentVersion() {
+        Integer version = jdbcTemplate.queryForObject("SELECT MAX(version) FROM " + HISTORY_TABLE, Integer.class);
+        return version != null ? version : 0;
+    }
+
+    private Set<String> indexNames(DatabaseMetaData metaData, String table) throws SQLException {
+        String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        Set<String> names = new HashSet<>();
+        try (ResultSet indexes = metaData.getIndexInfo(null, null, name, false, true)) {
+            while (indexes.next()) {
+                String indexName = indexes.getString("INDEX_NAME");
+                if (indexName != null) {
+                    names.add(indexName.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return names;
+    }
+
+    private Database detectDatabase() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            String product = connection.getMetaData().getDatabaseProductName().toLowerCase(Locale.ROOT);
+            if (product.contains("postgresql")) {
+                return Database.POSTGRESQL;
+            }
+            return product.contains("h2") ? Database.H2 : Database.OTHER;
+        }
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Function<Database, List<String>> statements;
+
+        Migration(int version, String description, Function<Database, List<String>> statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.ipter.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ipter.event.ImagesDeletedEvent;
+import com.ipter.event.ImagesUploadedEvent;
+import com.ipter.model.Image;
+import com.ipter.repository.ImageRepository;
+import com.ipter.util.ImageProcessingUtil;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * JPEG thumbnails of uploaded images at a few fixed sizes.
+ *
+ * Thumbnails are written to {file.thumbnails.dir}/{imageId}/{size}.jpg in the background after
+ * upload (the original is decoded once, subsampled, and each size is scaled from the next larger
+ * one). If a thumbnail is requested before it exists, or its file was removed, it is generated on
+ * the spot. Image content never changes for an id, so thumbnails are immutable and cacheable.
+ * An image's thumbnail directory is removed when the image (or its project) is deleted.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+    /**
+     * Bump when the rendering changes so clients holding cached thumbnails fetch new ones
+     */
+    private static final String THUMBNAIL_VERSION = "v1";
+
+    public enum Size {
+        SMALL(160), MEDIUM(480), LARGE(1024);
+
+        private final int longEdge;
+
+        Size(int longEdge) {
+            this.longEdge = longEdge;
+        }
+
+        public int getLongEdge() {
+            return longEdge;
+        }
+
+        public static Size parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Unknown thumbnail size: " + value + " (use small, medium or large)");
+            }
+        }
+    }
+
+    private final ImageRepository imageRepository;
+    private final Path thumbnailsDir;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+
+    public ThumbnailService(ImageRepository imageRepository,
+                            @Value("${file.thumbnails.dir:./thumbnails}") String thumbnailsDir,
+                            @Value("${image.thumbnails.jpeg-quality:0.8}") float jpegQuality,
+                            @Value("${image.thumbnails.workers:2}") int workers,
+                            @Value("${image.thumbnails.queue-capacity:1000}") int queueCapacity) {
+        this.imageRepository = imageRepository;
+        this.thumbnailsDir = Paths.get(thumbnailsDir);
+        this.jpegQuality = jpegQuality;
+
+        int threads = Math.max(1, workers);
+        this.executor = new ThreadPoolExecutor(
+            threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+            new CustomizableThreadFactory("thumbnail-"),
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Generate thumbnails for new uploads off the request thread
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onImagesUploaded(ImagesUploadedEvent event) {
+        for (UUID imageId : event.getImageIds()) {
+            try {
+                executor.execute(() -> generateQuietly(imageId));
+            } catch (RejectedExecutionException e) {
+                // Not lost: the thumbnail is generated on first request instead
+                logger.debug("Thumbnail pool busy; image {} will get thumbnails lazily", imageId);
+            }
+        }
+    }
+
+    /**
+     * Remove thumbnails of deleted images; a failure only leaves orphaned files behind
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onImagesDeleted(ImagesDeletedEvent event) {
+        for (UUID imageId : event.getImageIds()) {
+            try {
+                deleteThumbnails(imageId);
+            } catch (IOException e) {
+                logger.warn("Could not delete thumbnails of image {}: {}", imageId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Delete every thumbnail of an image (no-op if none were generated)
+     */
+    public void deleteThumbnails(UUID imageId) throws IOException {
+        Path dir = thumbnailsDir.resolve(imageId.toString());
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+        logger.debug("Deleted thumbnails of image {}", imageId);
+    }
+
+    /**
+     * Path of the requested thumbnail, generating the thumbnails first if they are missing
+     */
+    public Path getThumbnail(UUID imageId, Size size) throws IOException {
+        Path file = thumbnailFile(imageId, size);
+        if (Files.exists(file)) {
+            return file;
+        }
+        Image image = imageRepository.findById(imageId)
+                .orElseThrow(() -> new ImageNotFoundException(imageId));
+        logger.info("Thumbnail {} of image {} missing; generating", size, imageId);
+        generate(image);
+        return file;
+    }
+
+    /**
+     * Strong ETag for a thumbnail: derived from the image content hash, so it is known without reading the file
+     */
+    public String getETag(UUID imageId, Size size) {
+        Image image = imageRepository.findById(imageId)
+                .orElseThrow(() -> new ImageNotFoundException(imageId));
+        String content = image.getContentSha256() != null ? image.getContentSha256().substring(0, 16) : imageId.toString();
+        return "\"" + content + "-" + size.name().toLowerCase(Locale.ROOT) + "-" + THUMBNAIL_VERSION + "\"";
+    }
+
+    private void generateQuietly(UUID imageId) {
+        try {
+            imageRepository.findById(imageId).ifPresent(image -> {
+                try {
+                    generate(image);
+                } catch (IOException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Thumbnail generation failed for image {}: {}", imageId, e.getMessage());
+        }
+    }
+
+    private void generate(Image image) throws IOException {
+        Size[] sizes = Size.values();
+        BufferedImage current = ImageProcessingUtil.readUpright(
+            new FileSystemResource(image.getFilePath()), image.getContentType(), sizes[sizes.length - 1].getLongEdge());
+        if (current == null) {
+            throw new IOException("Unsupported image format: " + image.getContentType());
+        }
+
+        Path dir = thumbnailsDir.resolve(image.getId().toString());
+        Files.createDirectories(dir);
+        // Largest first, each one scaled from the previous so the original is decoded only once
+        for (int i = sizes.length - 1; i >= 0; i--) {
+            current = ImageProcessingUtil.scaleToFit(current, sizes[i].getLongEdge());
+            writeAtomically(ImageProcessingUtil.writeJpeg(current, jpegQuality), thumbnailFile(image.getId(), sizes[i]));
+        }
+
+        if (!dir.toString().equals(image.getThumbnailPath())) {
+            imageRepository.updateThumbnailPath(image.getId(), dir.toString());
+        }
+        logger.debug("Generated thumbnails for image {}", image.getId());
+    }
+
+    /**
+     * Concurrent generation of the same image (background + lazy) is harmless: readers only ever see whole files
+     */
+    private void writeAtomically(byte[] bytes, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path thumbnailFile(UUID imageId, Size size) {
+        return thumbnailsDir.resolve(imageId.toString()).resolve(size.name().toLowerCase(Locale.ROOT) + ".jpg");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Thrown when thumbnails are requested for an image that does not exist
+     */
+    public static class ImageNotFoundException extends RuntimeException {
+        public ImageNotFoundException(UUID imageId) {
+            super("Image not found: " + imageId);
+        }
+    }
+}
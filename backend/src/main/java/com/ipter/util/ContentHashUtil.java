@@ -0,0 +1,59 @@
+package com.ipter.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * SHA-256 helpers for identifying uploaded content
+ */
+public class ContentHashUtil {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * New SHA-256 digest; callers hashing a stream as they copy it can feed it incrementally
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Finish a digest and return it as lowercase hex
+     */
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * SHA-256 of the given bytes as lowercase hex
+     */
+    public static String sha256Hex(byte[] bytes) {
+        MessageDigest digest = newSha256();
+        digest.update(bytes);
+        return toHex(digest);
+    }
+
+    /**
+     * SHA-256 of a stream's content as lowercase hex, read in fixed-size chunks
+     */
+    public static String sha256Hex(InputStreamSource source) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = source.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest);
+    }
+}
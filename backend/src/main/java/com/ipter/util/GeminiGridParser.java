@@ -0,0 +1,246 @@
+package com.ipter.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ipter.dto.ContainerExtractionResultDTO;
+
+/**
+ * Streaming parser for Gemini's image grid response:
+ * {"grid_structure": {...}, "row1": {"1": {"number": "...", "confidence": "87%"}, ...}, ...}.
+ *
+ * Tokens go straight into RowData without building an intermediate Map tree. Positions 1-8 are
+ * read from the key characters, and the legacy format ("1": "ABC123" with a row-level
+ * "confidence") is still accepted. If the response is cut off (output-token limit), every entry
+ * that was complete before the cut is kept and the result is marked partial.
+ */
+public final class GeminiGridParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int MAX_POSITION = 8;
+    private static final String DEFAULT_CONFIDENCE = "75%";
+
+    private GeminiGridParser() {
+    }
+
+    /**
+     * Parse the grid; throws only if nothing at all could be read
+     */
+    public static ContainerExtractionResultDTO parse(String json) throws IOException {
+        ContainerExtractionResultDTO result = new ContainerExtractionResultDTO();
+        Map<String, ContainerExtractionResultDTO.RowData> rows = new HashMap<>();
+        result.setRows(rows);
+
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            try {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String key = parser.currentName();
+                    readGridField(parser, key, parser.nextToken(), result);
+                }
+            } catch (JsonProcessingException e) {
+                // Truncated or malformed part way through: keep what was complete
+                if (rows.isEmpty() && result.getGridStructure() == null) {
+                    throw e;
+                }
+                result.setPartial(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse a multi-image response, {"images": [{"image": 1, "grid_structure": {...}, "row1": {...}}, ...]},
+     * into one grid per image tag. Unlike parse, a cut-off or malformed response throws rather than
+     * returning what was read, so the caller can fall back to one request per image.
+     */
+    public static Map<Integer, ContainerExtractionResultDTO> parseImages(String json) throws IOException {
+        Map<Integer, ContainerExtractionResultDTO> grids = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("images".equals(key) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readTaggedGrid(parser, grids);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Unexpected end of multi-image response");
+            }
+        }
+        return grids;
+    }
+
+    private static void readTaggedGrid(JsonParser parser, Map<Integer, ContainerExtractionResultDTO> grids)
+            throws IOException {
+        ContainerExtractionResultDTO grid = new ContainerExtractionResultDTO();
+        grid.setRows(new HashMap<>());
+        int tag = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("image".equals(key) && value == JsonToken.VALUE_NUMBER_INT) {
+                tag = parser.getIntValue();
+            } else {
+                readGridField(parser, key, value, grid);
+            }
+        }
+        if (tag > 0) {
+            grids.put(tag, grid);
+        }
+    }
+
+    /**
+     * One top-level field of a grid: grid_structure, a row, or anything else (skipped)
+     */
+    private static void readGridField(JsonParser parser, String key, JsonToken value,
+                                      ContainerExtractionResultDTO result) throws IOException {
+        if ("grid_structure".equals(key) && value == JsonToken.START_OBJECT) {
+            result.setGridStructure(readObject(parser));
+        } else if (key.startsWith("row") && value == JsonToken.START_OBJECT) {
+            readRow(parser, key, result.getRows());
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    private static void readRow(JsonParser parser, String rowKey,
+                                Map<String, ContainerExtractionResultDTO.RowData> rows) throws IOException {
+        ContainerExtractionResultDTO.RowData rowData = new ContainerExtractionResultDTO.RowData();
+        String[] legacyEntries = null;
+        String rowConfidence = null;
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int position = position(parser.currentName());
+                boolean rowLevelConfidence = "confidence".equals(parser.currentName());
+                JsonToken value = parser.nextToken();
+
+                if (position > 0 && value == JsonToken.START_OBJECT) {
+                    String number = null;
+                    String confidence = DEFAULT_CONFIDENCE;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.currentName();
+                        JsonToken fieldValue = parser.nextToken();
+                        if (fieldValue.isScalarValue() && fieldValue != JsonToken.VALUE_NULL) {
+                            if ("number".equals(field)) {
+                                number = parser.getText().trim();
+                            } else if ("confidence".equals(field)) {
+                                confidence = parser.getText();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    if (number != null && !number.isEmpty()) {
+                        rowData.setEntry(position, number, confidence);
+                    }
+                } else if (position > 0 && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                    String text = parser.getText().trim();
+                    if (!text.isEmpty() && !text.equals("null") && !text.equals("N/A")) {
+                        // The row-level confidence may come after the entries, so apply it at the end
+                        if (legacyEntries == null) {
+                            legacyEntries = new String[MAX_POSITION + 1];
+                        }
+                        legacyEntries[position] = text;
+                    }
+                } else if (rowLevelConfidence && value.isScalarValue()) {
+                    rowConfidence = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } finally {
+            // Runs for a cut-off row too, so its complete entries are not lost
+            if (legacyEntries != null) {
+                for (int position = 1; position <= MAX_POSITION; position++) {
+                    if (legacyEntries[position] != null) {
+                        rowData.setEntry(position, legacyEntries[position],
+                                         rowConfidence != null ? rowConfidence : DEFAULT_CONFIDENCE);
+                    }
+                }
+            }
+            if (hasEntries(rowData)) {
+                rows.put(rowKey, rowData);
+            }
+        }
+    }
+
+    /**
+     * Position 1-8 from a key such as "3", or 0 for any other key
+     */
+    private static int position(String key) {
+        if (key.length() == 1) {
+            int position = key.charAt(0) - '0';
+            if (position >= 1 && position <= MAX_POSITION) {
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean hasEntries(ContainerExtractionResultDTO.RowData rowData) {
+        for (int i = 1; i <= MAX_POSITION; i++) {
+            if (rowData.getEntry(i) != null && rowData.getEntry(i).getContainerNumber() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Small nested object (grid_structure) as plain maps, lists and scalars
+     */
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            parser.nextToken();
+            map.put(key, readValue(parser));
+        }
+        return map;
+    }
+
+    private static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser));
+                }
+                return list;
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.getText();
+        }
+    }
+}
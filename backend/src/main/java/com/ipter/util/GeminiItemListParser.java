@@ -0,0 +1,76 @@
+package com.ipter.util;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ipter.dto.PdfExtractionResultDTO;
+
+/**
+ * Streaming decoder for Gemini's PDF response: {"items": [{"number": "...", "confidence": "87%"}, ...]}.
+ *
+ * The response is constrained by the PDF response schema, so anything else is an error, except
+ * that a response cut off part way through keeps every item that was complete before the cut.
+ */
+public final class GeminiItemListParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private GeminiItemListParser() {
+    }
+
+    /**
+     * Decode the item list; throws only if no item could be read from a malformed response
+     */
+    public static PdfExtractionResultDTO parse(String json) throws IOException {
+        PdfExtractionResultDTO result = new PdfExtractionResultDTO();
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            try {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String key = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("items".equals(key) && value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            readItem(parser, result);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                if (result.getItems().isEmpty()) {
+                    throw e;
+                }
+                result.setPartial(true);
+            }
+        }
+        return result;
+    }
+
+    private static void readItem(JsonParser parser, PdfExtractionResultDTO result) throws IOException {
+        String number = null;
+        String confidence = "";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                if ("number".equals(field)) {
+                    number = parser.getText().trim();
+                } else if ("confidence".equals(field)) {
+                    confidence = parser.getText();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (number != null && !number.isEmpty()) {
+            result.getItems().add(new PdfExtractionResultDTO.Item(number, confidence));
+        }
+    }
+}
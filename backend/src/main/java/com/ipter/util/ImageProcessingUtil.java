@@ -2,13 +2,38 @@ package com.ipter.util;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
 /**
@@ -37,6 +62,13 @@ public class ImageProcessingUtil {
         "\\b[A-Z]{3,4}[UJZ]?[0-9]{6,7}\\b", Pattern.CASE_INSENSITIVE
     );
     
+    private static final Pattern CONTAINER_SEPARATORS = Pattern.compile("[\\s\\-_]");
+
+    // Owner code + category, serial and check digit as printed in documents, optionally separated
+    private static final Pattern CONTAINER_PATTERN_IN_TEXT = Pattern.compile(
+        "(?<![A-Z0-9])[A-Z]{3}[UJZ][\\s\\-]?[0-9]{6}[\\s\\-]?[0-9](?![A-Z0-9])", Pattern.CASE_INSENSITIVE
+    );
+    
     /**
      * Validate if the MIME type is supported for image processing
      */
@@ -86,6 +118,37 @@ public class ImageProcessingUtil {
         return CONTAINER_PATTERN_FLEXIBLE.matcher(cleanNumber).matches();
     }
     
+    /**
+     * Whether the 11th character of a strict ISO 6346 number matches the check digit of the first 10
+     */
+    public static boolean hasValidCheckDigit(String containerNumber) {
+        if (!isValidContainerNumberStrict(containerNumber)) {
+            return false;
+        }
+        String number = containerNumber.trim().toUpperCase();
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = number.charAt(i);
+            sum += (Character.isDigit(c) ? c - '0' : letterValue(c)) << i;
+        }
+        return sum % 11 % 10 == number.charAt(10) - '0';
+    }
+
+    /**
+     * ISO 6346 letter values: A=10 upwards, skipping multiples of 11
+     */
+    private static int letterValue(char letter) {
+        int value = 10 + (letter - 'A');
+        return value + (value - 1) / 10;
+    }
+
+    /**
+     * Pattern for container numbers as they appear in free text (separators allowed, check digit not verified)
+     */
+    public static Pattern containerNumberTextPattern() {
+        return CONTAINER_PATTERN_IN_TEXT;
+    }
+
     /**
      * Clean and normalize container number
      */
@@ -98,7 +161,7 @@ public class ImageProcessingUtil {
         String cleaned = containerNumber.trim().toUpperCase();
         
         // Remove common separators
-        cleaned = cleaned.replaceAll("[\\s\\-_]", "");
+        cleaned = CONTAINER_SEPARATORS.matcher(cleaned).replaceAll("");
         
         return cleaned;
     }
@@ -163,7 +226,7 @@ public class ImageProcessingUtil {
                 return lowerType;
             case "image/tiff":
             case "image/bmp":
-                // These might need conversion, but for now return as-is
+                // Gemini does not accept these; preprocessForGemini converts them to JPEG
                 return lowerType;
             default:
                 logger.warn("Unknown MIME type {}, defaulting to image/jpeg", originalMimeType);
@@ -171,6 +234,382 @@ public class ImageProcessingUtil {
         }
     }
     
+    /**
+     * Whether Gemini needs the image converted (TIFF/BMP) before it can be sent at all
+     */
+    public static boolean requiresConversion(String mimeType) {
+        String type = mimeType == null ? "" : mimeType.toLowerCase(Locale.ROOT);
+        return "image/tiff".equals(type) || "image/bmp".equals(type);
+    }
+
+    /**
+     * Shrink an image before it is sent to Gemini: apply the EXIF orientation to the pixels, downscale
+     * so the longest edge is at most maxLongEdge, convert TIFF/BMP to JPEG and drop EXIF/XMP metadata.
+     * Large JPEGs are decoded with subsampling, so a 12 MP photo is never fully expanded in memory.
+     * Returns an unchanged result when there is nothing to do or the output would not be smaller.
+     * Throws if a TIFF/BMP cannot be decoded, since Gemini would reject the original.
+     */
+    public static PreprocessedImage preprocessForGemini(InputStreamSource source, String mimeType,
+                                                        int maxLongEdge, float jpegQuality) throws IOException {
+        String type = mimeType == null ? "image/jpeg" : mimeType.toLowerCase(Locale.ROOT);
+        if ("image/jpg".equals(type)) {
+            type = "image/jpeg";
+        }
+        boolean jpeg = "image/jpeg".equals(type);
+        boolean mustConvert = requiresConversion(type);
+        if (!jpeg && !mustConvert && !"image/png".equals(type)) {
+            return PreprocessedImage.unchanged(getGeminiCompatibleMimeType(type));
+        }
+
+        int orientation = 1;
+        if (jpeg) {
+            try (InputStream in = source.getInputStream()) {
+                orientation = readExifOrientation(in);
+            }
+        }
+
+        List<String> applied = new ArrayList<>();
+        BufferedImage decoded;
+        int width;
+        int height;
+        try (ImageInputStream iis = openImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                if (mustConvert) {
+                    // Gemini rejects the original, so there is nothing sensible to send
+                    throw new IOException("Cannot convert " + type + " for Gemini: no image reader supports this file");
+                }
+                logger.warn("No image reader for {}; sending image unchanged", type);
+                return PreprocessedImage.unchanged(getGeminiCompatibleMimeType(type));
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                boolean downscale = maxLongEdge > 0 && Math.max(width, height) > maxLongEdge;
+                boolean rotate = orientation > 1 && orientation <= 8;
+
+                if (!downscale && !rotate && !mustConvert) {
+                    // Already small enough: at most drop metadata, without re-encoding
+                    return jpeg ? stripJpegMetadata(source) : PreprocessedImage.unchanged(type);
+                }
+
+                // Subsample while decoding to get within 2x of the target size, then scale the rest smoothly
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsample = downscale ? Math.max(1, Math.max(width, height) / maxLongEdge) : 1;
+                param.setSourceSubsampling(subsample, subsample, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        BufferedImage output = renderUpright(decoded, orientation, maxLongEdge);
+
+        if (orientation > 1 && orientation <= 8) {
+            applied.add("exif-orientation:" + orientation);
+        }
+        int outLongEdge = Math.max(output.getWidth(), output.getHeight());
+        if (outLongEdge != Math.max(width, height)) {
+            applied.add("downscale:" + width + "x" + height + "->" + output.getWidth() + "x" + output.getHeight());
+        }
+        if (!jpeg) {
+            applied.add("convert:" + type + "->image/jpeg");
+        }
+
+        byte[] encoded = writeJpeg(output, jpegQuality);
+        applied.add("recompress:jpeg-q" + Math.round(jpegQuality * 100));
+        applied.add("strip-metadata");
+
+        // A pure downscale that did not pay off is not worth the quality loss
+        boolean required = mustConvert || orientation > 1;
+        if (!required && source instanceof Resource resource && resource.isFile()
+                && encoded.length >= resource.contentLength()) {
+            return PreprocessedImage.unchanged(type);
+        }
+        return new PreprocessedImage(encoded, "image/jpeg", applied);
+    }
+
+    /**
+     * Decode an image upright (EXIF orientation applied) and scaled to fit maxLongEdge, as opaque RGB.
+     * Uses subsampled decoding like preprocessForGemini. Returns null if no reader supports the format.
+     */
+    public static BufferedImage readUpright(InputStreamSource source, String mimeType, int maxLongEdge) throws IOException {
+        int orientation = 1;
+        if (mimeType != null && mimeType.toLowerCase(Locale.ROOT).matches("image/jpe?g")) {
+            try (InputStream in = source.getInputStream()) {
+                orientation = readExifOrientation(in);
+            }
+        }
+        BufferedImage decoded;
+        try (ImageInputStream iis = openImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsample = maxLongEdge > 0 ? Math.max(1, longEdge / maxLongEdge) : 1;
+                param.setSourceSubsampling(subsample, subsample, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        return renderUpright(decoded, orientation, maxLongEdge);
+    }
+
+    /**
+     * Scale to fit maxLongEdge (never up) and apply the EXIF orientation, flattened onto white RGB
+     * since JPEG has no alpha
+     */
+    private static BufferedImage renderUpright(BufferedImage decoded, int orientation, int maxLongEdge) {
+        double scale = maxLongEdge > 0
+            ? Math.min(1.0, (double) maxLongEdge / Math.max(decoded.getWidth(), decoded.getHeight()))
+            : 1.0;
+        int scaledWidth = Math.max(1, (int) Math.round(decoded.getWidth() * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(decoded.getHeight() * scale));
+        boolean swap = orientation >= 5 && orientation <= 8;
+        int outWidth = swap ? scaledHeight : scaledWidth;
+        int outHeight = swap ? scaledWidth : scaledHeight;
+
+        BufferedImage output = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = output.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, outWidth, outHeight);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            AffineTransform transform = orientationTransform(orientation, scaledWidth, scaledHeight);
+            transform.scale((double) scaledWidth / decoded.getWidth(), (double) scaledHeight / decoded.getHeight());
+            g.drawImage(decoded, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return output;
+    }
+
+    /**
+     * Scale an already decoded image down to fit maxLongEdge; returned as-is if it already fits
+     */
+    public static BufferedImage scaleToFit(BufferedImage image, int maxLongEdge) {
+        if (Math.max(image.getWidth(), image.getHeight()) <= maxLongEdge) {
+            return image;
+        }
+        return renderUpright(image, 1, maxLongEdge);
+    }
+
+    /**
+     * EXIF orientation (1-8) of a JPEG, or 1 if it has none. Only the segments before the image data are read.
+     */
+    static int readExifOrientation(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        try {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker != 0xFFE1) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                byte[] segment = new byte[length];
+                in.readFully(segment);
+                Integer orientation = parseExifOrientation(segment);
+                if (orientation != null) {
+                    return orientation;
+                }
+            }
+        } catch (EOFException e) {
+            return 1;
+        }
+    }
+
+    private static Integer parseExifOrientation(byte[] app1) {
+        // "Exif\0\0" followed by a TIFF header
+        if (app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f') {
+            return null;
+        }
+        int tiff = 6;
+        boolean littleEndian = app1[tiff] == 'I';
+        int ifd = tiff + readInt(app1, tiff + 4, littleEndian);
+        if (ifd < 0 || ifd + 2 > app1.length) {
+            return null;
+        }
+        int entries = readShort(app1, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > app1.length) {
+                break;
+            }
+            if (readShort(app1, entry, littleEndian) == 0x0112) {
+                int value = readShort(app1, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return null;
+    }
+
+    private static int readShort(byte[] b, int offset, boolean littleEndian) {
+        int b0 = b[offset] & 0xFF;
+        int b1 = b[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] b, int offset, boolean littleEndian) {
+        int hi = readShort(b, offset, littleEndian);
+        int lo = readShort(b, offset + 2, littleEndian);
+        return littleEndian ? (lo << 16) | hi : (hi << 16) | lo;
+    }
+
+    /**
+     * Copy a JPEG without its APP1 (EXIF/XMP), APP13 (IPTC) and comment segments; the compressed
+     * image data is copied as-is. Unchanged if there was nothing to remove.
+     */
+    private static PreprocessedImage stripJpegMetadata(InputStreamSource source) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean stripped = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(source.getInputStream()))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return PreprocessedImage.unchanged("image/jpeg");
+            }
+            out.write(0xFF);
+            out.write(0xD8);
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00) {
+                    return PreprocessedImage.unchanged("image/jpeg"); // not a well-formed header; leave it alone
+                }
+                if (marker == 0xFFDA || marker == 0xFFD9) {
+                    out.write(marker >> 8);
+                    out.write(marker & 0xFF);
+                    in.transferTo(out);
+                    break;
+                }
+                int length = in.readUnsignedShort();
+                if (marker == 0xFFE1 || marker == 0xFFED || marker == 0xFFFE) {
+                    in.skipNBytes(length - 2);
+                    stripped = true;
+                    continue;
+                }
+                out.write(marker >> 8);
+                out.write(marker & 0xFF);
+                out.write(length >> 8);
+                out.write(length & 0xFF);
+                out.write(in.readNBytes(length - 2));
+            }
+        } catch (EOFException e) {
+            return PreprocessedImage.unchanged("image/jpeg");
+        }
+        return stripped
+            ? new PreprocessedImage(out.toByteArray(), "image/jpeg", List.of("strip-metadata"))
+            : PreprocessedImage.unchanged("image/jpeg");
+    }
+
+    /**
+     * Maps a scaledWidth x scaledHeight image onto the upright output for the given EXIF orientation
+     */
+    private static AffineTransform orientationTransform(int orientation, int w, int h) {
+        switch (orientation) {
+            case 2: return new AffineTransform(-1, 0, 0, 1, w, 0);   // mirrored horizontally
+            case 3: return new AffineTransform(-1, 0, 0, -1, w, h);  // rotated 180
+            case 4: return new AffineTransform(1, 0, 0, -1, 0, h);   // mirrored vertically
+            case 5: return new AffineTransform(0, 1, 1, 0, 0, 0);    // transposed
+            case 6: return new AffineTransform(0, 1, -1, 0, h, 0);   // rotated 90 clockwise
+            case 7: return new AffineTransform(0, -1, -1, 0, h, w);  // transversed
+            case 8: return new AffineTransform(0, -1, 1, 0, 0, w);   // rotated 90 counter-clockwise
+            default: return new AffineTransform();
+        }
+    }
+
+    private static ImageInputStream openImageInputStream(InputStreamSource source) throws IOException {
+        // Stored uploads are read with random access straight from disk
+        if (source instanceof Resource resource && resource.isFile()) {
+            return ImageIO.createImageInputStream(resource.getFile());
+        }
+        InputStream in = source.getInputStream();
+        return new MemoryCacheImageInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    in.close(); // MemoryCacheImageInputStream does not close the stream it wraps
+                }
+            }
+        };
+    }
+
+    /**
+     * Encode as baseline JPEG at the given quality (0-1), without metadata
+     */
+    public static byte[] writeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            // No metadata is passed, so only a bare JFIF header is written
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Result of preprocessForGemini: either re-encoded bytes or "send the original"
+     */
+    public static class PreprocessedImage {
+        private final byte[] bytes;
+        private final String mimeType;
+        private final List<String> applied;
+
+        public PreprocessedImage(byte[] bytes, String mimeType, List<String> applied) {
+            this.bytes = bytes;
+            this.mimeType = mimeType;
+            this.applied = Collections.unmodifiableList(new ArrayList<>(applied));
+        }
+
+        public static PreprocessedImage unchanged(String mimeType) {
+            return new PreprocessedImage(null, mimeType, Collections.emptyList());
+        }
+
+        public boolean isChanged() {
+            return bytes != null;
+        }
+
+        /**
+         * What to send: the processed bytes, or the original source when nothing changed
+         */
+        public InputStreamSource source(InputStreamSource original) {
+            return bytes != null ? new ByteArrayResource(bytes) : original;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public List<String> getApplied() {
+            return applied;
+        }
+
+        public int getSize() {
+            return bytes != null ? bytes.length : -1;
+        }
+    }
+
     /**
      * Image dimensions data class
      */
@@ -0,0 +1,46 @@
+package com.ipter.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring of recent latency samples with on-demand percentiles.
+ * Small enough (a few hundred samples) that sorting a copy per query is cheap.
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public LatencyWindow(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    public synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Percentile (0-100) of the recorded samples, or -1 if there are none
+     */
+    public long percentile(double percentile) {
+        long[] copy;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            copy = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(percentile / 100.0 * copy.length) - 1;
+        return copy[Math.min(copy.length - 1, Math.max(0, index))];
+    }
+}
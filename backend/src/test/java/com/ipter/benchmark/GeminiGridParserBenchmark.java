@@ -0,0 +1,132 @@
+package com.ipter.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ipter.dto.ContainerExtractionResultDTO;
+import com.ipter.util.GeminiGridParser;
+
+/**
+ * Streaming grid parser against the previous ObjectMapper-to-Map path, on recorded responses.
+ *
+ * Run from backend/ (JMH options such as "-prof gc" for allocation per operation go at the end):
+ * mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) com.ipter.benchmark.GeminiGridParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeminiGridParserBenchmark {
+
+    @Param({"grid-6x8.json", "grid-legacy-3x5.json"})
+    public String response;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String json;
+
+    @Setup
+    public void load() throws IOException {
+        try (InputStream in = GeminiGridParserBenchmark.class.getResourceAsStream("/gemini/" + response)) {
+            json = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public ContainerExtractionResultDTO streaming() throws IOException {
+        return GeminiGridParser.parse(json);
+    }
+
+    @Benchmark
+    public ContainerExtractionResultDTO mapTree() throws IOException {
+        return parseViaMap(json);
+    }
+
+    /**
+     * The parsing part of the former GeminiService.parseGeminiJsonResponse, without its logging
+     */
+    @SuppressWarnings("unchecked")
+    private ContainerExtractionResultDTO parseViaMap(String jsonResponse) throws IOException {
+        Map<String, Object> jsonMap = objectMapper.readValue(jsonResponse, Map.class);
+        ContainerExtractionResultDTO result = new ContainerExtractionResultDTO();
+        Map<String, ContainerExtractionResultDTO.RowData> rows = new HashMap<>();
+        if (jsonMap.containsKey("grid_structure")) {
+            result.setGridStructure((Map<String, Object>) jsonMap.get("grid_structure"));
+        }
+        for (Map.Entry<String, Object> rowEntry : jsonMap.entrySet()) {
+            String rowKey = rowEntry.getKey();
+            if (rowKey.startsWith("row") && rowEntry.getValue() instanceof Map) {
+                Map<String, Object> rowMap = (Map<String, Object>) rowEntry.getValue();
+                ContainerExtractionResultDTO.RowData rowData = new ContainerExtractionResultDTO.RowData();
+                for (Map.Entry<String, Object> posEntry : rowMap.entrySet()) {
+                    Object posValue = posEntry.getValue();
+                    try {
+                        int position = Integer.parseInt(posEntry.getKey());
+                        if (position >= 1 && position <= 8) {
+                            String containerNumber = null;
+                            String confidence = "75%";
+                            if (posValue instanceof Map) {
+                                Map<String, Object> posMap = (Map<String, Object>) posValue;
+                                Object numberObj = posMap.get("number");
+                                Object confObj = posMap.get("confidence");
+                                if (numberObj != null) {
+                                    containerNumber = String.valueOf(numberObj).trim();
+                                }
+                                if (confObj != null) {
+                                    confidence = String.valueOf(confObj);
+                                }
+                            } else if (posValue != null) {
+                                String value = String.valueOf(posValue);
+                                if (!value.trim().isEmpty() && !value.equals("null") && !value.equals("N/A")) {
+                                    containerNumber = value.trim();
+                                    if (rowMap.containsKey("confidence")) {
+                                        confidence = String.valueOf(rowMap.get("confidence"));
+                                    }
+                                }
+                            }
+                            if (containerNumber != null && !containerNumber.isEmpty()) {
+                                rowData.setEntry(position, containerNumber, confidence);
+                            }
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // Non-numeric keys such as a row-level "confidence"
+                    }
+                }
+                rows.put(rowKey, rowData);
+            }
+        }
+        result.setRows(rows);
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(GeminiGridParserBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -1,32 +1,48 @@
 package com.ipter.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import org.mockito.Mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ipter.dto.ImageUploadResponse;
 import com.ipter.dto.OCRResultDTO;
-import com.ipter.dto.ProjectResponse;
+import com.ipter.model.Image;
+import com.ipter.service.BatchExtractionService;
 import com.ipter.service.GeminiService;
 import com.ipter.service.ImageService;
-import com.ipter.service.ProjectService;
+import com.ipter.service.ThumbnailService;
 
 /**
  * Test class for ImageController with example number functionality
@@ -41,7 +57,7 @@ class ImageControllerTest {
     private GeminiService geminiService;
 
     @Mock
-    private ProjectService projectService;
+    private ThumbnailService thumbnailService;
 
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
@@ -55,7 +71,7 @@ class ImageControllerTest {
         // Inject mocked services using reflection
         org.springframework.test.util.ReflectionTestUtils.setField(imageController, "imageService", imageService);
         org.springframework.test.util.ReflectionTestUtils.setField(imageController, "geminiService", geminiService);
-        org.springframework.test.util.ReflectionTestUtils.setField(imageController, "projectService", projectService);
+        org.springframework.test.util.ReflectionTestUtils.setField(imageController, "thumbnailService", thumbnailService);
         
         mockMvc = MockMvcBuilders.standaloneSetup(imageController).build();
     }
@@ -79,10 +95,6 @@ class ImageControllerTest {
         uploadResponse.setOriginalFilename("test-image.jpg");
         uploadResponse.setUploadedAt(java.time.LocalDateTime.now());
 
-        ProjectResponse projectResponse = new ProjectResponse();
-        projectResponse.setId(projectId);
-        projectResponse.setExampleContainerNumber("DEF789012");
-
         OCRResultDTO ocrResult = new OCRResultDTO();
         ocrResult.setSuccess(true);
         ocrResult.setFilename("test-image.jpg");
@@ -90,8 +102,7 @@ class ImageControllerTest {
         ocrResult.setConfidence(0.95);
 
         when(imageService.uploadImage(any(), any())).thenReturn(uploadResponse);
-        when(projectService.getProjectById(projectId)).thenReturn(projectResponse);
-        when(geminiService.extractContainerNumbers(any(byte[].class), anyString(), anyString(), anyString()))
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), anyString(), anyString(), eq(exampleNumber)))
             .thenReturn(ocrResult);
 
         // When & Then
@@ -125,10 +136,6 @@ class ImageControllerTest {
         uploadResponse.setOriginalFilename("test-image.jpg");
         uploadResponse.setUploadedAt(java.time.LocalDateTime.now());
 
-        ProjectResponse projectResponse = new ProjectResponse();
-        projectResponse.setId(projectId);
-        projectResponse.setExampleContainerNumber("PROJECT123456");
-
         OCRResultDTO ocrResult = new OCRResultDTO();
         ocrResult.setSuccess(true);
         ocrResult.setFilename("test-image.jpg");
@@ -136,8 +143,8 @@ class ImageControllerTest {
         ocrResult.setConfidence(0.90);
 
         when(imageService.uploadImage(any(), any())).thenReturn(uploadResponse);
-        when(projectService.getProjectById(projectId)).thenReturn(projectResponse);
-        when(geminiService.extractContainerNumbers(any(byte[].class), anyString(), anyString(), eq("PROJECT123456")))
+        when(imageService.resolveExampleNumber(projectId)).thenReturn("PROJECT123456");
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), anyString(), anyString(), eq("PROJECT123456")))
             .thenReturn(ocrResult);
 
         // When & Then
@@ -170,10 +177,6 @@ class ImageControllerTest {
         uploadResponse.setOriginalFilename("test-image.jpg");
         uploadResponse.setUploadedAt(java.time.LocalDateTime.now());
 
-        ProjectResponse projectResponse = new ProjectResponse();
-        projectResponse.setId(projectId);
-        projectResponse.setExampleContainerNumber("FALLBACK789");
-
         OCRResultDTO ocrResult = new OCRResultDTO();
         ocrResult.setSuccess(true);
         ocrResult.setFilename("test-image.jpg");
@@ -181,8 +184,8 @@ class ImageControllerTest {
         ocrResult.setConfidence(0.88);
 
         when(imageService.uploadImage(any(), any())).thenReturn(uploadResponse);
-        when(projectService.getProjectById(projectId)).thenReturn(projectResponse);
-        when(geminiService.extractContainerNumbers(any(byte[].class), anyString(), anyString(), eq("FALLBACK789")))
+        when(imageService.resolveExampleNumber(projectId)).thenReturn("FALLBACK789");
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), anyString(), anyString(), eq("FALLBACK789")))
             .thenReturn(ocrResult);
 
         // When & Then
@@ -199,10 +202,9 @@ class ImageControllerTest {
     }
 
     @Test
-    void testUploadAndExtract_ProjectServiceException_HandledGracefully() throws Exception {
+    void testUploadAndExtract_ExampleLookupException_HandledGracefully() throws Exception {
         // Given
         UUID projectId = UUID.randomUUID();
-        String exampleNumber = "TEST123";
         MockMultipartFile file = new MockMultipartFile(
             "file", 
             "test-image.jpg", 
@@ -224,20 +226,144 @@ class ImageControllerTest {
         ocrResult.setConfidence(0.85);
 
         when(imageService.uploadImage(any(), any())).thenReturn(uploadResponse);
-        when(projectService.getProjectById(projectId)).thenThrow(new RuntimeException("Project not found"));
-        when(geminiService.extractContainerNumbers(any(byte[].class), anyString(), anyString(), eq(exampleNumber)))
+        when(imageService.resolveExampleNumber(projectId)).thenThrow(new RuntimeException("Project not found"));
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), anyString(), anyString(), isNull()))
             .thenReturn(ocrResult);
 
-        // When & Then - Should still work with provided example number
+        // When & Then - Should still work, just without an example number
         mockMvc.perform(multipart("/images/upload-and-extract")
                 .file(file)
                 .param("projectId", projectId.toString())
-                .param("exampleNumber", exampleNumber)
-                .param("description", "Test upload with project service exception"))
+                .param("description", "Test upload with example lookup exception"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.message").value("Image uploaded and processed successfully"))
                 .andExpect(jsonPath("$.data.success").value(true))
                 .andExpect(jsonPath("$.data.imageName").value("test-image.jpg"));
     }
+
+    @Test
+    void testUploadAndExtractBatch_StreamsOneLinePerImage() throws Exception {
+        // Given
+        UUID projectId = UUID.randomUUID();
+        MockMultipartFile first = new MockMultipartFile("files", "stack-1.jpg", "image/jpeg", "image-1".getBytes());
+        MockMultipartFile second = new MockMultipartFile("files", "stack-2.jpg", "image/jpeg", "image-2".getBytes());
+
+        Image image1 = new Image("stack-1.jpg", "uploads/images/stack-1.jpg", "image/jpeg", 7L, null, null);
+        image1.setId(UUID.randomUUID());
+        Image image2 = new Image("stack-2.jpg", "uploads/images/stack-2.jpg", "image/jpeg", 7L, null, null);
+        image2.setId(UUID.randomUUID());
+
+        OCRResultDTO success = new OCRResultDTO();
+        success.setSuccess(true);
+        success.setExtractedText("ABCD1234567");
+        OCRResultDTO failure = new OCRResultDTO();
+        failure.setSuccess(false);
+        failure.setErrorMessage("No containers found");
+
+        when(imageService.uploadImages(anyList(), eq(projectId))).thenReturn(List.of(image1, image2));
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), eq("stack-1.jpg"), anyString(), eq("BATCH123")))
+            .thenReturn(success);
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), eq("stack-2.jpg"), anyString(), eq("BATCH123")))
+            .thenReturn(failure);
+
+        BatchExtractionService batchService = new BatchExtractionService(
+            imageService, geminiService, new ObjectMapper().findAndRegisterModules(), 2, 10, 10, 10000);
+        org.springframework.test.util.ReflectionTestUtils.setField(imageController, "batchExtractionService", batchService);
+
+        // When
+        MvcResult started = mockMvc.perform(multipart("/images/upload-and-extract/batch")
+                .file(first)
+                .file(second)
+                .param("projectId", projectId.toString())
+                .param("exampleNumber", "BATCH123"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        started.getAsyncResult(5000);
+
+        // Then - accepted line, one result per image, then the summary
+        String[] lines = started.getResponse().getContentAsString().trim().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("accepted", objectMapper.readTree(lines[0]).get("type").asText());
+        assertEquals(2, objectMapper.readTree(lines[0]).get("total").asInt());
+
+        JsonNode summary = objectMapper.readTree(lines[3]);
+        assertEquals("summary", summary.get("type").asText());
+        assertEquals(1, summary.get("succeeded").asInt());
+        assertEquals(1, summary.get("failed").asInt());
+        assertFalse(summary.get("success").asBoolean());
+
+        verify(imageService).saveExtractedDataInline(image1.getId(), success);
+        verify(imageService).saveExtractedDataInline(image2.getId(), failure);
+        batchService.shutdown();
+    }
+
+    @Test
+    void testUploadAndExtractBatch_FailedExtractionIsQueued() throws Exception {
+        // Given
+        UUID projectId = UUID.randomUUID();
+        MockMultipartFile file = new MockMultipartFile("files", "stack-1.jpg", "image/jpeg", "image-1".getBytes());
+        Image image = new Image("stack-1.jpg", "uploads/images/stack-1.jpg", "image/jpeg", 7L, null, null);
+        image.setId(UUID.randomUUID());
+
+        when(imageService.uploadImages(anyList(), eq(projectId))).thenReturn(List.of(image));
+        when(geminiService.extractContainerNumbers(any(Resource.class), any(), eq("stack-1.jpg"), anyString(), eq("BATCH123")))
+            .thenThrow(new RuntimeException("connection reset"));
+
+        BatchExtractionService batchService = new BatchExtractionService(
+            imageService, geminiService, new ObjectMapper().findAndRegisterModules(), 2, 10, 10, 10000);
+        org.springframework.test.util.ReflectionTestUtils.setField(imageController, "batchExtractionService", batchService);
+
+        // When
+        MvcResult started = mockMvc.perform(multipart("/images/upload-and-extract/batch")
+                .file(file)
+                .param("projectId", projectId.toString())
+                .param("exampleNumber", "BATCH123"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        started.getAsyncResult(5000);
+
+        // Then - the image is handed to the background queue instead of staying PENDING unqueued
+        String[] lines = started.getResponse().getContentAsString().trim().split("\n");
+        assertTrue(objectMapper.readTree(lines[1]).get("data").get("message").asText().contains("queued"));
+        assertFalse(objectMapper.readTree(lines[2]).get("success").asBoolean());
+        verify(imageService).processImageAsync(image.getId());
+        batchService.shutdown();
+    }
+
+    @Test
+    void testThumbnail_NotModifiedWhenETagMatches() throws Exception {
+        UUID imageId = UUID.randomUUID();
+        when(thumbnailService.getETag(imageId, ThumbnailService.Size.SMALL)).thenReturn("\"abc-small-v1\"");
+
+        mockMvc.perform(get("/images/{imageId}/thumbnail", imageId)
+                .param("size", "small")
+                .header("If-None-Match", "\"abc-small-v1\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"abc-small-v1\""))
+                .andExpect(header().string("Cache-Control", "max-age=31536000, private, immutable"));
+
+        verify(thumbnailService, never()).getThumbnail(any(), any());
+    }
+
+    @Test
+    void testThumbnail_NotFoundOnlyForMissingImage() throws Exception {
+        UUID imageId = UUID.randomUUID();
+        when(thumbnailService.getETag(imageId, ThumbnailService.Size.SMALL))
+            .thenThrow(new ThumbnailService.ImageNotFoundException(imageId));
+
+        mockMvc.perform(get("/images/{imageId}/thumbnail", imageId).param("size", "small"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testThumbnail_GenerationErrorIsServerError() throws Exception {
+        UUID imageId = UUID.randomUUID();
+        when(thumbnailService.getETag(imageId, ThumbnailService.Size.SMALL)).thenReturn("\"abc-small-v1\"");
+        when(thumbnailService.getThumbnail(imageId, ThumbnailService.Size.SMALL))
+            .thenThrow(new java.io.IOException("Unsupported image format: image/tiff"));
+
+        mockMvc.perform(get("/images/{imageId}/thumbnail", imageId).param("size", "small"))
+                .andExpect(status().isInternalServerError());
+    }
 }
@@ -0,0 +1,166 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ipter.dto.ExtractedContainerRow;
+import com.ipter.dto.ImageDataViewDTO;
+import com.ipter.dto.ImageSummaryRow;
+import com.ipter.dto.ProjectDataViewDTO;
+import com.ipter.event.MasterDataChangedEvent;
+import com.ipter.model.ExtractedData;
+import com.ipter.model.Image;
+import com.ipter.model.Project;
+import com.ipter.repository.ExtractedDataRepository;
+import com.ipter.repository.ImageRepository;
+import com.ipter.repository.MasterDataRepository;
+import com.ipter.repository.ProjectRepository;
+
+@ExtendWith(MockitoExtension.class)
+class DataViewServiceTest {
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private ExtractedDataRepository extractedDataRepository;
+
+    @Mock
+    private MasterDataRepository masterDataRepository;
+
+    @InjectMocks
+    private DataViewService dataViewService;
+
+    private MasterDataIndexService masterDataIndexService;
+    private UUID projectId;
+
+    private Project project;
+
+    @BeforeEach
+    void setUp() {
+        projectId = UUID.randomUUID();
+        project = new Project();
+        project.setId(projectId);
+        project.setName("Test Project");
+
+        masterDataIndexService = new MasterDataIndexService(masterDataRepository, 10);
+        ReflectionTestUtils.setField(dataViewService, "masterDataIndexService", masterDataIndexService);
+    }
+
+    @Test
+    void testProjectDataViewFromProjections() {
+        when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
+        UUID image1 = UUID.randomUUID();
+        UUID image2 = UUID.randomUUID();
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(List.of("A1", "B2", "C3"));
+        when(imageRepository.findSummaryRowsByProjectId(projectId, true)).thenReturn(List.of(
+            new ImageSummaryRow(image1, "one.jpg", LocalDateTime.now()),
+            new ImageSummaryRow(image2, "two.jpg", LocalDateTime.now())));
+        when(extractedDataRepository.findContainerRowsByProjectId(projectId)).thenReturn(List.of(
+            new ExtractedContainerRow(image1, "A1", 0.7),
+            new ExtractedContainerRow(image1, " A1 ", 0.9),
+            new ExtractedContainerRow(image1, "X9", null),
+            new ExtractedContainerRow(image2, "B2", 0.8),
+            new ExtractedContainerRow(image2, "  ", 0.5)));
+
+        ProjectDataViewDTO view = dataViewService.getProjectDataView(projectId, true);
+
+        assertEquals(List.of("A1", "B2", "C3"), view.getMasterData());
+        assertEquals(2, view.getImages().size());
+        ProjectDataViewDTO.ImageDataSummaryDTO first = view.getImages().get(0);
+        assertEquals(List.of("A1", "A1", "X9"), first.getExtractedContainers());
+        assertEquals(0.9, first.getContainerConfidences().get("A1"));
+        assertEquals("/api/images/" + image1 + "/view", first.getImageUrl());
+
+        ProjectDataViewDTO.ProjectSummaryDTO summary = view.getSummary();
+        assertEquals(3, summary.getTotalMasterSerialNos());
+        assertEquals(4, summary.getTotalExtractedSerialNos());
+        assertEquals(2, summary.getMatchedSerialNos());
+        assertEquals(1, summary.getUnmatchedSerialNos());
+        assertEquals(1, summary.getDuplicateSerialNos());
+        verify(extractedDataRepository, never()).findByProjectId(any());
+    }
+
+    @Test
+    void testMasterDataIndexCachedUntilMasterDataChanges() {
+        when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(List.of("A1"), List.of("A1", "B2"));
+        when(imageRepository.findSummaryRowsByProjectId(projectId, false)).thenReturn(List.of());
+        when(extractedDataRepository.findContainerRowsByProjectId(projectId)).thenReturn(List.of());
+
+        dataViewService.getProjectDataView(projectId, false);
+        assertEquals(1, dataViewService.getProjectDataView(projectId, false).getSummary().getTotalMasterSerialNos());
+
+        masterDataIndexService.onMasterDataChanged(new MasterDataChangedEvent(projectId));
+
+        assertEquals(2, dataViewService.getProjectDataView(projectId, false).getSummary().getTotalMasterSerialNos());
+        verify(masterDataRepository, times(2)).findContainerNumbersByProjectId(projectId);
+    }
+
+    @Test
+    void testImageDataViewMatchesNormalizedNumbers() {
+        UUID imageId = UUID.randomUUID();
+        Image image = new Image();
+        image.setId(imageId);
+        image.setProject(project);
+        when(imageRepository.findById(imageId)).thenReturn(Optional.of(image));
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(List.of("ABCU1234567"));
+        when(extractedDataRepository.findByImageId(imageId)).thenReturn(List.of(
+            extracted(image, "abcu 123456-7"), extracted(image, "ZZZU0000000")));
+
+        ImageDataViewDTO view = dataViewService.getImageDataView(imageId);
+
+        assertEquals(List.of("ABCU1234567"), view.getMasterData());
+        assertTrue(view.getExtractedData().get(0).isMatched());
+        assertFalse(view.getExtractedData().get(1).isMatched());
+    }
+
+    @Test
+    void testLoadRacingInvalidationIsNotCached() {
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenAnswer(invocation -> {
+            // Master data replaced while the old numbers are being read
+            masterDataIndexService.invalidate(projectId);
+            return List.of("OLD");
+        }).thenReturn(List.of("NEW"));
+
+        MasterDataIndex stale = masterDataIndexService.getIndex(projectId);
+        MasterDataIndex fresh = masterDataIndexService.getIndex(projectId);
+
+        assertEquals(0, stale.getVersion());
+        assertEquals(List.of("NEW"), fresh.getContainerNumbers());
+        assertEquals(1, fresh.getVersion());
+        assertEquals(1, masterDataIndexService.getVersion(projectId));
+        assertSame(fresh, masterDataIndexService.getIndex(projectId));
+    }
+
+    private ExtractedData extracted(Image image, String containerNumber) {
+        ExtractedData data = new ExtractedData();
+        data.setImage(image);
+        data.setContainerNumber(containerNumber);
+        data.setConfidence(0.9);
+        return data;
+    }
+}
@@ -0,0 +1,194 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test class for GeminiContextCache, against a local stub of the cachedContents API
+ */
+class GeminiContextCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<JsonNode> bodies = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final GeminiRateLimiter rateLimiter = new GeminiRateLimiter(true, 600, 1_000_000, 4, 1, 8, 0.5, 1000,
+        5000, 50, 1500, meterRegistry);
+    // Opens after two failed calls
+    private final GeminiCircuitBreaker circuitBreaker = new GeminiCircuitBreaker(true, "queue", 4, 2, 50, 30000, 80,
+        60000, 1, meterRegistry);
+    private HttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testPromptIsUploadedOncePerText() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        GeminiContextCache cache = startCache(exchange ->
+            respond(exchange, 200, cachedContent("cachedContents/c" + created.incrementAndGet(), 3600)));
+
+        String first = cache.getCachedContentName("image-grid-v2", "Extract the grid. Example: ABC123");
+        assertEquals("cachedContents/c1", first);
+        assertEquals(first, cache.getCachedContentName("image-grid-v2", "Extract the grid. Example: ABC123"));
+        assertNotEquals(first, cache.getCachedContentName("image-grid-v2", "Extract the grid. Example: XYZ789"));
+
+        assertEquals(List.of("POST /v1beta/cachedContents", "POST /v1beta/cachedContents"), requests);
+        JsonNode body = bodies.get(0);
+        assertEquals("models/test-model", body.get("model").asText());
+        assertEquals("3600s", body.get("ttl").asText());
+        assertEquals("user", body.get("contents").get(0).get("role").asText());
+        assertEquals("Extract the grid. Example: ABC123",
+            body.get("contents").get(0).get("parts").get(0).get("text").asText());
+    }
+
+    @Test
+    void testCacheIsExtendedBeforeExpiry() throws Exception {
+        GeminiContextCache cache = startCache(exchange -> {
+            // Created close to expiry (inside the 300 s refresh margin); the ttl PATCH pushes it out
+            long expiresIn = "POST".equals(exchange.getRequestMethod()) ? 100 : 3600;
+            respond(exchange, 200, cachedContent("cachedContents/grid", expiresIn));
+        });
+
+        assertEquals("cachedContents/grid", cache.getCachedContentName("pdf-v2", "List the numbers"));
+        // Returned right away; the extension runs in the background
+        assertEquals("cachedContents/grid", cache.getCachedContentName("pdf-v2", "List the numbers"));
+        awaitRequests(2);
+        assertEquals("cachedContents/grid", cache.getCachedContentName("pdf-v2", "List the numbers"));
+
+        assertEquals(List.of("POST /v1beta/cachedContents", "PATCH /v1beta/cachedContents/grid"), requests);
+        assertEquals("3600s", bodies.get(1).get("ttl").asText());
+    }
+
+    @Test
+    void testFailedCreationFallsBackToInlineWithoutRetrying() throws Exception {
+        GeminiContextCache cache = startCache(exchange ->
+            respond(exchange, 400, "{\"error\":{\"message\":\"Cached content is too small\"}}"));
+
+        assertNull(cache.getCachedContentName("pdf-v2", "Short prompt"));
+        assertNull(cache.getCachedContentName("pdf-v2", "Short prompt"));
+
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void testSlowCreationDoesNotHoldUpCallers() throws Exception {
+        GeminiContextCache cache = startCache(exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, cachedContent("cachedContents/slow", 3600));
+        }, 100);
+
+        long start = System.currentTimeMillis();
+        assertNull(cache.getCachedContentName("pdf-v2", "List the numbers"));
+        assertNull(cache.getCachedContentName("pdf-v2", "List the numbers"));
+        assertTrue(System.currentTimeMillis() - start < 800);
+
+        // The upload finished in the background and is used from then on
+        awaitRequests(1);
+        Thread.sleep(1200);
+        assertEquals("cachedContents/slow", cache.getCachedContentName("pdf-v2", "List the numbers"));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void testOpenCircuitSkipsCachedContentsCalls() throws Exception {
+        circuitBreaker.onFailure(0);
+        circuitBreaker.onFailure(0);
+        GeminiContextCache cache = startCache(exchange ->
+            respond(exchange, 200, cachedContent("cachedContents/c1", 3600)));
+
+        assertNull(cache.getCachedContentName("pdf-v2", "List the numbers"));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void testInvalidatedCacheIsRecreated() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        GeminiContextCache cache = startCache(exchange ->
+            respond(exchange, 200, cachedContent("cachedContents/c" + created.incrementAndGet(), 3600)));
+
+        String first = cache.getCachedContentName("image-grid-v2", "Prompt");
+        cache.invalidate(first);
+
+        assertEquals("cachedContents/c2", cache.getCachedContentName("image-grid-v2", "Prompt"));
+    }
+
+    @Test
+    void testDisabledCacheMakesNoCalls() {
+        GeminiContextCache cache = new GeminiContextCache(WebClient.builder().build(),
+            "http://localhost:1/v1beta/models/test-model:generateContent", "key", false, 3600, 300, 600, 10, 2000, 5000,
+            rateLimiter, circuitBreaker, meterRegistry);
+
+        assertNull(cache.getCachedContentName("image-grid-v2", "Prompt"));
+        assertTrue(requests.isEmpty());
+    }
+
+    private GeminiContextCache startCache(HttpHandler handler) throws IOException {
+        return startCache(handler, 2000);
+    }
+
+    private GeminiContextCache startCache(HttpHandler handler, long createWaitMs) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            bodies.add(objectMapper.readTree(exchange.getRequestBody().readAllBytes()));
+            handler.handle(exchange);
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return new GeminiContextCache(WebClient.builder().build(),
+            "http://localhost:" + server.getAddress().getPort() + "/v1beta/models/test-model:generateContent",
+            "test-api-key", true, 3600, 300, 600, 10, createWaitMs, 5000, rateLimiter, circuitBreaker, meterRegistry);
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static String cachedContent(String name, long expiresInSeconds) {
+        return "{\"name\":\"" + name + "\",\"model\":\"models/test-model\",\"expireTime\":\""
+            + Instant.now().plusSeconds(expiresInSeconds) + "\"}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test class for GeminiRateLimiter
+ */
+class GeminiRateLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private GeminiRateLimiter limiter(double requestsPerMinute, int concurrency, long maxWaitMs, int maxQueue) {
+        return new GeminiRateLimiter(true, requestsPerMinute, 1_000_000, concurrency, 1, 16, 0.5, 0,
+            maxWaitMs, maxQueue, 1500, meterRegistry);
+    }
+
+    @Test
+    void testOverloadHalvesLimitAndSuccessGrowsItBack() {
+        GeminiRateLimiter limiter = limiter(6000, 8, 1000, 10);
+
+        limiter.acquire(100).onOverload(null);
+        assertEquals(4.0, limiter.getLimit(), 0.001);
+
+        limiter.acquire(100).onSuccess(100);
+        assertEquals(4.25, limiter.getLimit(), 0.001);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testCallerWaitsUntilDeadlineWhenConcurrencyIsExhausted() {
+        GeminiRateLimiter limiter = limiter(6000, 1, 100, 10);
+        GeminiRateLimiter.Permit held = limiter.acquire(100);
+
+        long start = System.nanoTime();
+        assertThrows(GeminiRateLimiter.LimitExceededException.class, () -> limiter.acquire(100));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 90);
+        assertEquals(1.0, meterRegistry.get("gemini.limiter.rejections").tag("reason", "deadline").counter().count());
+
+        held.onSuccess(null);
+        limiter.acquire(100).onSuccess(null);
+    }
+
+    @Test
+    void testQueuedCallerProceedsWhenSlotIsReleased() throws Exception {
+        GeminiRateLimiter limiter = limiter(6000, 1, 5000, 10);
+        GeminiRateLimiter.Permit held = limiter.acquire(100);
+
+        Thread waiter = new Thread(() -> limiter.acquire(100).onSuccess(null));
+        waiter.start();
+        while (limiter.getQueueDepth() == 0) {
+            Thread.sleep(5);
+        }
+        held.onSuccess(null);
+        waiter.join(2000);
+
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testRequestBudgetThrottlesBurst() {
+        // 2 requests per minute: the initial burst is spent after two calls
+        GeminiRateLimiter limiter = limiter(2, 8, 50, 10);
+        limiter.acquire(10).onSuccess(null);
+        limiter.acquire(10).onSuccess(null);
+
+        assertThrows(GeminiRateLimiter.LimitExceededException.class, () -> limiter.acquire(10));
+    }
+}
@@ -5,16 +5,42 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ipter.dto.GeminiRequestDTO;
 import com.ipter.dto.OCRResultDTO;
+import com.ipter.util.ContentHashUtil;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 /**
  * Test class for GeminiService
@@ -22,20 +48,37 @@ import com.ipter.dto.OCRResultDTO;
 @ExtendWith(MockitoExtension.class)
 class GeminiServiceTest {
     
-    @Mock
-    private RestTemplate restTemplate;
-    
+    private WebClient webClient;
     private ObjectMapper objectMapper;
     private GeminiService geminiService;
+    private GeminiExtractionCache extractionCache;
+    private GeminiRateLimiter rateLimiter;
+    private GeminiCircuitBreaker circuitBreaker;
+    private GeminiContextCache contextCache;
+    private SimpleMeterRegistry meterRegistry;
+
+    @Mock
+    private LegacyOcrService legacyOcrService;
     
     @BeforeEach
     void setUp() {
         objectMapper = new ObjectMapper();
-        geminiService = new GeminiService(restTemplate, objectMapper);
+        webClient = WebClient.builder().build();
+        meterRegistry = new SimpleMeterRegistry();
+        extractionCache = new GeminiExtractionCache(true, 10, 60, false, null, meterRegistry);
+        rateLimiter = new GeminiRateLimiter(true, 600, 1_000_000, 4, 1, 8, 0.5, 1000,
+            5000, 50, 1500, meterRegistry);
+        circuitBreaker = new GeminiCircuitBreaker(true, "queue", 20, 10, 50, 30000, 80,
+            30000, 3, meterRegistry);
+        contextCache = new GeminiContextCache(webClient, "https://test-api-url/v1beta/models/test:generateContent",
+            "test-api-key", false, 3600, 300, 600, 10, 2000, 5000, rateLimiter, circuitBreaker, meterRegistry);
+        geminiService = new GeminiService(webClient, objectMapper, extractionCache, rateLimiter, circuitBreaker,
+            contextCache, legacyOcrService, meterRegistry);
         
         // Set test API key and URL
         ReflectionTestUtils.setField(geminiService, "apiKey", "test-api-key");
         ReflectionTestUtils.setField(geminiService, "apiUrl", "https://test-api-url");
+        ReflectionTestUtils.setField(geminiService, "retryMaxAttempts", 1);
     }
     
     @Test
@@ -260,4 +303,470 @@ class GeminiServiceTest {
             fail("Failed to test prompt content: " + e.getMessage());
         }
     }
+
+    @Test
+    void testExtractContainerNumbers_ServesRepeatImageFromCache() {
+        // Given - a successful result already cached for these bytes and example number
+        byte[] testImageBytes = "test-image-data".getBytes();
+        OCRResultDTO cachedResult = new OCRResultDTO();
+        cachedResult.setFilename("first-upload.jpg");
+        cachedResult.setSuccess(true);
+        cachedResult.setExtractedText("ABCD1234567");
+        String key = GeminiExtractionCache.key(ContentHashUtil.sha256Hex(testImageBytes),
+            GeminiService.IMAGE_PROMPT_VARIANT, "EX123");
+        extractionCache.put(key, cachedResult);
+
+        // When - the same bytes are uploaded again under a different name
+        OCRResultDTO result = geminiService.extractContainerNumbers(testImageBytes, "second-upload.jpg", "image/jpeg", "EX123");
+
+        // Then - served without calling the API
+        assertTrue(result.getSuccess());
+        assertEquals("ABCD1234567", result.getExtractedText());
+        assertEquals("second-upload.jpg", result.getFilename());
+
+        // A different example number is a different prompt, so it must miss
+        OCRResultDTO other = geminiService.extractContainerNumbers(testImageBytes, "second-upload.jpg", "image/jpeg", "EX999");
+        assertFalse(other.getSuccess());
+
+        // An explicit reprocess drops the cached result and asks the API again
+        OCRResultDTO refreshed = geminiService.extractContainerNumbers(new ByteArrayResource(testImageBytes), null,
+            "second-upload.jpg", "image/jpeg", "EX123", true);
+        assertFalse(refreshed.getSuccess());
+        assertTrue(extractionCache.get(key).isEmpty());
+    }
+
+    @Test
+    void testInlineDataStreamsSourceAsBase64() throws Exception {
+        // Given - raw bytes supplied as a stream source rather than a pre-encoded string
+        byte[] imageBytes = new byte[100_000];
+        new Random(42).nextBytes(imageBytes);
+        GeminiRequestDTO.InlineData inlineData =
+            new GeminiRequestDTO.InlineData("image/jpeg", new ByteArrayResource(imageBytes));
+
+        // When
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(inlineData));
+
+        // Then - same wire format as the old pre-encoded String
+        assertEquals("image/jpeg", json.get("mimeType").asText());
+        assertEquals(Base64.getEncoder().encodeToString(imageBytes), json.get("data").asText());
+    }
+
+    @Test
+    void testPromptIsBuiltOncePerExample() {
+        AtomicInteger builds = new AtomicInteger();
+        Function<String, String> builder = example -> "prompt " + example + " #" + builds.incrementAndGet();
+
+        String first = geminiService.cachedPrompt(GeminiService.IMAGE_PROMPT_VARIANT, " EX123 ", builder);
+        assertEquals("prompt EX123 #1", first);
+        assertEquals(first, geminiService.cachedPrompt(GeminiService.IMAGE_PROMPT_VARIANT, "EX123", builder));
+        assertEquals("prompt null #2", geminiService.cachedPrompt(GeminiService.IMAGE_PROMPT_VARIANT, "  ", builder));
+        assertEquals("prompt EX123 #3", geminiService.cachedPrompt(GeminiService.PDF_PROMPT_VARIANT, "EX123", builder));
+        assertEquals(3, builds.get());
+    }
+
+    @Test
+    void testGenerationConfigCarriesResponseSchema() throws Exception {
+        // Given
+        GeminiRequestDTO.GenerationConfig config = new GeminiRequestDTO.GenerationConfig();
+        config.setResponseMimeType("application/json");
+        config.setResponseSchema(GeminiService.PDF_RESPONSE_SCHEMA);
+
+        // When
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(config));
+
+        // Then - items array of {number, confidence} objects, with no null schema fields on the wire
+        JsonNode items = json.get("responseSchema").get("properties").get("items");
+        assertEquals("ARRAY", items.get("type").asText());
+        assertEquals("STRING", items.get("items").get("properties").get("number").get("type").asText());
+        assertEquals("confidence", items.get("items").get("propertyOrdering").get(1).asText());
+        assertFalse(items.has("properties"));
+    }
+
+    @Test
+    void testGridResponseSchemaMatchesPromptShape() throws Exception {
+        JsonNode schema = objectMapper.readTree(objectMapper.writeValueAsString(GeminiService.GRID_RESPONSE_SCHEMA));
+
+        assertEquals("grid_structure", schema.get("propertyOrdering").get(0).asText());
+        assertTrue(schema.get("properties").has("row8"));
+        assertEquals("OBJECT", schema.get("properties").get("row1").get("properties").get("8").get("type").asText());
+    }
+
+    @Test
+    void testTransientGeminiErrorIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            int status = calls.incrementAndGet() == 1 ? 503 : 200;
+            respond(exchange, status, status == 200 ? "{\"candidates\":[]}" : "{\"error\":\"overloaded\"}");
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "retryMaxAttempts", 3);
+            ReflectionTestUtils.setField(geminiService, "retryInitialBackoffMs", 1L);
+
+            OCRResultDTO result = geminiService.extractContainerNumbers("retry-image".getBytes(), "retry.jpg", "image/jpeg");
+
+            // The second attempt reached Gemini and returned a (empty) response
+            assertEquals(2, calls.get());
+            assertTrue(result.getErrorMessage().contains("No response candidates"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testClientErrorIsNotRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            calls.incrementAndGet();
+            respond(exchange, 400, "{\"error\":\"bad request\"}");
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "retryMaxAttempts", 3);
+            ReflectionTestUtils.setField(geminiService, "retryInitialBackoffMs", 1L);
+
+            OCRResultDTO result = geminiService.extractContainerNumbers("bad-image".getBytes(), "bad.jpg", "image/jpeg");
+
+            assertEquals(1, calls.get());
+            assertFalse(result.getSuccess());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testSlowCallIsHedged() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(3000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            respond(exchange, 200, "{\"candidates\":[]}");
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "hedgeEnabled", true);
+            ReflectionTestUtils.setField(geminiService, "hedgeMinSamples", 0);
+            ReflectionTestUtils.setField(geminiService, "hedgeMinDelayMs", 100L);
+
+            long start = System.currentTimeMillis();
+            OCRResultDTO result = geminiService.extractContainerNumbers("slow-image".getBytes(), "slow.jpg", "image/jpeg");
+
+            // The hedge answered long before the slow first call would have
+            assertTrue(System.currentTimeMillis() - start < 2500);
+            assertEquals(2, calls.get());
+            assertTrue(result.getErrorMessage().contains("No response candidates"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testHedgedCallReportsOneOutcomeToCircuitBreaker() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            boolean first = calls.incrementAndGet() == 1;
+            try {
+                Thread.sleep(first ? 300 : 600);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // The first leg fails after the hedge was sent; the hedge then succeeds
+            respond(exchange, first ? 500 : 200, first ? "{\"error\":\"internal\"}" : "{\"candidates\":[]}");
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "hedgeEnabled", true);
+            ReflectionTestUtils.setField(geminiService, "hedgeMinSamples", 0);
+            ReflectionTestUtils.setField(geminiService, "hedgeMinDelayMs", 100L);
+
+            geminiService.extractContainerNumbers("hedged-image".getBytes(), "hedged.jpg", "image/jpeg");
+
+            assertEquals(2, calls.get());
+            assertEquals(1, circuitBreaker.snapshot().get("bufferedCalls"));
+            assertEquals(0.0, circuitBreaker.snapshot().get("failureRate"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testContextCachedPromptIsReferencedByName() throws Exception {
+        List<JsonNode> generateBodies = new CopyOnWriteArrayList<>();
+        AtomicInteger created = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            JsonNode body = requestJson(exchange);
+            if (exchange.getRequestURI().getPath().endsWith("/cachedContents")) {
+                created.incrementAndGet();
+                respond(exchange, 200, "{\"name\":\"cachedContents/prompt\",\"expireTime\":\""
+                    + Instant.now().plusSeconds(3600) + "\"}");
+            } else {
+                generateBodies.add(body);
+                respond(exchange, 200, "{\"candidates\":[]}");
+            }
+        });
+        try {
+            useContextCache(server);
+
+            geminiService.extractContainerNumbers("cached-1".getBytes(), "one.jpg", "image/jpeg", "EX123");
+            geminiService.extractContainerNumbers("cached-2".getBytes(), "two.jpg", "image/jpeg", "EX123");
+
+            // The prompt was uploaded once; both requests carry only the image and the cache name
+            assertEquals(1, created.get());
+            assertEquals(2, generateBodies.size());
+            for (JsonNode body : generateBodies) {
+                assertEquals("cachedContents/prompt", body.get("cachedContent").asText());
+                JsonNode parts = body.get("contents").get(0).get("parts");
+                assertEquals(1, parts.size());
+                assertTrue(parts.get(0).get("text").isNull());
+                assertEquals("image/jpeg", parts.get(0).get("inlineData").get("mimeType").asText());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testRejectedContextCacheIsRecreated() throws Exception {
+        List<String> generateCaches = new CopyOnWriteArrayList<>();
+        AtomicInteger created = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            JsonNode body = requestJson(exchange);
+            if (exchange.getRequestURI().getPath().endsWith("/cachedContents")) {
+                respond(exchange, 200, "{\"name\":\"cachedContents/c" + created.incrementAndGet() + "\"}");
+            } else {
+                String cache = body.path("cachedContent").asText();
+                generateCaches.add(cache);
+                // The first cache was deleted on Gemini's side
+                respond(exchange, cache.equals("cachedContents/c1") ? 404 : 200,
+                    cache.equals("cachedContents/c1") ? "{\"error\":\"CachedContent not found\"}" : "{\"candidates\":[]}");
+            }
+        });
+        try {
+            useContextCache(server);
+
+            OCRResultDTO result = geminiService.extractContainerNumbers("rejected".getBytes(), "gone.jpg", "image/jpeg");
+
+            assertEquals(List.of("cachedContents/c1", "cachedContents/c2"), generateCaches);
+            assertTrue(result.getErrorMessage().contains("No response candidates"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testUnrelatedForbiddenErrorKeepsContextCache() throws Exception {
+        List<String> generateCaches = new CopyOnWriteArrayList<>();
+        AtomicInteger created = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            JsonNode body = requestJson(exchange);
+            if (exchange.getRequestURI().getPath().endsWith("/cachedContents")) {
+                respond(exchange, 200, "{\"name\":\"cachedContents/c" + created.incrementAndGet() + "\"}");
+            } else {
+                generateCaches.add(body.path("cachedContent").asText());
+                respond(exchange, 403, "{\"error\":\"API key not valid\"}");
+            }
+        });
+        try {
+            useContextCache(server);
+
+            OCRResultDTO first = geminiService.extractContainerNumbers("forbidden-1".getBytes(), "one.jpg", "image/jpeg");
+            geminiService.extractContainerNumbers("forbidden-2".getBytes(), "two.jpg", "image/jpeg");
+
+            // Not a stale cache: no resend, and the cache is neither dropped nor recreated
+            assertFalse(first.getSuccess());
+            assertEquals(List.of("cachedContents/c1", "cachedContents/c1"), generateCaches);
+            assertEquals(1, created.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testMultiImageModePacksImagesIntoOneRequest() throws Exception {
+        List<JsonNode> bodies = new CopyOnWriteArrayList<>();
+        HttpServer server = startStubServer(exchange -> {
+            bodies.add(requestJson(exchange));
+            respond(exchange, 200, candidates("{\"images\": ["
+                + "{\"image\": 1, \"row1\": {\"1\": {\"number\": \"1000001\", \"confidence\": \"90%\"}}},"
+                + "{\"image\": 2, \"row1\": {\"1\": {\"number\": \"2000002\", \"confidence\": \"80%\"}}},"
+                + "{\"image\": 3, \"row1\": {\"1\": {\"number\": \"3000003\", \"confidence\": \"70%\"}}}]}"));
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "multiImageEnabled", true);
+            ReflectionTestUtils.setField(geminiService, "multiImageMaxImages", 4);
+
+            List<OCRResultDTO> results = geminiService.extractContainerNumbers(List.of(
+                batchImage("stack-a", "a.jpg"), batchImage("stack-b", "b.jpg"), batchImage("stack-c", "c.jpg")), "EX123");
+
+            assertEquals(1, bodies.size());
+            JsonNode parts = bodies.get(0).get("contents").get(0).get("parts");
+            assertEquals(7, parts.size()); // prompt, then a label and the image for each of the three
+            assertEquals("IMAGE 2", parts.get(3).get("text").asText());
+            assertEquals("ARRAY", bodies.get(0).get("generationConfig").get("responseSchema")
+                .get("properties").get("images").get("type").asText());
+            assertEquals(3, results.size());
+            for (int i = 0; i < 3; i++) {
+                assertTrue(results.get(i).getSuccess());
+                assertEquals((i + 1) + "00000" + (i + 1), results.get(i).getContainerNumbers().get(0).getNumber());
+            }
+            assertEquals("b.jpg", results.get(1).getFilename());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testUnparseableMultiImageResponseIsSplitIntoSingleRequests() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            JsonNode body = requestJson(exchange);
+            calls.incrementAndGet();
+            if (body.get("contents").get(0).get("parts").size() > 2) {
+                // Combined answer cut off part way through the second image
+                respond(exchange, 200, candidates("{\"images\": [{\"image\": 1, \"row1\": {}}, {\"image\": 2, \"ro"));
+            } else {
+                respond(exchange, 200, candidates("{\"row1\": {\"1\": {\"number\": \"5000005\", \"confidence\": \"85%\"}}}"));
+            }
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "multiImageEnabled", true);
+            ReflectionTestUtils.setField(geminiService, "multiImageMaxImages", 4);
+
+            List<OCRResultDTO> results = geminiService.extractContainerNumbers(List.of(
+                batchImage("split-a", "a.jpg"), batchImage("split-b", "b.jpg")), null);
+
+            // One combined request, then one request per image
+            assertEquals(3, calls.get());
+            assertTrue(results.get(0).getSuccess());
+            assertEquals("5000005", results.get(1).getContainerNumbers().get(0).getNumber());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testUnreadableTiffFailsInsteadOfBeingSentAsIs() throws Exception {
+        List<JsonNode> bodies = new CopyOnWriteArrayList<>();
+        HttpServer server = startStubServer(exchange -> {
+            bodies.add(requestJson(exchange));
+            respond(exchange, 200, candidates("{\"images\": ["
+                + "{\"image\": 1, \"row1\": {\"1\": {\"number\": \"1000001\", \"confidence\": \"90%\"}}},"
+                + "{\"image\": 2, \"row1\": {\"1\": {\"number\": \"2000002\", \"confidence\": \"80%\"}}}]}"));
+        });
+        try {
+            ReflectionTestUtils.setField(geminiService, "multiImageEnabled", true);
+            ReflectionTestUtils.setField(geminiService, "multiImageMaxImages", 4);
+            GeminiService.BatchImage tiff = new GeminiService.BatchImage(
+                new ByteArrayResource("not-really-a-tiff".getBytes()), null, "scan.tif", "image/tiff");
+
+            List<OCRResultDTO> results = geminiService.extractContainerNumbers(List.of(
+                batchImage("tiff-a", "a.jpg"), tiff, batchImage("tiff-b", "b.jpg")), null);
+
+            // The TIFF fails with a clear error; the other two still go out together
+            assertFalse(results.get(1).getSuccess());
+            assertTrue(results.get(1).getErrorMessage().contains("Could not convert image/tiff"));
+            assertEquals(1, bodies.size());
+            assertEquals(5, bodies.get(0).get("contents").get(0).get("parts").size());
+            assertFalse(bodies.get(0).toString().contains("image/tiff"));
+            assertEquals("2000002", results.get(2).getContainerNumbers().get(0).getNumber());
+
+            OCRResultDTO single = geminiService.extractContainerNumbers("not-a-bmp".getBytes(), "scan.bmp", "image/bmp");
+            assertFalse(single.getSuccess());
+            assertTrue(single.getErrorMessage().contains("Could not convert image/bmp"));
+            assertEquals(1, bodies.size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testOpenCircuitDefersWithoutCallingGemini() throws Exception {
+        // Opens after two failed calls
+        GeminiCircuitBreaker circuitBreaker = new GeminiCircuitBreaker(true, "queue", 4, 2, 50, 30000, 80,
+            60000, 1, meterRegistry);
+        geminiService = new GeminiService(webClient, objectMapper, extractionCache, rateLimiter, circuitBreaker,
+            contextCache, legacyOcrService, meterRegistry);
+        ReflectionTestUtils.setField(geminiService, "apiKey", "test-api-key");
+        ReflectionTestUtils.setField(geminiService, "retryMaxAttempts", 1);
+
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = startStubServer(exchange -> {
+            calls.incrementAndGet();
+            respond(exchange, 500, "{\"error\":\"internal\"}");
+        });
+        try {
+            geminiService.extractContainerNumbers("img-1".getBytes(), "one.jpg", "image/jpeg");
+            geminiService.extractContainerNumbers("img-2".getBytes(), "two.jpg", "image/jpeg");
+            assertEquals(GeminiCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+            OCRResultDTO result = geminiService.extractContainerNumbers("img-3".getBytes(), "three.jpg", "image/jpeg");
+
+            // Refused locally: no third request, and the caller is told to keep the image queued
+            assertEquals(2, calls.get());
+            assertFalse(result.getSuccess());
+            assertTrue(result.isDeferred());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testOpenCircuitFallsBackToLegacyService() {
+        GeminiCircuitBreaker circuitBreaker = new GeminiCircuitBreaker(true, "legacy", 4, 1, 50, 30000, 80,
+            60000, 1, meterRegistry);
+        circuitBreaker.onFailure(10);
+        geminiService = new GeminiService(webClient, objectMapper, extractionCache, rateLimiter, circuitBreaker,
+            contextCache, legacyOcrService, meterRegistry);
+        OCRResultDTO legacyResult = new OCRResultDTO();
+        legacyResult.setSuccess(true);
+        when(legacyOcrService.extractContainerNumbers(any(), eq("legacy.jpg"))).thenReturn(legacyResult);
+
+        OCRResultDTO result = geminiService.extractContainerNumbers("img".getBytes(), "legacy.jpg", "image/jpeg");
+
+        assertTrue(result.getSuccess());
+        assertEquals("legacy.jpg", result.getFilename());
+        assertEquals(1.0, meterRegistry.get("gemini.fallback").tag("mode", "legacy").counter().count());
+    }
+
+    private static GeminiService.BatchImage batchImage(String content, String filename) {
+        return new GeminiService.BatchImage(new ByteArrayResource(content.getBytes()), null, filename, "image/jpeg");
+    }
+
+    private String candidates(String text) throws IOException {
+        return "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":" + objectMapper.writeValueAsString(text) + "}]}}]}";
+    }
+
+    private void useContextCache(HttpServer server) {
+        contextCache = new GeminiContextCache(webClient,
+            "http://localhost:" + server.getAddress().getPort() + "/v1beta/models/test:generateContent",
+            "test-api-key", true, 3600, 300, 600, 10, 2000, 5000, rateLimiter, circuitBreaker, meterRegistry);
+        ReflectionTestUtils.setField(geminiService, "contextCache", contextCache);
+    }
+
+    private HttpServer startStubServer(HttpHandler handler) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", handler);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        ReflectionTestUtils.setField(geminiService, "apiUrl",
+            "http://localhost:" + server.getAddress().getPort() + "/v1beta/models/test:generateContent");
+        return server;
+    }
+
+    /**
+     * Parse the request body from its bytes; readTree(InputStream) would close the exchange stream
+     */
+    private JsonNode requestJson(HttpExchange exchange) throws IOException {
+        return objectMapper.readTree(exchange.getRequestBody().readAllBytes());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
 }
@@ -0,0 +1,64 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.ipter.model.Image;
+import com.ipter.model.Project;
+import com.ipter.model.User;
+import com.ipter.model.UserRole;
+import com.ipter.repository.ImageRepository;
+import com.ipter.repository.ProjectRepository;
+import com.ipter.repository.UserRepository;
+
+/**
+ * Thumbnails go away with their image, whether it is deleted directly or with its project
+ * (not transactional on purpose: cleanup runs after the delete commits)
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ImageDeletionTest {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${file.thumbnails.dir:./thumbnails}")
+    private String thumbnailsDir;
+
+    @Test
+    void testThumbnailsDeletedWithImageAndProject() throws Exception {
+        User user = userRepository.save(new User("deleter", "deleter", "deleter@test.com", "password", UserRole.USER));
+        Project project = projectRepository.save(new Project("Deleting", null, user));
+        Image single = imageRepository.save(new Image("a.jpg", "/nonexistent/a.jpg", "image/jpeg", 100L, project, user));
+        Image cascaded = imageRepository.save(new Image("b.jpg", "/nonexistent/b.jpg", "image/jpeg", 100L, project, user));
+        Path singleDir = writeThumbnail(single);
+        Path cascadedDir = writeThumbnail(cascaded);
+
+        imageRepository.deleteById(single.getId());
+        assertFalse(Files.exists(singleDir));
+
+        projectRepository.deleteById(project.getId());
+        assertFalse(Files.exists(cascadedDir));
+    }
+
+    private Path writeThumbnail(Image image) throws Exception {
+        Path dir = Files.createDirectories(Paths.get(thumbnailsDir).resolve(image.getId().toString()));
+        Files.write(dir.resolve("small.jpg"), new byte[] {1, 2, 3});
+        return dir;
+    }
+}
@@ -0,0 +1,116 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ipter.dto.ImageListFilter;
+import com.ipter.dto.ImagePageResponse;
+import com.ipter.model.Image;
+import com.ipter.model.ProcessingStatus;
+import com.ipter.model.Project;
+import com.ipter.model.User;
+import com.ipter.model.UserRole;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Keyset pagination of project image listings against the real query
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class ImageListingPaginationTest {
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Project project;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User("pager", "pager", "pager@test.com", "password", UserRole.USER);
+        entityManager.persist(user);
+        project = new Project("Paging", null, user);
+        entityManager.persist(project);
+
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (int i = 0; i < 7; i++) {
+            Image image = new Image("img" + i + ".jpg", "/tmp/img" + i + ".jpg", "image/jpeg", 100L, project, user);
+            // Pairs share an upload time so the id tie-breaker is exercised
+            image.setUploadedAt(base.plusMinutes(i / 2));
+            image.setProcessingStatus(i % 3 == 0 ? ProcessingStatus.FAILED : ProcessingStatus.COMPLETED);
+            image.setConfidence(i / 10.0);
+            image.setVerified(i % 2 == 0);
+            entityManager.persist(image);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void testPagesCoverAllImagesOnceInOrder() {
+        List<UUID> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ImagePageResponse page = imageService.getProjectImagesPage(
+                project.getId(), new ImageListFilter(), cursor, 3, pages == 0, false);
+            page.getImages().forEach(image -> seen.add(image.getImageId()));
+            if (pages == 0) {
+                assertEquals(7L, page.getTotalCount());
+            } else {
+                assertNull(page.getTotalCount());
+            }
+            cursor = page.getNextCursor();
+            assertEquals(cursor != null, page.isHasMore());
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(7, seen.size());
+        // Same order as one big page: paging neither skips nor repeats images with equal upload times
+        List<UUID> singlePage = imageService.getProjectImagesPage(project.getId(), new ImageListFilter(), null, 500, false, false)
+            .getImages().stream().map(image -> image.getImageId()).toList();
+        assertEquals(singlePage, seen);
+    }
+
+    @Test
+    void testFiltersAppliedInDatabase() {
+        ImageListFilter filter = new ImageListFilter(ProcessingStatus.COMPLETED, true, 0.15, 0.5);
+
+        ImagePageResponse page = imageService.getProjectImagesPage(project.getId(), filter, null, 50, true, false);
+
+        // Images 2 and 4: completed, verified, confidence 0.2 and 0.4
+        assertEquals(2, page.getImages().size());
+        assertEquals(2L, page.getTotalCount());
+        assertFalse(page.isHasMore());
+        page.getImages().forEach(image -> {
+            assertEquals(ProcessingStatus.COMPLETED, image.getProcessingStatus());
+            assertTrue(image.isVerified());
+        });
+    }
+
+    @Test
+    void testInvalidCursorRejected() {
+        assertThrows(IllegalArgumentException.class, () -> imageService.getProjectImagesPage(
+            project.getId(), new ImageListFilter(), "not-a-cursor", 10, false, false));
+    }
+}
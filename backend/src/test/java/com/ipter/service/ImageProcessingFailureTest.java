@@ -0,0 +1,59 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.ipter.model.Image;
+import com.ipter.model.ProcessingStatus;
+import com.ipter.model.Project;
+import com.ipter.model.User;
+import com.ipter.model.UserRole;
+import com.ipter.repository.ImageRepository;
+import com.ipter.repository.ProjectRepository;
+import com.ipter.repository.UserRepository;
+
+/**
+ * A processing failure must be committed even though processImage rethrows it
+ * (not transactional on purpose: the test has to see what was actually committed)
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ImageProcessingFailureTest {
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void testFailedStatusSurvivesRethrow() {
+        User user = userRepository.save(new User("failer", "failer", "failer@test.com", "password", UserRole.USER));
+        Project project = projectRepository.save(new Project("Failing", null, user));
+        Image image = imageRepository.save(
+            new Image("gone.jpg", "/nonexistent/ipter/gone.jpg", "image/jpeg", 100L, project, user));
+        UUID imageId = image.getId();
+
+        assertThrows(RuntimeException.class, () -> imageService.processImage(imageId));
+
+        Image reloaded = imageRepository.findById(imageId).orElseThrow();
+        assertEquals(ProcessingStatus.FAILED, reloaded.getProcessingStatus());
+        assertTrue(reloaded.getErrorMessage().contains("Image file not found"));
+        assertNull(reloaded.getProcessingStartedAt());
+    }
+}
@@ -0,0 +1,183 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ipter.model.Image;
+import com.ipter.model.ProcessingStatus;
+import com.ipter.model.Project;
+import com.ipter.model.User;
+import com.ipter.model.UserRole;
+import com.ipter.repository.ImageRepository;
+import com.ipter.repository.ProjectRepository;
+import com.ipter.repository.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Queue claims and recovery against the real images table. Uses its own database, and the
+ * application's own dispatcher is kept idle, so only the queue under test touches the rows
+ * (not transactional on purpose: every claim and recovery commits on its own, as in production).
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:queuetest",
+    "image.processing.queue.poll-interval-ms=3600000",
+    "image.processing.queue.stale-check-interval-ms=3600000"
+})
+@ActiveProfiles("test")
+class ImageProcessingQueueServiceTest {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private ImageService imageService;
+    private GeminiCircuitBreaker circuitBreaker;
+    private ImageProcessingQueueService queue;
+    private User user;
+    private Project project;
+
+    @BeforeEach
+    void setUp() {
+        imageService = mock(ImageService.class);
+        circuitBreaker = new GeminiCircuitBreaker(true, "queue", 2, 1, 50, 30000, 80, 60000, 1, new SimpleMeterRegistry());
+        // Two attempts, stale after ten minutes
+        queue = new ImageProcessingQueueService(imageRepository, imageService, circuitBreaker, 2, 10, 2, 10);
+        user = userRepository.save(new User("queuer", "queuer", "queuer@test.com", "password", UserRole.USER));
+        project = projectRepository.save(new Project("Queue", null, user));
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.shutdown();
+        imageRepository.deleteAll();
+        projectRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void testQueuedImageIsClaimedOnceAndProcessed() throws Exception {
+        Image queued = save(ProcessingStatus.PENDING, LocalDateTime.now().minusMinutes(1), 0, null);
+
+        queue.dispatch();
+
+        verify(imageService, timeout(5000)).processImage(queued.getId());
+        Image claimed = reload(queued);
+        assertEquals(ProcessingStatus.PROCESSING, claimed.getProcessingStatus());
+        assertEquals(1, claimed.getProcessingAttempts());
+        // A second dispatcher (e.g. another instance) cannot claim the same row
+        assertEquals(0, imageRepository.claimForProcessing(queued.getId(), LocalDateTime.now()));
+    }
+
+    @Test
+    void testImagesUploadedWithoutProcessingAreIgnored() throws Exception {
+        Image notQueued = save(ProcessingStatus.PENDING, null, 0, null);
+
+        queue.dispatch();
+
+        assertEquals(0, imageRepository.claimForProcessing(notQueued.getId(), LocalDateTime.now()));
+        Image reloaded = reload(notQueued);
+        assertEquals(ProcessingStatus.PENDING, reloaded.getProcessingStatus());
+        assertEquals(0, reloaded.getProcessingAttempts());
+        verify(imageService, never()).processImage(any());
+    }
+
+    @Test
+    void testOpenCircuitPausesDispatch() throws Exception {
+        Image queued = save(ProcessingStatus.PENDING, LocalDateTime.now().minusMinutes(1), 0, null);
+        circuitBreaker.tryAcquirePermission();
+        circuitBreaker.onFailure(10);
+        assertTrue(circuitBreaker.isQueuePaused());
+
+        queue.dispatch();
+
+        assertEquals(ProcessingStatus.PENDING, reload(queued).getProcessingStatus());
+        verify(imageService, never()).processImage(any());
+    }
+
+    @Test
+    void testRejectedJobReleasesItsClaim() throws Exception {
+        Image queued = save(ProcessingStatus.PENDING, LocalDateTime.now().minusMinutes(1), 0, null);
+        ((ThreadPoolExecutor) ReflectionTestUtils.getField(queue, "executor")).shutdown();
+
+        queue.dispatch();
+
+        // Back on the queue, without having used up an attempt
+        Image reloaded = reload(queued);
+        assertEquals(ProcessingStatus.PENDING, reloaded.getProcessingStatus());
+        assertEquals(0, reloaded.getProcessingAttempts());
+        assertEquals(0, queue.getInFlightCount());
+    }
+
+    @Test
+    void testStuckImageIsRequeuedUntilAttemptsRunOut() throws Exception {
+        Image stuck = save(ProcessingStatus.PROCESSING, LocalDateTime.now().minusMinutes(40), 1,
+            LocalDateTime.now().minusMinutes(30));
+
+        // Attempt 1 was interrupted: re-queued and claimed again as attempt 2
+        queue.recoverInterruptedJobs();
+        verify(imageService, timeout(5000)).processImage(stuck.getId());
+        Image retried = reload(stuck);
+        assertEquals(ProcessingStatus.PROCESSING, retried.getProcessingStatus());
+        assertEquals(2, retried.getProcessingAttempts());
+
+        // Attempt 2 is interrupted as well, and there are no attempts left
+        retried.setProcessingStartedAt(LocalDateTime.now().minusMinutes(30));
+        imageRepository.save(retried);
+        queue.requeueStaleJobs();
+
+        Image failed = reload(stuck);
+        assertEquals(ProcessingStatus.FAILED, failed.getProcessingStatus());
+        assertNull(failed.getQueuedAt());
+        assertTrue(failed.getErrorMessage().contains("interrupted 2 time(s)"));
+    }
+
+    @Test
+    void testStartupLeavesRecentlyClaimedImagesAlone() throws Exception {
+        // Possibly still running on another instance during a rolling deploy
+        Image recent = save(ProcessingStatus.PROCESSING, LocalDateTime.now().minusMinutes(2), 1,
+            LocalDateTime.now().minusMinutes(1));
+
+        queue.recoverInterruptedJobs();
+
+        Image reloaded = reload(recent);
+        assertEquals(ProcessingStatus.PROCESSING, reloaded.getProcessingStatus());
+        assertEquals(1, reloaded.getProcessingAttempts());
+        verify(imageService, never()).processImage(any());
+    }
+
+    private Image save(ProcessingStatus status, LocalDateTime queuedAt, int attempts, LocalDateTime startedAt) {
+        Image image = new Image("queued.jpg", "/nonexistent/ipter/queued.jpg", "image/jpeg", 100L, project, user);
+        image.setProcessingStatus(status);
+        image.setQueuedAt(queuedAt);
+        image.setProcessingAttempts(attempts);
+        image.setProcessingStartedAt(startedAt);
+        return imageRepository.save(image);
+    }
+
+    private Image reload(Image image) {
+        return imageRepository.findById(image.getId()).orElseThrow();
+    }
+}
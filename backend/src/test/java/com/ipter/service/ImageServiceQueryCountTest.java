@@ -0,0 +1,111 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ipter.dto.ImageProcessingResponse;
+import com.ipter.dto.SerialNumberUpdateRequest;
+import com.ipter.model.ExtractedData;
+import com.ipter.model.ExtractionType;
+import com.ipter.model.Image;
+import com.ipter.model.Project;
+import com.ipter.model.User;
+import com.ipter.model.UserRole;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Guards against per-row statements: per-image queries when listing images with their
+ * container numbers, and per-row INSERTs when saving extracted data
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    // Keep the background queue from issuing statements while we count
+    "image.processing.queue.poll-interval-ms=3600000",
+    "image.processing.queue.stale-check-interval-ms=3600000"
+})
+@Transactional
+class ImageServiceQueryCountTest {
+
+    private static final int IMAGE_COUNT = 25;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void testVerifiedProjectImagesUseConstantNumberOfStatements() {
+        User user = new User("counter", "counter", "counter@test.com", "password", UserRole.USER);
+        entityManager.persist(user);
+        Project project = new Project("Query count", null, user);
+        entityManager.persist(project);
+        List<UUID> imageIds = new ArrayList<>();
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            Image image = new Image("img" + i + ".jpg", "/tmp/img" + i + ".jpg", "image/jpeg", 100L, project, user);
+            image.setVerified(true);
+            entityManager.persist(image);
+            entityManager.persist(new ExtractedData(image, "text", "ABCU000000" + (i % 10), 0.9, ExtractionType.CONTAINER_NUMBER));
+            entityManager.persist(new ExtractedData(image, "text", "DEFU000000" + (i % 10), 0.8, ExtractionType.CONTAINER_NUMBER));
+            imageIds.add(image.getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<ImageProcessingResponse> images = imageService.getVerifiedProjectImages(project.getId());
+
+        assertEquals(IMAGE_COUNT, images.size());
+        images.forEach(image -> assertEquals(2, image.getContainerNumbers().size()));
+        // One query for the images, one for all their container numbers
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testSerialNumberUpdatesInsertedAsOneBatch() {
+        User user = new User("batcher", "batcher", "batcher@test.com", "password", UserRole.USER);
+        entityManager.persist(user);
+        Project project = new Project("Batching", null, user);
+        entityManager.persist(project);
+        Image image = new Image("img.jpg", "/tmp/img.jpg", "image/jpeg", 100L, project, user);
+        entityManager.persist(image);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<SerialNumberUpdateRequest.SerialNumberUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            updates.add(new SerialNumberUpdateRequest.SerialNumberUpdate(i / 6, i % 6, "ABCU00000" + (10 + i), true, "95%"));
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        imageService.updateSerialNumbers(new SerialNumberUpdateRequest(image.getId(), project.getId(), updates));
+        entityManager.flush();
+
+        assertEquals(30, statistics.getEntityInsertCount());
+        // Image and project lookups, one batched INSERT statement, the image UPDATE
+        assertEquals(4, statistics.getPrepareStatementCount());
+    }
+}
@@ -25,6 +25,7 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -136,7 +137,7 @@ class ImageVerificationTest {
 
         List<Image> verifiedImages = Arrays.asList(verifiedImage);
         when(imageRepository.findByProjectIdAndIsVerified(projectId, true)).thenReturn(verifiedImages);
-        when(extractedDataRepository.findByImageId(any(UUID.class))).thenReturn(Arrays.asList());
+        when(extractedDataRepository.findContainerRowsByImageIds(anyCollection())).thenReturn(Arrays.asList());
 
         // When
         List<ImageProcessingResponse> result = imageService.getVerifiedProjectImages(projectId);
@@ -153,7 +154,7 @@ class ImageVerificationTest {
         // Given
         List<Image> unverifiedImages = Arrays.asList(testImage);
         when(imageRepository.findByIsVerified(false)).thenReturn(unverifiedImages);
-        when(extractedDataRepository.findByImageId(any(UUID.class))).thenReturn(Arrays.asList());
+        when(extractedDataRepository.findContainerRowsByImageIds(anyCollection())).thenReturn(Arrays.asList());
 
         // When
         List<ImageProcessingResponse> result = imageService.getImagesByVerificationStatus(false);
@@ -0,0 +1,86 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.ipter.model.MasterData;
+import com.ipter.model.Project;
+import com.ipter.repository.MasterDataRepository;
+
+@ExtendWith(MockitoExtension.class)
+class MasterDataBulkWriterTest {
+
+    @Mock
+    private MasterDataRepository masterDataRepository;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Test
+    void testSmallListsUseBatchedSaveAll() {
+        MasterDataBulkWriter writer = new MasterDataBulkWriter(masterDataRepository, dataSource, 5000);
+        List<MasterData> rows = List.of(new MasterData(new Project(), "ABCU1234567"));
+
+        writer.insertAll(rows);
+
+        verify(masterDataRepository).saveAll(rows);
+    }
+
+    @Test
+    void testPositionUpdateKeepsValidationState() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:positions;DB_CLOSE_DELAY=-1");
+        UUID projectId = UUID.randomUUID();
+        JdbcTemplate jdbc = new JdbcTemplate(h2);
+        jdbc.execute("CREATE TABLE master_data (project_id UUID, container_number VARCHAR(255), line_number INT, "
+            + "page_number INT, confidence_score DOUBLE PRECISION, raw_text VARCHAR(10000), is_validated BOOLEAN, "
+            + "updated_at TIMESTAMP)");
+        jdbc.update("INSERT INTO master_data VALUES (?, 'ABCU1234567', 5, 2, 50.0, 'old', TRUE, NULL)", projectId);
+
+        Project project = new Project();
+        project.setId(projectId);
+        MasterData moved = new MasterData(project, "ABCU1234567");
+        moved.setLineNumber(1);
+        moved.setPageNumber(1);
+        moved.setConfidenceScore(99.0);
+        moved.setRawText("new");
+        new MasterDataBulkWriter(masterDataRepository, h2, 5000).updatePositions(projectId, List.of(moved));
+
+        Map<String, Object> row = jdbc.queryForMap("SELECT * FROM master_data WHERE container_number = 'ABCU1234567'");
+        assertEquals(1, row.get("LINE_NUMBER"));
+        assertEquals(1, row.get("PAGE_NUMBER"));
+        assertEquals("new", row.get("RAW_TEXT"));
+        assertEquals(true, row.get("IS_VALIDATED"));
+        jdbc.execute("DROP TABLE master_data");
+    }
+
+    @Test
+    void testCsvLineQuotesTextAndLeavesNullsEmpty() {
+        Project project = new Project();
+        project.setId(UUID.fromString("00000000-0000-0000-0000-000000000002"));
+        MasterData row = new MasterData(project, "ABCU1234567");
+        row.setId(UUID.fromString("00000000-0000-0000-0000-000000000001"));
+        row.setLineNumber(7);
+        row.setRawText("line \"one\",\nline two");
+        row.setCreatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        row.setUpdatedAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+
+        assertEquals("00000000-0000-0000-0000-000000000001,00000000-0000-0000-0000-000000000002,\"ABCU1234567\",7,,,"
+                + "\"line \"\"one\"\",\nline two\",false,,false,0,2024-01-02T03:04:05,2024-01-02T03:04:05\n",
+            MasterDataBulkWriter.toCsvLine(row));
+    }
+}
@@ -0,0 +1,187 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.ipter.dto.OCRResultDTO;
+
+@ExtendWith(MockitoExtension.class)
+class PdfMasterDataExtractorTest {
+
+    @Mock
+    private GeminiService geminiService;
+
+    @TempDir
+    Path tempDir;
+
+    private PdfMasterDataExtractor extractor;
+
+    @AfterEach
+    void tearDown() {
+        if (extractor != null) {
+            extractor.shutdown();
+        }
+    }
+
+    @Test
+    void testTextPagesReadLocallyAndScannedPagesSentPerChunk() throws IOException {
+        // Pages 1 and 4 carry text; pages 2 and 3 are "scanned" (no text layer)
+        Path pdf = writePdf("Manifest MSKU1234565 and MSCU7654329 on page one", null, null,
+            "Last page TCNU1112227 end of manifest");
+        when(geminiService.extractContainerNumbersFromPdf(any(byte[].class), anyString(), eq("CSQU3054383"), eq(false)))
+            .thenReturn(ocr("9000001"), ocr("9000002"));
+        extractor = new PdfMasterDataExtractor(geminiService, 1, 2, 10, 0.5);
+
+        PdfMasterDataExtractor.Result result = extractor.extract(pdf, "CSQU3054383");
+
+        ArgumentCaptor<byte[]> chunks = ArgumentCaptor.forClass(byte[].class);
+        verify(geminiService, times(2)).extractContainerNumbersFromPdf(chunks.capture(), anyString(), eq("CSQU3054383"), eq(false));
+        for (byte[] chunk : chunks.getAllValues()) {
+            try (PDDocument document = PDDocument.load(chunk)) {
+                assertEquals(1, document.getNumberOfPages());
+            }
+        }
+
+        List<PdfMasterDataExtractor.Item> items = result.getItems();
+        assertEquals(List.of("MSKU1234565", "MSCU7654329", "TCNU1112227"),
+            items.stream().filter(i -> i.getConfidence() == 99.0).map(PdfMasterDataExtractor.Item::getNumber).collect(Collectors.toList()));
+        assertEquals(List.of(1, 1, 2, 3, 4),
+            items.stream().map(PdfMasterDataExtractor.Item::getPageNumber).collect(Collectors.toList()));
+        assertEquals(2, result.getTextPages());
+        assertEquals(2, result.getScannedPages());
+        assertTrue(result.getErrors().isEmpty());
+    }
+
+    @Test
+    void testFailedChunkReportedWithoutDroppingOtherPages() throws IOException {
+        Path pdf = writePdf(null, "Only text page with number MSKU1234565 on it");
+        OCRResultDTO failed = new OCRResultDTO();
+        failed.setSuccess(false);
+        failed.setErrorMessage("PDF extraction failed: timeout");
+        when(geminiService.extractContainerNumbersFromPdf(any(byte[].class), anyString(), eq("CSQU3054383"), eq(false)))
+            .thenReturn(failed);
+        extractor = new PdfMasterDataExtractor(geminiService, 1, 2, 10, 0.5);
+
+        PdfMasterDataExtractor.Result result = extractor.extract(pdf, "CSQU3054383");
+
+        assertEquals(1, result.getItems().size());
+        assertEquals(2, result.getItems().get(0).getPageNumber());
+        assertEquals(List.of("Page 1: PDF extraction failed: timeout"), result.getErrors());
+    }
+
+    @Test
+    void testTextPagesGoToGeminiWithoutIsoExample() throws IOException {
+        // Without an ISO example nothing on the page can be validated locally
+        Path pdf = writePdf("Manifest 1234567 and ABC-12345 on page one, dated 20240115");
+        when(geminiService.extractContainerNumbersFromPdf(any(byte[].class), anyString(), eq(null), eq(false)))
+            .thenReturn(ocr("1234567"));
+        when(geminiService.extractContainerNumbersFromPdf(any(byte[].class), anyString(), eq("XYZ-98765"), eq(false)))
+            .thenReturn(ocr("ABC-12345"));
+        extractor = new PdfMasterDataExtractor(geminiService, 1, 2, 10, 0.5);
+
+        PdfMasterDataExtractor.Result noExample = extractor.extract(pdf, null);
+        PdfMasterDataExtractor.Result nonIsoExample = extractor.extract(pdf, "XYZ-98765");
+
+        assertEquals(0, noExample.getTextPages());
+        assertEquals(List.of("1234567"),
+            noExample.getItems().stream().map(PdfMasterDataExtractor.Item::getNumber).collect(Collectors.toList()));
+        assertEquals(0, nonIsoExample.getTextPages());
+        assertEquals(List.of("ABC-12345"),
+            nonIsoExample.getItems().stream().map(PdfMasterDataExtractor.Item::getNumber).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testNumericNoiseOnTmsPageIsNotAccepted() {
+        PdfMasterDataExtractor.Result result = PdfMasterDataExtractor.extractFromText(
+            "Shipment 20240115 PO 45000123 Invoice 7788991 Tel 0298765432 Postcode 2000\n"
+            + "CSQU3054383 TGHU8833443 order 123456", 1);
+
+        assertEquals(List.of("CSQU3054383", "TGHU8833443"),
+            result.getItems().stream().map(PdfMasterDataExtractor.Item::getNumber).collect(Collectors.toList()));
+        // The noise still counts against the yield, so a noisy page is handed to Gemini
+        assertTrue(result.isLowYield(0.5));
+    }
+
+    @Test
+    void testIsoNumbersNeedValidCheckDigit() {
+        PdfMasterDataExtractor.Result result = PdfMasterDataExtractor.extractFromText(
+            "CSQU 305438 3  MSKU-1234560\nTGHU8833443 lot 7654321", 1);
+
+        assertEquals(List.of("CSQU3054383", "TGHU8833443"),
+            result.getItems().stream().map(PdfMasterDataExtractor.Item::getNumber).collect(Collectors.toList()));
+        assertTrue(result.isLowYield(0.9));
+        assertFalse(result.isLowYield(0.5));
+    }
+
+    @Test
+    void testLowYieldTextPageFallsBackToGemini() throws IOException {
+        // Garbled text layer: every container number fails its check digit
+        Path pdf = writePdf("CSQU3054384 TGHU8833442 MSKU1234561 manifest continued");
+        when(geminiService.extractContainerNumbersFromPdf(any(byte[].class), anyString(), eq("CSQU3054383"), eq(false)))
+            .thenReturn(ocr("CSQU3054383"));
+        extractor = new PdfMasterDataExtractor(geminiService, 1, 2, 10, 0.5);
+
+        PdfMasterDataExtractor.Result result = extractor.extract(pdf, "CSQU3054383");
+
+        assertEquals(0, result.getTextPages());
+        assertEquals(1, result.getLowYieldPages());
+        assertEquals("CSQU3054383", result.getItems().get(0).getNumber());
+        assertEquals(88.0, result.getItems().get(0).getConfidence());
+    }
+
+    private Path writePdf(String... pageTexts) throws IOException {
+        Path file = tempDir.resolve("manifest.pdf");
+        try (PDDocument document = new PDDocument()) {
+            for (String text : pageTexts) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                if (text != null) {
+                    try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                        content.beginText();
+                        content.setFont(PDType1Font.HELVETICA, 12);
+                        content.newLineAtOffset(50, 700);
+                        content.showText(text);
+                        content.endText();
+                    }
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    private OCRResultDTO ocr(String number) {
+        OCRResultDTO.ContainerNumberDTO dto = new OCRResultDTO.ContainerNumberDTO();
+        dto.setNumber(number);
+        dto.setConfidence(88.0);
+        OCRResultDTO result = new OCRResultDTO();
+        result.setSuccess(true);
+        result.setContainerNumbers(List.of(dto));
+        result.setExtractedText(number + " (88%)");
+        return result;
+    }
+}
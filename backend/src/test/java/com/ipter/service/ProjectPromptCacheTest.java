@@ -0,0 +1,127 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.ipter.event.MasterDataChangedEvent;
+import com.ipter.event.ProjectUpdatedEvent;
+import com.ipter.model.Project;
+import com.ipter.repository.MasterDataRepository;
+import com.ipter.repository.ProjectRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ProjectPromptCacheTest {
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private MasterDataRepository masterDataRepository;
+
+    private MasterDataIndexService masterDataIndexService;
+    private ProjectPromptCache promptCache;
+    private UUID projectId;
+    private Project project;
+
+    @BeforeEach
+    void setUp() {
+        projectId = UUID.randomUUID();
+        project = new Project();
+        project.setId(projectId);
+        masterDataIndexService = new MasterDataIndexService(masterDataRepository, 10);
+        promptCache = new ProjectPromptCache(projectRepository, masterDataIndexService, 10);
+    }
+
+    @Test
+    void testConfiguredExampleIsCachedWithoutTouchingMasterData() {
+        project.setExampleContainerNumber(" ABCU1234567 ");
+        when(projectRepository.findById(projectId)).thenReturn(Optional.of(project));
+
+        assertEquals("ABCU1234567", promptCache.getExampleNumber(projectId));
+        assertEquals("ABCU1234567", promptCache.getExampleNumber(projectId));
+
+        verify(projectRepository, times(1)).findById(projectId);
+        verify(masterDataRepository, never()).findContainerNumbersByProjectId(projectId);
+    }
+
+    @Test
+    void testSampledExamplesStayStableUntilMasterDataChanges() {
+        List<String> master = List.of("A1", "B2", "C3", "D4", "E5", "F6");
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(master);
+
+        String first = promptCache.getExampleNumber(project);
+        assertEquals(ProjectPromptCache.EXAMPLE_COUNT, first.split(", ").length);
+        assertTrue(master.containsAll(List.of(first.split(", "))));
+        assertEquals(first, promptCache.getExampleNumber(project));
+        verify(masterDataRepository, times(1)).findContainerNumbersByProjectId(projectId);
+
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(List.of("Z9"));
+        masterDataIndexService.onMasterDataChanged(new MasterDataChangedEvent(projectId));
+
+        assertEquals("Z9", promptCache.getExampleNumber(project));
+    }
+
+    @Test
+    void testProjectUpdateDropsEntry() {
+        project.setExampleContainerNumber("OLD123");
+        assertEquals("OLD123", promptCache.getExampleNumber(project));
+
+        project.setExampleContainerNumber("NEW456");
+        assertEquals("OLD123", promptCache.getExampleNumber(project));
+        promptCache.onProjectUpdated(new ProjectUpdatedEvent(projectId));
+
+        assertEquals("NEW456", promptCache.getExampleNumber(project));
+    }
+
+    @Test
+    void testNoExampleAndNoMasterData() {
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(List.of());
+
+        assertNull(promptCache.getExampleNumber(project));
+        assertNull(promptCache.getExampleNumber(project));
+        verify(masterDataRepository, times(1)).findContainerNumbersByProjectId(projectId);
+    }
+
+    @Test
+    void testReservoirSampleIsUniformAndSkipsBlanks() {
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            numbers.add("N" + i);
+        }
+        numbers.add(" ");
+        MasterDataIndex index = new MasterDataIndex(numbers, 0);
+
+        Random random = new Random(7);
+        int[] hits = new int[10];
+        for (int run = 0; run < 10_000; run++) {
+            List<String> sample = index.sample(3, random);
+            assertEquals(3, new HashSet<>(sample).size());
+            for (String number : sample) {
+                hits[Integer.parseInt(number.substring(1))]++;
+            }
+        }
+        // Each number is expected in 3/10 of the samples
+        for (int hit : hits) {
+            assertTrue(hit > 2700 && hit < 3300, "hits: " + hit);
+        }
+        assertEquals(List.of("N0", "N1"), new MasterDataIndex(List.of("N0", "", "N1"), 0).sample(3, random));
+    }
+}
@@ -0,0 +1,131 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.ipter.dto.ProcessPdfRequest;
+import com.ipter.dto.ProcessPdfResponse;
+import com.ipter.model.MasterData;
+import com.ipter.model.Project;
+import com.ipter.repository.MasterDataRepository;
+import com.ipter.repository.ProjectRepository;
+
+/**
+ * Reprocessing a PDF writes only the difference against the stored master data
+ */
+@ExtendWith(MockitoExtension.class)
+class ProjectServiceReprocessTest {
+
+    @Mock
+    private ProjectRepository projectRepository;
+
+    @Mock
+    private MasterDataRepository masterDataRepository;
+
+    @Mock
+    private MasterDataBulkWriter masterDataBulkWriter;
+
+    @Mock
+    private PdfMasterDataExtractor pdfMasterDataExtractor;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private ProjectService projectService;
+
+    @TempDir
+    Path tempDir;
+
+    private Project project;
+    private ProcessPdfRequest request;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        project = new Project();
+        project.setId(UUID.randomUUID());
+        project.setName("Reprocess");
+        project.setMasterDataProcessed(true);
+        when(projectRepository.findById(project.getId())).thenReturn(Optional.of(project));
+        when(masterDataRepository.findContainerNumbersByProjectId(project.getId()))
+            .thenReturn(List.of("AAAU1111111", "BBBU2222222", "CCCU3333333"));
+
+        request = new ProcessPdfRequest(project.getId());
+        request.setForceReprocess(true);
+        request.setPdfFilePath(Files.createFile(tempDir.resolve("manifest.pdf")).toString());
+    }
+
+    @Test
+    void testReprocessAppliesOnlyTheDelta() throws Exception {
+        when(pdfMasterDataExtractor.extract(any(), any(), eq(true))).thenReturn(extraction("aaau 1111111", "CCCU3333333", "DDDU4444444"));
+
+        ProcessPdfResponse response = projectService.processPdfFile(request);
+
+        verify(masterDataRepository).deleteByProjectIdAndContainerNumberIn(project.getId(), List.of("BBBU2222222"));
+        verify(masterDataRepository, never()).deleteByProject(any());
+        ArgumentCaptor<List<MasterData>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(masterDataBulkWriter).insertAll(inserted.capture());
+        assertEquals(List.of("DDDU4444444"),
+            inserted.getValue().stream().map(MasterData::getContainerNumber).collect(Collectors.toList()));
+        assertEquals(3, inserted.getValue().get(0).getLineNumber());
+        // Kept rows move to their position in the reprocessed document, under their stored number
+        ArgumentCaptor<List<MasterData>> kept = ArgumentCaptor.forClass(List.class);
+        verify(masterDataBulkWriter).updatePositions(eq(project.getId()), kept.capture());
+        assertEquals(List.of("AAAU1111111", "CCCU3333333"),
+            kept.getValue().stream().map(MasterData::getContainerNumber).collect(Collectors.toList()));
+        assertEquals(List.of(1, 2),
+            kept.getValue().stream().map(MasterData::getLineNumber).collect(Collectors.toList()));
+
+        assertEquals(3, response.getExtractedCount());
+        assertEquals(1, response.getAddedCount());
+        assertEquals(1, response.getRemovedCount());
+        assertEquals(2, response.getUnchangedCount());
+        assertEquals(3, project.getMasterDataCount());
+    }
+
+    @Test
+    void testNothingRemovedWhenPagesFailed() throws Exception {
+        PdfMasterDataExtractor.Result result = extraction("DDDU4444444");
+        result.getErrors().add("Page 2: PDF extraction failed: timeout");
+        when(pdfMasterDataExtractor.extract(any(), any(), eq(true))).thenReturn(result);
+
+        ProcessPdfResponse response = projectService.processPdfFile(request);
+
+        verify(masterDataRepository, never()).deleteByProjectIdAndContainerNumberIn(eq(project.getId()), anyCollection());
+        assertEquals(1, response.getAddedCount());
+        assertEquals(0, response.getRemovedCount());
+        assertEquals(4, project.getMasterDataCount());
+        assertEquals(2, response.getErrors().size());
+    }
+
+    private PdfMasterDataExtractor.Result extraction(String... numbers) {
+        PdfMasterDataExtractor.Result result = new PdfMasterDataExtractor.Result();
+        int page = 1;
+        for (String number : numbers) {
+            result.getItems().add(new PdfMasterDataExtractor.Item(number, 99.0, page++, number));
+        }
+        return result;
+    }
+}
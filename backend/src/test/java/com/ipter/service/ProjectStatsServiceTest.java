@@ -0,0 +1,85 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.ipter.dto.ImageStatusCountRow;
+import com.ipter.event.MasterDataChangedEvent;
+import com.ipter.model.ProcessingStatus;
+import com.ipter.repository.ExtractedDataRepository;
+import com.ipter.repository.ImageRepository;
+import com.ipter.repository.MasterDataRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ProjectStatsServiceTest {
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private ExtractedDataRepository extractedDataRepository;
+
+    @Mock
+    private MasterDataRepository masterDataRepository;
+
+    private ProjectStatsService projectStatsService;
+    private UUID projectId;
+
+    @BeforeEach
+    void setUp() {
+        projectId = UUID.randomUUID();
+        MasterDataIndexService indexService = new MasterDataIndexService(masterDataRepository, 10);
+        projectStatsService = new ProjectStatsService(imageRepository, extractedDataRepository, indexService, 60_000, 10);
+
+        when(imageRepository.countByProjectIdGroupByStatus(projectId)).thenReturn(List.of(
+            new ImageStatusCountRow(ProcessingStatus.COMPLETED, true, 3L, 12L),
+            new ImageStatusCountRow(ProcessingStatus.COMPLETED, false, 1L, 2L),
+            new ImageStatusCountRow(ProcessingStatus.FAILED, false, 1L, null),
+            new ImageStatusCountRow(ProcessingStatus.PROCESSING, false, 2L, 0L),
+            new ImageStatusCountRow(ProcessingStatus.PENDING, false, 1L, 0L)));
+        when(masterDataRepository.findContainerNumbersByProjectId(projectId)).thenReturn(List.of("ABCU1234567", "DEFU7654321"));
+        when(extractedDataRepository.findDistinctContainerNumbersByProjectId(projectId))
+            .thenReturn(List.of("ABCU1234567", "abcu 1234567", "XYZU0000000"));
+    }
+
+    @Test
+    void testStatsFromAggregates() {
+        Map<String, Object> stats = projectStatsService.getProjectStats(projectId);
+
+        assertEquals(8L, stats.get("totalImages"));
+        assertEquals(4L, stats.get("completedImages"));
+        assertEquals(1L, stats.get("failedImages"));
+        assertEquals(3L, stats.get("pendingImages"));
+        assertEquals(3L, stats.get("verifiedImages"));
+        assertEquals(5L, stats.get("unverifiedImages"));
+        assertEquals(14, stats.get("totalContainerNumbers"));
+        assertEquals(50.0, stats.get("successRate"));
+        assertEquals(2, stats.get("masterContainerNumbers"));
+        assertEquals(1, stats.get("matchedContainerNumbers"));
+        assertEquals(1, stats.get("unmatchedContainerNumbers"));
+    }
+
+    @Test
+    void testStatsCachedUntilTtlOrMasterDataChange() {
+        Map<String, Object> first = projectStatsService.getProjectStats(projectId);
+        assertSame(first, projectStatsService.getProjectStats(projectId));
+        verify(imageRepository, times(1)).countByProjectIdGroupByStatus(projectId);
+
+        projectStatsService.onMasterDataChanged(new MasterDataChangedEvent(projectId));
+        projectStatsService.getProjectStats(projectId);
+        verify(imageRepository, times(2)).countByProjectIdGroupByStatus(projectId);
+    }
+}
@@ -0,0 +1,119 @@
+package com.ipter.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.ipter.event.ImagesDeletedEvent;
+import com.ipter.model.Image;
+import com.ipter.repository.ImageRepository;
+
+/**
+ * Test class for ThumbnailService
+ */
+@ExtendWith(MockitoExtension.class)
+class ThumbnailServiceTest {
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private ThumbnailService thumbnailService;
+
+    @BeforeEach
+    void setUp() {
+        thumbnailService = new ThumbnailService(imageRepository, tempDir.resolve("thumbnails").toString(), 0.8f, 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnailService.shutdown();
+    }
+
+    @Test
+    void testMissingThumbnailIsGeneratedOnRequest() throws Exception {
+        Path original = tempDir.resolve("photo.png");
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+        Image image = new Image("photo.png", original.toString(), "image/png", Files.size(original), null, null);
+        image.setId(UUID.randomUUID());
+        when(imageRepository.findById(image.getId())).thenReturn(Optional.of(image));
+
+        Path small = thumbnailService.getThumbnail(image.getId(), ThumbnailService.Size.SMALL);
+
+        BufferedImage thumbnail = ImageIO.read(small.toFile());
+        assertEquals(160, thumbnail.getWidth());
+        assertEquals(80, thumbnail.getHeight());
+        // All sizes are written in one pass
+        assertTrue(Files.exists(small.resolveSibling("medium.jpg")));
+        assertTrue(Files.exists(small.resolveSibling("large.jpg")));
+        verify(imageRepository).updateThumbnailPath(eq(image.getId()), eq(small.getParent().toString()));
+    }
+
+    @Test
+    void testETagChangesWithSizeAndContent() {
+        Image image = new Image();
+        image.setId(UUID.randomUUID());
+        image.setContentSha256("ab".repeat(32));
+        when(imageRepository.findById(image.getId())).thenReturn(Optional.of(image));
+
+        String small = thumbnailService.getETag(image.getId(), ThumbnailService.Size.SMALL);
+        String large = thumbnailService.getETag(image.getId(), ThumbnailService.Size.LARGE);
+
+        assertTrue(small.startsWith("\"abababab"));
+        assertNotEquals(small, large);
+    }
+
+    @Test
+    void testUnknownSizeIsRejected() {
+        assertEquals(ThumbnailService.Size.MEDIUM, ThumbnailService.Size.parse("Medium"));
+        assertThrows(IllegalArgumentException.class, () -> ThumbnailService.Size.parse("huge"));
+    }
+
+    @Test
+    void testDeletedImagesLoseTheirThumbnails() throws Exception {
+        Path original = tempDir.resolve("photo.png");
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+        Image image = new Image("photo.png", original.toString(), "image/png", Files.size(original), null, null);
+        image.setId(UUID.randomUUID());
+        when(imageRepository.findById(image.getId())).thenReturn(Optional.of(image));
+        Path dir = thumbnailService.getThumbnail(image.getId(), ThumbnailService.Size.SMALL).getParent();
+
+        thumbnailService.onImagesDeleted(new ImagesDeletedEvent(List.of(image.getId(), UUID.randomUUID())));
+
+        assertFalse(Files.exists(dir));
+        assertTrue(Files.exists(original));
+    }
+
+    @Test
+    void testMissingImageIsReportedAsNotFound() {
+        UUID imageId = UUID.randomUUID();
+        when(imageRepository.findById(imageId)).thenReturn(Optional.empty());
+
+        assertThrows(ThumbnailService.ImageNotFoundException.class,
+            () -> thumbnailService.getThumbnail(imageId, ThumbnailService.Size.SMALL));
+    }
+}
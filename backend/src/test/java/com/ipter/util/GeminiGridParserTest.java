@@ -0,0 +1,105 @@
+package com.ipter.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ipter.dto.ContainerExtractionResultDTO;
+
+/**
+ * Test class for GeminiGridParser, on recorded Gemini grid responses
+ */
+class GeminiGridParserTest {
+
+    @Test
+    void testRecordedGridResponse() throws IOException {
+        ContainerExtractionResultDTO result = GeminiGridParser.parse(recorded("grid-6x8.json"));
+
+        assertFalse(result.isPartial());
+        assertEquals(6, result.getRows().size());
+        assertEquals(6, result.getGridStructure().get("rows"));
+        assertEquals("vertical stacks", result.getGridStructure().get("layout"));
+        ContainerExtractionResultDTO.ContainerEntry first = result.getRows().get("row1").getEntry(1);
+        assertEquals("1000042", first.getContainerNumber());
+        assertEquals("74%", first.getConfidence());
+        assertTrue(result.getRows().get("row6").getEntry(8) != null);
+    }
+
+    @Test
+    void testLegacyFormatUsesRowConfidence() throws IOException {
+        ContainerExtractionResultDTO result = GeminiGridParser.parse(recorded("grid-legacy-3x5.json"));
+
+        assertEquals(3, result.getRows().size());
+        ContainerExtractionResultDTO.ContainerEntry entry = result.getRows().get("row2").getEntry(5);
+        assertEquals("2000025", entry.getContainerNumber());
+        assertEquals("82%", entry.getConfidence());
+    }
+
+    @Test
+    void testTruncatedResponseKeepsCompleteEntries() throws IOException {
+        String json = recorded("grid-6x8.json");
+        // Cut inside row4, position 3
+        int cut = json.indexOf("\"3\"", json.indexOf("\"row4\"")) + 20;
+
+        ContainerExtractionResultDTO result = GeminiGridParser.parse(json.substring(0, cut));
+
+        assertTrue(result.isPartial());
+        assertEquals(4, result.getRows().size());
+        assertTrue(result.getRows().get("row4").getEntry(2) != null);
+        assertNull(result.getRows().get("row4").getEntry(3));
+    }
+
+    @Test
+    void testSkipsNullAndPlaceholderEntries() throws IOException {
+        ContainerExtractionResultDTO result = GeminiGridParser.parse(
+            "{\"row1\": {\"1\": null, \"2\": \"N/A\", \"9\": \"1234567\", \"x\": [1, 2]},"
+                + " \"row2\": {\"1\": {\"number\": \" 7654321 \"}}, \"notes\": {\"row3\": 1}}");
+
+        assertEquals(1, result.getRows().size());
+        assertEquals("7654321", result.getRows().get("row2").getEntry(1).getContainerNumber());
+        assertEquals("75%", result.getRows().get("row2").getEntry(1).getConfidence());
+    }
+
+    @Test
+    void testUnreadableResponseThrows() {
+        assertThrows(JsonProcessingException.class, () -> GeminiGridParser.parse("Sorry, I cannot read this image."));
+        assertThrows(JsonProcessingException.class, () -> GeminiGridParser.parse("{\"row1\": {\"1\": {\"num"));
+    }
+
+    @Test
+    void testMultiImageResponseIsSplitByTag() throws IOException {
+        Map<Integer, ContainerExtractionResultDTO> grids = GeminiGridParser.parseImages(
+            "{\"note\": {\"skipped\": [1, 2]}, \"images\": ["
+                + "{\"image\": 2, \"grid_structure\": {\"rows\": 1}, \"row1\": {\"1\": {\"number\": \"2000001\", \"confidence\": \"88%\"}}},"
+                + "{\"image\": 1, \"row1\": {\"1\": {\"number\": \"1000001\", \"confidence\": \"91%\"}}},"
+                + "{\"row1\": {\"1\": {\"number\": \"9999999\"}}}]}");
+
+        assertEquals(2, grids.size());
+        assertEquals("1000001", grids.get(1).getRows().get("row1").getEntry(1).getContainerNumber());
+        assertEquals("2000001", grids.get(2).getRows().get("row1").getEntry(1).getContainerNumber());
+        assertEquals(1, grids.get(2).getGridStructure().get("rows"));
+    }
+
+    @Test
+    void testTruncatedMultiImageResponseThrows() {
+        String json = "{\"images\": [{\"image\": 1, \"row1\": {\"1\": {\"number\": \"1000001\"}}}, {\"image\": 2, \"row1\": {";
+
+        assertThrows(JsonProcessingException.class, () -> GeminiGridParser.parseImages(json));
+    }
+
+    static String recorded(String name) throws IOException {
+        try (InputStream in = GeminiGridParserTest.class.getResourceAsStream("/gemini/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
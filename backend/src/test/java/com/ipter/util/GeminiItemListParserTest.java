@@ -0,0 +1,60 @@
+package com.ipter.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ipter.dto.PdfExtractionResultDTO;
+
+/**
+ * Test class for GeminiItemListParser
+ */
+class GeminiItemListParserTest {
+
+    private static final String RESPONSE = "{\"items\": ["
+        + "{\"number\": \"MSCU1234565\", \"confidence\": \"92%\"},"
+        + "{\"number\": \" TGHU7654320 \", \"confidence\": \"81%\"},"
+        + "{\"number\": \"CAIU5550001\", \"confidence\": \"77%\"}]}";
+
+    @Test
+    void testSchemaResponse() throws IOException {
+        PdfExtractionResultDTO result = GeminiItemListParser.parse(RESPONSE);
+
+        assertFalse(result.isPartial());
+        assertEquals(3, result.getItems().size());
+        assertEquals("TGHU7654320", result.getItems().get(1).getNumber());
+        assertEquals("81%", result.getItems().get(1).getConfidence());
+    }
+
+    @Test
+    void testSkipsItemsWithoutNumber() throws IOException {
+        PdfExtractionResultDTO result = GeminiItemListParser.parse(
+            "{\"note\": {\"x\": [1]}, \"items\": [{\"number\": null, \"confidence\": \"50%\"},"
+                + " {\"confidence\": \"60%\"}, {\"number\": \"MSCU1234565\"}]}");
+
+        assertEquals(1, result.getItems().size());
+        assertEquals("", result.getItems().get(0).getConfidence());
+    }
+
+    @Test
+    void testTruncatedResponseKeepsCompleteItems() throws IOException {
+        int cut = RESPONSE.indexOf("CAIU") + 6;
+
+        PdfExtractionResultDTO result = GeminiItemListParser.parse(RESPONSE.substring(0, cut));
+
+        assertTrue(result.isPartial());
+        assertEquals(2, result.getItems().size());
+    }
+
+    @Test
+    void testUnreadableResponseThrows() {
+        assertThrows(JsonProcessingException.class, () -> GeminiItemListParser.parse("No container numbers found."));
+        assertThrows(JsonProcessingException.class, () -> GeminiItemListParser.parse("{\"items\": [{\"numb"));
+    }
+}
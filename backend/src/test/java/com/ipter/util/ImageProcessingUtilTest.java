@@ -0,0 +1,126 @@
+package com.ipter.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+/**
+ * Test class for ImageProcessingUtil image preprocessing
+ */
+class ImageProcessingUtilTest {
+
+    @Test
+    void testIso6346CheckDigit() {
+        assertTrue(ImageProcessingUtil.hasValidCheckDigit("CSQU3054383"));
+        assertTrue(ImageProcessingUtil.hasValidCheckDigit("msku1234565"));
+        assertFalse(ImageProcessingUtil.hasValidCheckDigit("CSQU3054384"));
+        assertFalse(ImageProcessingUtil.hasValidCheckDigit("CSQU305438"));
+    }
+
+    @Test
+    void testLargeImageIsDownscaledToLongestEdge() throws Exception {
+        byte[] jpeg = encode(new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB), "jpeg");
+
+        ImageProcessingUtil.PreprocessedImage result =
+            ImageProcessingUtil.preprocessForGemini(new ByteArrayResource(jpeg), "image/jpg", 1000, 0.85f);
+
+        BufferedImage output = decode(result);
+        assertEquals("image/jpeg", result.getMimeType());
+        assertEquals(1000, output.getWidth());
+        assertEquals(750, output.getHeight());
+        assertTrue(result.getApplied().contains("downscale:4000x3000->1000x750"));
+    }
+
+    @Test
+    void testExifOrientationIsAppliedAndMetadataDropped() throws Exception {
+        byte[] jpeg = withExifOrientation(encode(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "jpeg"), 6);
+        assertEquals(6, ImageProcessingUtil.readExifOrientation(new ByteArrayInputStream(jpeg)));
+
+        ImageProcessingUtil.PreprocessedImage result =
+            ImageProcessingUtil.preprocessForGemini(new ByteArrayResource(jpeg), "image/jpeg", 2048, 0.85f);
+
+        // Rotated 90 degrees into the pixels, and the orientation tag is gone
+        BufferedImage output = decode(result);
+        assertEquals(200, output.getWidth());
+        assertEquals(300, output.getHeight());
+        assertEquals(1, ImageProcessingUtil.readExifOrientation(
+            result.source(null).getInputStream()));
+        assertTrue(result.getApplied().contains("exif-orientation:6"));
+    }
+
+    @Test
+    void testBmpIsConvertedToJpeg() throws Exception {
+        byte[] bmp = encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "bmp");
+
+        ImageProcessingUtil.PreprocessedImage result =
+            ImageProcessingUtil.preprocessForGemini(new ByteArrayResource(bmp), "image/bmp", 2048, 0.85f);
+
+        assertEquals("image/jpeg", result.getMimeType());
+        assertEquals(64, decode(result).getWidth());
+        assertTrue(result.getApplied().contains("convert:image/bmp->image/jpeg"));
+    }
+
+    @Test
+    void testUnreadableTiffIsRejectedRatherThanSentUnchanged() {
+        IOException e = assertThrows(IOException.class, () -> ImageProcessingUtil.preprocessForGemini(
+            new ByteArrayResource("not-really-a-tiff".getBytes()), "image/tiff", 2048, 0.85f));
+
+        assertTrue(e.getMessage().contains("image/tiff"));
+    }
+
+    @Test
+    void testSmallPngIsSentUnchanged() throws Exception {
+        byte[] png = encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_ARGB), "png");
+
+        ImageProcessingUtil.PreprocessedImage result =
+            ImageProcessingUtil.preprocessForGemini(new ByteArrayResource(png), "image/png", 2048, 0.85f);
+
+        assertFalse(result.isChanged());
+        assertEquals("image/png", result.getMimeType());
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(ImageProcessingUtil.PreprocessedImage result) throws Exception {
+        assertTrue(result.isChanged());
+        return ImageIO.read(result.source(null).getInputStream());
+    }
+
+    /**
+     * Insert a minimal big-endian EXIF APP1 segment holding only the orientation tag
+     */
+    private static byte[] withExifOrientation(byte[] jpeg, int orientation) {
+        byte[] exif = {
+            'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,          // TIFF header, IFD0 at offset 8
+            0, 1,                                  // one entry
+            0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+            0, 0, 0, 0                             // no next IFD
+        };
+        int length = exif.length + 2;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);                     // SOI
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(exif, 0, exif.length);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+}
@@ -506,6 +506,9 @@ export interface ProcessPdfResponse {
   message: string;
   extractedCount: number;
   extractedContainerNumbers: string[];
+  addedCount: number;
+  removedCount: number;
+  unchangedCount: number;
   errors?: string[];
   processingTimeMs: number;
 }